@@ -0,0 +1,225 @@
+package neuralnetwork.kernel;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API backend of the kernels, using the widest species of the CPU (AVX2, AVX-512, NEON...).
+ * Only the reductions, the transcendental functions and the dense kernel are written with vectors: the JIT does not vectorize them,
+ * or not the short loops of the narrow layers, while it already vectorizes the long element-wise loops of {@link ScalarKernels} as well as the Vector API does.
+ * Only loaded when the module jdk.incubator.vector is available.
+ * @see Kernels#get()
+ */
+public class VectorKernels extends ScalarKernels {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Float> HALF_FLOAT_SPECIES = VectorSpecies.of(float.class, VectorShape.forBitSize(SPECIES.vectorBitSize() / 2)); // As many floats as SPECIES has doubles
+	private static final DoubleVector ONE = DoubleVector.broadcast(SPECIES, 1);
+
+	@Override
+	public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+			DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+			sum = va.fma(vb, sum);
+		}
+		double result = sum.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			result += a[aOffset + i] * b[bOffset + i];
+		}
+		return result;
+	}
+
+	@Override
+	public double dot(float[] a, int aOffset, double[] b, int bOffset, int length) {
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			FloatVector vf = FloatVector.fromArray(HALF_FLOAT_SPECIES, a, aOffset + i);
+			DoubleVector va = (DoubleVector) vf.convertShape(VectorOperators.F2D, SPECIES, 0);
+			DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+			sum = va.fma(vb, sum);
+		}
+		double result = sum.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			result += a[aOffset + i] * b[bOffset + i];
+		}
+		return result;
+	}
+
+	@Override
+	public void sigmoid(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector v = DoubleVector.fromArray(SPECIES, input, inputOffset + i);
+			ONE.div(v.neg().lanewise(VectorOperators.EXP).add(1)).intoArray(output, outputOffset + i);
+		}
+		for (; i < length; i++) {
+			output[outputOffset + i] = 1 / (1 + Math.exp(-input[inputOffset + i]));
+		}
+	}
+
+	@Override
+	public void tanh(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, input, inputOffset + i).lanewise(VectorOperators.TANH).intoArray(output, outputOffset + i);
+		}
+		for (; i < length; i++) {
+			output[outputOffset + i] = Math.tanh(input[inputOffset + i]);
+		}
+	}
+
+	@Override
+	public void fastTanh(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
+		rationalTanh(input, inputOffset, output, outputOffset, length, 1, 0);
+		for (int i = SPECIES.loopBound(length); i < length; i++) {
+			output[outputOffset + i] = SpecialFunctions.fastTanh(input[inputOffset + i]);
+		}
+	}
+
+	@Override
+	public void fastSigmoid(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
+		rationalTanh(input, inputOffset, output, outputOffset, length, 0.5, 0.5);
+		for (int i = SPECIES.loopBound(length); i < length; i++) {
+			output[outputOffset + i] = SpecialFunctions.fastSigmoid(input[inputOffset + i]);
+		}
+	}
+
+	/**
+	 * output = scale * tanh(scale * input) + shift on the whole vectors of the range, with the rational approximation of {@link SpecialFunctions#fastTanh(double)}.
+	 * The coefficients are broadcast before the loop: static vector constants, or scalars broadcast in the loop, are reloaded at each iteration
+	 * and cost a third of the throughput, which is bounded by the division.
+	 */
+	private static void rationalTanh(double[] input, int inputOffset, double[] output, int outputOffset, int length, double scale, double shift) {
+		DoubleVector low = DoubleVector.broadcast(SPECIES, -SpecialFunctions.TANH_CLAMP);
+		DoubleVector high = DoubleVector.broadcast(SPECIES, SpecialFunctions.TANH_CLAMP);
+		DoubleVector p13 = DoubleVector.broadcast(SPECIES, SpecialFunctions.P13);
+		DoubleVector p11 = DoubleVector.broadcast(SPECIES, SpecialFunctions.P11);
+		DoubleVector p9 = DoubleVector.broadcast(SPECIES, SpecialFunctions.P9);
+		DoubleVector p7 = DoubleVector.broadcast(SPECIES, SpecialFunctions.P7);
+		DoubleVector p5 = DoubleVector.broadcast(SPECIES, SpecialFunctions.P5);
+		DoubleVector p3 = DoubleVector.broadcast(SPECIES, SpecialFunctions.P3);
+		DoubleVector p1 = DoubleVector.broadcast(SPECIES, SpecialFunctions.P1);
+		DoubleVector q6 = DoubleVector.broadcast(SPECIES, SpecialFunctions.Q6);
+		DoubleVector q4 = DoubleVector.broadcast(SPECIES, SpecialFunctions.Q4);
+		DoubleVector q2 = DoubleVector.broadcast(SPECIES, SpecialFunctions.Q2);
+		DoubleVector q0 = DoubleVector.broadcast(SPECIES, SpecialFunctions.Q0);
+		DoubleVector scales = DoubleVector.broadcast(SPECIES, scale);
+		DoubleVector shifts = DoubleVector.broadcast(SPECIES, shift);
+		int bound = SPECIES.loopBound(length);
+		for (int i = 0; i < bound; i += SPECIES.length()) {
+			DoubleVector x = DoubleVector.fromArray(SPECIES, input, inputOffset + i).mul(scales).max(low).min(high);
+			DoubleVector x2 = x.mul(x);
+			DoubleVector p = x2.fma(p13, p11);
+			p = p.fma(x2, p9);
+			p = p.fma(x2, p7);
+			p = p.fma(x2, p5);
+			p = p.fma(x2, p3);
+			p = p.fma(x2, p1);
+			DoubleVector q = x2.fma(q6, q4);
+			q = q.fma(x2, q2);
+			q = q.fma(x2, q0);
+			x.mul(p).div(q).fma(scales, shifts).intoArray(output, outputOffset + i);
+		}
+	}
+
+	/**
+	 * Blocks of 4 vectors of outputs are accumulated in registers over all the rows, the last outputs one vector at a time, then by the scalar kernel.
+	 * The activation is applied by a vector pass on the outputs, still in L1: fused in registers, the transcendental functions
+	 * make the loops too large to be inlined, and the vectors are boxed.
+	 */
+	@Override
+	public void denseTransposed(double[] weights, double[] bias, int rows, int columns, double[] x, int xOffset, double[] y, int yOffset, Activation activation, double treshold, double slope) {
+		int lanes = SPECIES.length();
+		int i = 0;
+		for (; i + 4 * lanes <= columns; i += 4 * lanes) {
+			DoubleVector sum0 = DoubleVector.fromArray(SPECIES, bias, i);
+			DoubleVector sum1 = DoubleVector.fromArray(SPECIES, bias, i + lanes);
+			DoubleVector sum2 = DoubleVector.fromArray(SPECIES, bias, i + 2 * lanes);
+			DoubleVector sum3 = DoubleVector.fromArray(SPECIES, bias, i + 3 * lanes);
+			for (int j = 0; j < rows; j++) {
+				DoubleVector alpha = DoubleVector.broadcast(SPECIES, x[xOffset + j]);
+				int row = j * columns + i;
+				sum0 = DoubleVector.fromArray(SPECIES, weights, row).fma(alpha, sum0);
+				sum1 = DoubleVector.fromArray(SPECIES, weights, row + lanes).fma(alpha, sum1);
+				sum2 = DoubleVector.fromArray(SPECIES, weights, row + 2 * lanes).fma(alpha, sum2);
+				sum3 = DoubleVector.fromArray(SPECIES, weights, row + 3 * lanes).fma(alpha, sum3);
+			}
+			sum0.intoArray(y, yOffset + i);
+			sum1.intoArray(y, yOffset + i + lanes);
+			sum2.intoArray(y, yOffset + i + 2 * lanes);
+			sum3.intoArray(y, yOffset + i + 3 * lanes);
+		}
+		for (; i + lanes <= columns; i += lanes) {
+			DoubleVector sum = DoubleVector.fromArray(SPECIES, bias, i);
+			for (int j = 0; j < rows; j++) {
+				sum = DoubleVector.fromArray(SPECIES, weights, j * columns + i).fma(DoubleVector.broadcast(SPECIES, x[xOffset + j]), sum);
+			}
+			sum.intoArray(y, yOffset + i);
+		}
+		denseColumns(weights, bias, rows, columns, x, xOffset, y, yOffset, i);
+		activate(y, yOffset, columns, activation, treshold, slope);
+	}
+
+	@Override
+	public void denseTransposed(float[] weights, double[] bias, int rows, int columns, double[] x, int xOffset, double[] y, int yOffset, Activation activation, double treshold, double slope) {
+		int lanes = SPECIES.length();
+		int i = 0;
+		for (; i + lanes <= columns; i += lanes) {
+			DoubleVector sum = DoubleVector.fromArray(SPECIES, bias, i);
+			for (int j = 0; j < rows; j++) {
+				FloatVector vf = FloatVector.fromArray(HALF_FLOAT_SPECIES, weights, j * columns + i);
+				DoubleVector w = (DoubleVector) vf.convertShape(VectorOperators.F2D, SPECIES, 0);
+				sum = w.fma(DoubleVector.broadcast(SPECIES, x[xOffset + j]), sum);
+			}
+			sum.intoArray(y, yOffset + i);
+		}
+		denseColumns(weights, bias, rows, columns, x, xOffset, y, yOffset, i);
+		activate(y, yOffset, columns, activation, treshold, slope);
+	}
+
+	private static void activate(double[] y, int offset, int length, Activation activation, double treshold, double slope) {
+		int bound = offset + SPECIES.loopBound(length);
+		int end = offset + length;
+		int i = offset;
+		switch (activation) {
+		case RELU:
+			for (; i < bound; i += SPECIES.length()) {
+				DoubleVector.fromArray(SPECIES, y, i).sub(treshold).max(0).intoArray(y, i);
+			}
+			for (; i < end; i++) {
+				y[i] = Math.max(0, y[i] - treshold);
+			}
+			break;
+		case LEAKY_RELU:
+			for (; i < bound; i += SPECIES.length()) {
+				DoubleVector shifted = DoubleVector.fromArray(SPECIES, y, i).sub(treshold);
+				shifted.mul(slope).max(shifted).intoArray(y, i);
+			}
+			for (; i < end; i++) {
+				y[i] = Math.max(slope * (y[i] - treshold), y[i] - treshold);
+			}
+			break;
+		case SIGMOID:
+			for (; i < bound; i += SPECIES.length()) {
+				DoubleVector v = DoubleVector.fromArray(SPECIES, y, i);
+				ONE.div(v.neg().lanewise(VectorOperators.EXP).add(1)).intoArray(y, i);
+			}
+			for (; i < end; i++) {
+				y[i] = 1 / (1 + Math.exp(-y[i]));
+			}
+			break;
+		default:
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package neuralnetwork;
+
+/**
+ * Average pooling: each output is the mean of the inputs of its window, the padding excluded.
+ * @see PoolingLayer
+ */
+public class AvgPoolLayer extends PoolingLayer {
+
+	private static final long serialVersionUID = 1L;
+
+	transient double[] inverseCounts; // 1 / the number of inputs of the window of each position, shared by the replicas
+
+	/**
+	 * Create an average pooling layer.
+	 * @param inputDimension the dimensions of the volume of a channel
+	 * @param channels the number of channels
+	 * @param poolDimension the dimensions of the window
+	 * @param stride the step of the window in each dimension
+	 * @param padding the padding on both sides of each dimension, never averaged
+	 */
+	public AvgPoolLayer(int[] inputDimension, int channels, int[] poolDimension, int[] stride, int[] padding) {
+		super(inputDimension, channels, poolDimension, stride, padding);
+	}
+
+	/**
+	 * Create an average pooling layer with non-overlapping windows and no padding.
+	 * @param inputDimension the dimensions of the volume of a channel
+	 * @param channels the number of channels
+	 * @param poolDimension the dimensions of the window, also the stride
+	 */
+	public AvgPoolLayer(int[] inputDimension, int channels, int[] poolDimension) {
+		this(inputDimension, channels, poolDimension, poolDimension.clone(), new int[poolDimension.length]);
+	}
+
+	@Override
+	public void initForPredict() {
+		super.initForPredict();
+		initCounts();
+	}
+
+	@Override
+	public void initForTraining() {
+		super.initForTraining();
+		initCounts();
+	}
+
+	private void initCounts() {
+		if (inverseCounts != null) {
+			return;
+		}
+		double[] inverseCounts = new double[outputVolume];
+		for (int p = 0; p < outputVolume; p++) {
+			int count = 0;
+			for (int k = 0; k < poolSize; k++) {
+				if (gather[p * poolSize + k] >= 0) {
+					count++;
+				}
+			}
+			inverseCounts[p] = 1.0 / count;
+		}
+		this.inverseCounts = inverseCounts;
+	}
+
+	@Override
+	public void forward() {
+		for (int c = 0; c < channels; c++) {
+			int channelOffset = c * inputVolume;
+			for (int p = 0; p < outputVolume; p++) {
+				int window = p * poolSize;
+				double sum = 0;
+				for (int k = 0; k < poolSize; k++) {
+					int index = gather[window + k];
+					if (index >= 0) {
+						sum += input[channelOffset + index];
+					}
+				}
+				output[c * outputVolume + p] = sum * inverseCounts[p];
+			}
+		}
+	}
+
+	@Override
+	public void backward() {
+		for (int i = 0; i < inputGradients.length; i++) {
+			inputGradients[i] = 0;
+		}
+		for (int c = 0; c < channels; c++) {
+			int channelOffset = c * inputVolume;
+			for (int p = 0; p < outputVolume; p++) {
+				int window = p * poolSize;
+				double gradient = outputGradients[c * outputVolume + p] * inverseCounts[p];
+				for (int k = 0; k < poolSize; k++) {
+					int index = gather[window + k];
+					if (index >= 0) {
+						inputGradients[channelOffset + index] += gradient;
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void resume() {
+		resume("AvgPool Layer");
+	}
+}
@@ -0,0 +1,118 @@
+package neuralnetwork;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import neuralnetwork.data.BatchLoader;
+import neuralnetwork.optimizer.LearningRateSchedule;
+import neuralnetwork.optimizer.Optimizer;
+
+/**
+ * State of a training at the end of an epoch: the parameters, the state of the optimizer, the logs, the early stopping
+ * and the state of the shuffle. A training resumed from a checkpoint continues with the next epoch as if it had not been interrupted.
+ * The checkpoint owns copies of the state, taken on the training thread, so it can be written while the training goes on.
+ * @see NeuralNetwork#setCheckpoints(String, int)
+ * @see NeuralNetwork#resume(Checkpoint, neuralnetwork.data.Dataset, boolean)
+ */
+public class Checkpoint implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	final int epoch; // The number of completed epochs
+	final int epochs; // The planned number of epochs
+	final int batchSize;
+	final double momemtum;
+	final double[][] parameters; // The parameter blocks of the layers
+	final double[][] velocities; // The gradient blocks, holding the momemtum of the gradient descent of the layers. Null with an optimizer
+	final Optimizer optimizer;
+	final LearningRateSchedule schedule;
+	final double[] logs; // The logs of the completed epochs
+	final double[] stallLogs;
+	final double[] validationLogs; // Null without validation
+	final double bestError; // The early stopping state
+	final int epochsWithoutImprovement;
+	final double monitoredError;
+	final double[][] bestParameters; // Null if the best parameters are not restored
+	final BatchLoader.ShuffleState shuffleState; // Null without shuffle
+
+	Checkpoint(int epoch, int epochs, int batchSize, double momemtum, double[][] parameters, double[][] velocities, Optimizer optimizer,
+			LearningRateSchedule schedule, double[] logs, double[] stallLogs, double[] validationLogs, double bestError, int epochsWithoutImprovement,
+			double monitoredError, double[][] bestParameters, BatchLoader.ShuffleState shuffleState) {
+		this.epoch = epoch;
+		this.epochs = epochs;
+		this.batchSize = batchSize;
+		this.momemtum = momemtum;
+		this.parameters = parameters;
+		this.velocities = velocities;
+		this.optimizer = optimizer;
+		this.schedule = schedule;
+		this.logs = logs;
+		this.stallLogs = stallLogs;
+		this.validationLogs = validationLogs;
+		this.bestError = bestError;
+		this.epochsWithoutImprovement = epochsWithoutImprovement;
+		this.monitoredError = monitoredError;
+		this.bestParameters = bestParameters;
+		this.shuffleState = shuffleState;
+	}
+
+	/**
+	 * @return the number of completed epochs
+	 */
+	public int getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * @return the planned number of epochs of the training
+	 */
+	public int getEpochs() {
+		return epochs;
+	}
+
+	/**
+	 * @return the mean training error of each completed epoch
+	 */
+	public double[] getLogs() {
+		return logs.clone();
+	}
+
+	/**
+	 * Load a checkpoint written during a training.
+	 * @param path the path of the file
+	 * @return the checkpoint
+	 * @throws IOException if the file is not a valid checkpoint
+	 */
+	public static Checkpoint load(String path) throws IOException {
+		try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+			return (Checkpoint) ois.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException(path + " is not a training checkpoint.", e);
+		}
+	}
+
+	/**
+	 * Write the checkpoint in a temporary file synced to the disk, then move it over the file: a crash during the writing keeps the previous checkpoint.
+	 */
+	void save(String path) throws IOException {
+		Path file = Paths.get(path);
+		Path temporary = Paths.get(path + ".tmp");
+		try (FileOutputStream fos = new FileOutputStream(temporary.toFile())) {
+			ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(fos));
+			oos.writeObject(this);
+			oos.flush();
+			fos.getFD().sync();
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
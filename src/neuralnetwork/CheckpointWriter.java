@@ -0,0 +1,86 @@
+package neuralnetwork;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Write the checkpoints of a training on a background thread, so the training never waits for the disk.
+ * One checkpoint is written at a time: a checkpoint submitted while another is being written waits for it,
+ * and is replaced if a newer checkpoint is submitted in the meantime, so the file always receives the latest state.
+ */
+final class CheckpointWriter implements AutoCloseable {
+
+	private final String path;
+	private final ExecutorService executor;
+	private final AtomicReference<Checkpoint> pending = new AtomicReference<>(); // The next checkpoint to write
+	private final AtomicBoolean writing = new AtomicBoolean(false); // True while the writer thread is draining the pending checkpoints
+	private volatile Throwable failure = null;
+	private int replaced = 0;
+
+	CheckpointWriter(String path) {
+		this.path = path;
+		this.executor = Executors.newSingleThreadExecutor(task -> {
+			Thread thread = new Thread(task, "checkpoint-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Write a checkpoint in the background. Does not block.
+	 */
+	void submit(Checkpoint checkpoint) {
+		if (pending.getAndSet(checkpoint) != null) {
+			replaced++;
+		}
+		if (writing.compareAndSet(false, true)) {
+			executor.execute(this::drain);
+		}
+	}
+
+	private void drain() {
+		do {
+			Checkpoint checkpoint;
+			while ((checkpoint = pending.getAndSet(null)) != null) {
+				try {
+					checkpoint.save(path);
+				} catch (Throwable e) {
+					failure = e;
+				}
+			}
+			writing.set(false);
+		} while (pending.get() != null && writing.compareAndSet(false, true)); // Submitted after the last check
+	}
+
+	/**
+	 * @return the number of checkpoints replaced by a newer one before being written
+	 */
+	int getReplaced() {
+		return replaced;
+	}
+
+	/**
+	 * Wait for the checkpoints being written.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException if the writing of a checkpoint failed
+	 */
+	void checkFailure() {
+		if (failure != null) {
+			throw new IllegalStateException("The writing of a checkpoint in " + path + " failed.", failure);
+		}
+	}
+}
@@ -1,9 +1,20 @@
 package neuralnetwork;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
 import neuralnetwork.function.activation.ActivationFunction;
 import neuralnetwork.function.activation.ReLU;
 
 public class ConvolutionalLayer extends Layer {
+
+	private static final long serialVersionUID = 2448729726453489345L;
+
+	static final int PARALLEL_THRESHOLD = 1 << 16; // The number of multiply-adds of the backward pass above which it is split over the common pool
+
 	int[] inputDimension;
 	int[] outputDimension;
 	int depth;
@@ -15,18 +26,24 @@ public class ConvolutionalLayer extends Layer {
 	int[] inputStepSize;
 	int[] kernelStepSize;
 
-	double[][] weights;
+	double[] kernelWeights; // Depth-major: the weight of kernel element k for the depth channel d is kernelWeights[d * kernelSize + k], the bias is the last element
 
+	private double[][] weights; // Legacy storage, only set while loading a model saved before the flat storage
+
+	Precision precision = Precision.DOUBLE;
+	float[] kernelWeightsFloat; // Storage of the weights in float precision, same layout as kernelWeights. kernelWeights is then only a training copy
 	
-	transient double[][] weightGradients;
+	transient double[] weightGradients; // Same layout as kernelWeights
 	transient double[] interOutput;
-
+	transient int[] gather; // im2col gather table, see gatherIndices(). Immutable, shared by the replicas
+	transient double[] columns; // im2col matrix of the current input, positions x (kernelSize - 1)
+	transient double[] columnGradients; // Gradients of the im2col matrix, same layout
 
 	private final int inputSize; // real size of input
 	private final int outputSize; // real size of output
 	private final int kernelSize; // real size of kernel (including bias)
 	//private final int hypercubeVolume; // volume of input + padding
-	private final int maxCubeIndex; // maximum index of input + padding for kernel to be applied
+	private final int maxCubeIndex; // maximum index of input + padding for kernel to be applied. Unused since the im2col traversal, kept in the serialized form
 
 	private ActivationFunction activationFunction;
 	
@@ -113,29 +130,10 @@ public class ConvolutionalLayer extends Layer {
 		this.kernelSize = kernelSize;
 		this.maxCubeIndex = maxCubeIndex;
 
-		this.weights = new double[this.kernelSize][this.depth];
+		this.kernelWeights = new double[this.kernelSize * this.depth];
 		initWeight();
 	}
 
-	private int[] InputArrIndexToDimIndex(int index, int[] indexArray) {
-		for (int i = 0; i < inputDimension.length; i++) {
-			if (i == 0) {
-				indexArray[i] = index / inputStepSize[i];
-			} else {
-				indexArray[i] = (index % inputStepSize[i-1]) / inputStepSize[i];
-			}
-		}
-		return indexArray;
-	}
-
-	private int InputDimIndexToArrIndex(int[] indexArray) {
-		int index = 0;
-		for (int i = 0; i < inputDimension.length; i++) {
-			index += indexArray[i] * inputStepSize[i];
-		}
-		return index;
-	}
-
 	private int[] KernelArrIndexToDimIndex(int index, int[] indexArray) {
 		for (int i = 0; i < kernelDimension.length; i++) {
 			if (i == 0) {
@@ -150,13 +148,19 @@ public class ConvolutionalLayer extends Layer {
 	@Override
 	public void initForPredict() {
 		this.interOutput = new double[outputSize];
+		initColumns();
 		super.initForPredict();
 	}
 
 	@Override
 	public void initForTraining() {
-		this.weightGradients = new double[kernelSize][depth];
+		if (precision == Precision.FLOAT && kernelWeights == null) { // Replicas share the copy of their layer
+			this.kernelWeights = Precision.toDouble(kernelWeightsFloat);
+		}
+		this.weightGradients = new double[kernelSize * depth];
 		this.interOutput = new double[outputSize];
+		initColumns();
+		this.columnGradients = new double[columns.length];
 		super.initForTraining();
 	}
 	
@@ -164,125 +168,346 @@ public class ConvolutionalLayer extends Layer {
 	public void clear() {
 		this.weightGradients = null;
 		this.interOutput = null;
+		this.columns = null;
+		this.columnGradients = null;
 		super.clear();
 	}
 
+	private void initColumns() {
+		if (gather == null) {
+			this.gather = gatherIndices();
+		}
+		this.columns = new double[gather.length];
+	}
+
 
 
+	/**
+	 * Forward pass lowered to a matrix product: the input is gathered in the im2col matrix, one row of kernel elements per position,
+	 * then each output is the dot product of a row of the matrix and a kernel.
+	 */
 	@Override
 	public void forward() {
-		int outputIndex = 0;
-		int[] inputDimIndex = new int[inputDimension.length];
-		int[] kernelDimIndex = new int[kernelDimension.length];
-		int[] incrInputIndex = new int[inputDimension.length];
-		for (int depthIndex = 0; depthIndex < depth; depthIndex++) {
-			for (int inputIndex = 0; inputIndex <= maxCubeIndex; inputIndex++ ) {
-				InputArrIndexToDimIndex(inputIndex, inputDimIndex);
-				boolean inPadding = true;
-				for (int i = 0; i < inputDimension.length; i++) {
-					if (inputDimIndex[i] > inputDimension[i] - padding[i]) {
-						inPadding = false;
-						break;
-					}
-				}
-				if (!inPadding) {
-					continue;
-				}
-
-				for (int kernelIndex = 0; kernelIndex < kernelSize; kernelIndex++) {
-					KernelArrIndexToDimIndex(kernelIndex, kernelDimIndex);
-					for (int i = 0; i < inputDimension.length; i++) {
-						incrInputIndex[i] = inputDimIndex[i] + kernelDimIndex[i] - padding[i];
-					}
+		int kernelElements = kernelSize - 1;
+		int positions = outputSize / depth;
 
-					boolean inCube = true;
-					for (int i = 0; i < inputDimension.length; i++) {
-						if (incrInputIndex[i] < 0 || incrInputIndex[i] >= inputDimension[i]) {
-							inCube = false;
-							break;
-						}
-					}
-					if (!inCube) {
-						continue;
-					}
+		// im2col
+		for (int c = 0; c < columns.length; c++) {
+			int index = gather[c];
+			columns[c] = index >= 0 ? input[index] : 0;
+		}
 
-					int incrInputArrIndex = InputDimIndexToArrIndex(incrInputIndex);
-					output[outputIndex] += input[incrInputArrIndex]
-					 * weights[kernelIndex][depthIndex];
+		// GEMM, a row of the matrix stays in cache while it is multiplied by all the kernels
+		double[] preActivation = activationFunction != null ? interOutput : output;
+		if (kernelWeights != null) {
+			for (int p = 0; p < positions; p++) {
+				int column = p * kernelElements;
+				for (int depthIndex = 0; depthIndex < depth; depthIndex++) {
+					int kernelOffset = depthIndex * kernelSize;
+					double sum = KERNELS.dot(kernelWeights, kernelOffset, columns, column, kernelElements) + kernelWeights[kernelOffset + kernelElements]; // bias
+					preActivation[depthIndex * positions + p] = sum;
+				}
+			}
+		} else { // Float precision, read from the shared storage so the sessions see the weights of the last training
+			for (int p = 0; p < positions; p++) {
+				int column = p * kernelElements;
+				for (int depthIndex = 0; depthIndex < depth; depthIndex++) {
+					int kernelOffset = depthIndex * kernelSize;
+					double sum = KERNELS.dot(kernelWeightsFloat, kernelOffset, columns, column, kernelElements) + kernelWeightsFloat[kernelOffset + kernelElements];
+					preActivation[depthIndex * positions + p] = sum;
 				}
-				output[outputIndex] += weights[kernelSize-1][depthIndex]; // bias
-				interOutput[outputIndex] = output[outputIndex];   
-				outputIndex++;
 			}
 		}
 		if ( activationFunction != null) {
-			activationFunction.activate(output, output);
+			activationFunction.activate(interOutput, 0, output, 0, outputSize);
 		}
 	}
 
 
-	//FIXME - this is not correct. Always 0.
+	/**
+	 * Backward pass of the im2col forward: the gradients of the kernels are the products of the output gradients and the im2col matrix,
+	 * the gradients of the im2col matrix are scattered back to the inputs they were gathered from.
+	 * Large layers split the work over the depth channels (kernel gradients) and over the positions (input gradients).
+	 * Must follow the forward of the same input.
+	 */
 	@Override
 	public void backward() {
+		if (activationFunction != null && !fusedActivationGradients) {
+			activationFunction.activateGradients(interOutput, 0, output, 0, outputGradients, 0, outputSize);
+		}
 
-		if ( activationFunction != null) {
-			activationFunction.activateGradients(interOutput, output, outputGradients);
-		}
-
-		int outputIndex = 0;
-		int[] inputDimIndex = new int[inputDimension.length];
-		int[] kernelDimIndex = new int[kernelDimension.length];
-		int[] incrInputIndex = new int[inputDimension.length];
-		for (int depthIndex = 0; depthIndex < depth; depthIndex++) {
-			for (int inputIndex = 0; inputIndex <= maxCubeIndex; inputIndex++ ) {
-				InputArrIndexToDimIndex(inputIndex, inputDimIndex);
-				boolean inPadding = true;
-				for (int i = 0; i < inputDimension.length; i++) {
-					if (inputDimIndex[i] > inputDimension[i] - padding[i]) {
-						inPadding = false;
-						break;
-					}
+		int kernelElements = kernelSize - 1;
+		int positions = outputSize / depth;
+		if ((long) outputSize * kernelElements >= PARALLEL_THRESHOLD && !ForkJoinTask.inForkJoinPool()) {
+			ForkJoinPool.commonPool().invoke(new BackwardTask(true, 0, depth));
+			ForkJoinPool.commonPool().invoke(new BackwardTask(false, 0, positions));
+		} else {
+			kernelGradients(0, depth);
+			columnGradients(0, positions);
+		}
+
+		// col2im
+		for (int i = 0; i < inputSize; i++) {
+			inputGradients[i] = 0;
+		}
+		for (int c = 0; c < columnGradients.length; c++) {
+			int index = gather[c];
+			if (index >= 0) {
+				inputGradients[index] += columnGradients[c];
+			}
+		}
+	}
+
+	/**
+	 * Accumulate the gradients of the kernels of the depth channels [from, to[.
+	 */
+	private void kernelGradients(int from, int to) {
+		int kernelElements = kernelSize - 1;
+		int positions = outputSize / depth;
+		for (int depthIndex = from; depthIndex < to; depthIndex++) {
+			int kernelOffset = depthIndex * kernelSize;
+			double biasGradient = 0;
+			for (int p = 0; p < positions; p++) {
+				double gradient = outputGradients[depthIndex * positions + p];
+				if (gradient != 0) {
+					KERNELS.axpy(gradient, columns, p * kernelElements, weightGradients, kernelOffset, kernelElements);
+					biasGradient += gradient;
 				}
-				if (!inPadding) {
-					continue;
+			}
+			weightGradients[kernelOffset + kernelElements] += biasGradient;
+		}
+	}
+
+	/**
+	 * Compute the gradients of the rows [from, to[ of the im2col matrix.
+	 */
+	private void columnGradients(int from, int to) {
+		int kernelElements = kernelSize - 1;
+		int positions = outputSize / depth;
+		for (int p = from; p < to; p++) {
+			int column = p * kernelElements;
+			for (int k = 0; k < kernelElements; k++) {
+				columnGradients[column + k] = 0;
+			}
+			for (int depthIndex = 0; depthIndex < depth; depthIndex++) {
+				double gradient = outputGradients[depthIndex * positions + p];
+				if (gradient != 0) {
+					KERNELS.axpy(gradient, kernelWeights, depthIndex * kernelSize, columnGradients, column, kernelElements);
 				}
+			}
+		}
+	}
+
+	/**
+	 * Split a range of depth channels (kernel gradients) or of positions (input gradients) of the backward pass.
+	 */
+	private class BackwardTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		final boolean channels;
+		final int from;
+		final int to;
+
+		BackwardTask(boolean channels, int from, int to) {
+			this.channels = channels;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			long work = (long) (to - from) * (kernelSize - 1) * (channels ? outputSize / depth : depth);
+			if (to - from > 1 && work >= 2 * PARALLEL_THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new BackwardTask(channels, from, middle), new BackwardTask(channels, middle, to));
+			} else if (channels) {
+				kernelGradients(from, to);
+			} else {
+				columnGradients(from, to);
+			}
+		}
+	}
 
-				for (int kernelIndex = 0; kernelIndex < kernelSize; kernelIndex++) {
-					KernelArrIndexToDimIndex(kernelIndex, kernelDimIndex);
-					for (int i = 0; i < inputDimension.length; i++) {
-						incrInputIndex[i] = inputDimIndex[i] + kernelDimIndex[i] - padding[i];
+	@Override
+	public void update(double learningRate, double momemtum) {
+		KERNELS.update(kernelWeights, weightGradients, kernelWeights.length, learningRate, momemtum);
+	}
+
+	@Override
+	public double[][] getParameterBlocks() {
+		return new double[][] {kernelWeights};
+	}
+
+	@Override
+	public double[][] getGradientBlocks() {
+		return new double[][] {weightGradients};
+	}
+
+	@Override
+	public void resetGradients() {
+		for (int k = 0; k < weightGradients.length; k++) {
+			weightGradients[k] = 0;
+		}
+	}
+
+	@Override
+	public void addGradients(Layer replica) {
+		ConvolutionalLayer other = (ConvolutionalLayer) replica;
+		KERNELS.add(other.weightGradients, weightGradients, weightGradients.length);
+	}
+
+	@Override
+	public void endTraining() {
+		if (precision == Precision.FLOAT) {
+			Precision.narrow(kernelWeights, kernelWeightsFloat);
+			this.kernelWeights = null;
+		}
+	}
+
+	@Override
+	public void setPrecision(Precision precision) {
+		if (precision == this.precision) {
+			return;
+		}
+		if (precision == Precision.FLOAT) {
+			this.kernelWeightsFloat = Precision.toFloat(kernelWeights);
+			this.kernelWeights = null;
+		} else {
+			this.kernelWeights = Precision.toDouble(kernelWeightsFloat);
+			this.kernelWeightsFloat = null;
+		}
+		this.precision = precision;
+	}
+
+	public Precision getPrecision() {
+		return precision;
+	}
+
+	@Override
+	public ActivationFunction getActivationFunction() {
+		return activationFunction;
+	}
+
+	@Override
+	public double[] getPreActivation() {
+		return activationFunction != null ? interOutput : null;
+	}
+
+	/**
+	 * Compute, for each output position and each kernel element, the index of the input read, or -1 when it falls in the padding.
+	 * The positions are the row-major indices over the output dimensions, position p of the depth channel d is the output index d * positions + p.
+	 * The input read by the kernel element k at the position o is o * stride + k - padding, in each dimension.
+	 * @return the gather table, positions x (kernelSize - 1) row-major, the bias excluded
+	 */
+	int[] gatherIndices() {
+		switch (inputDimension.length) {
+			case 1:
+				return gatherIndices1D();
+			case 2:
+				return gatherIndices2D();
+			case 3:
+				return gatherIndices3D();
+			default:
+				return gatherIndicesND();
+		}
+	}
+
+	private int[] gatherIndices1D() {
+		int[] gather = new int[outputDimension[0] * (kernelSize - 1)];
+		int c = 0;
+		for (int o = 0; o < outputDimension[0]; o++) {
+			for (int k = 0; k < kernelDimension[0]; k++) {
+				int x = o * stride[0] + k - padding[0];
+				gather[c++] = x >= 0 && x < inputDimension[0] ? x : -1;
+			}
+		}
+		return gather;
+	}
+
+	private int[] gatherIndices2D() {
+		int[] gather = new int[outputDimension[0] * outputDimension[1] * (kernelSize - 1)];
+		int c = 0;
+		for (int oy = 0; oy < outputDimension[0]; oy++) {
+			for (int ox = 0; ox < outputDimension[1]; ox++) {
+				for (int ky = 0; ky < kernelDimension[0]; ky++) {
+					int y = oy * stride[0] + ky - padding[0];
+					boolean inY = y >= 0 && y < inputDimension[0];
+					for (int kx = 0; kx < kernelDimension[1]; kx++) {
+						int x = ox * stride[1] + kx - padding[1];
+						gather[c++] = inY && x >= 0 && x < inputDimension[1] ? y * inputDimension[1] + x : -1;
 					}
+				}
+			}
+		}
+		return gather;
+	}
 
-					boolean inCube = true;
-					for (int i = 0; i < inputDimension.length; i++) {
-						if (incrInputIndex[i] < 0 || incrInputIndex[i] >= inputDimension[i]) {
-							inCube = false;
-							break;
+	private int[] gatherIndices3D() {
+		int[] gather = new int[outputDimension[0] * outputDimension[1] * outputDimension[2] * (kernelSize - 1)];
+		int c = 0;
+		for (int oz = 0; oz < outputDimension[0]; oz++) {
+			for (int oy = 0; oy < outputDimension[1]; oy++) {
+				for (int ox = 0; ox < outputDimension[2]; ox++) {
+					for (int kz = 0; kz < kernelDimension[0]; kz++) {
+						int z = oz * stride[0] + kz - padding[0];
+						boolean inZ = z >= 0 && z < inputDimension[0];
+						for (int ky = 0; ky < kernelDimension[1]; ky++) {
+							int y = oy * stride[1] + ky - padding[1];
+							boolean inZY = inZ && y >= 0 && y < inputDimension[1];
+							for (int kx = 0; kx < kernelDimension[2]; kx++) {
+								int x = ox * stride[2] + kx - padding[2];
+								gather[c++] = inZY && x >= 0 && x < inputDimension[2] ? (z * inputDimension[1] + y) * inputDimension[2] + x : -1;
+							}
 						}
 					}
-					if (!inCube) {
-						continue;
-					}
-
-					int incrInputArrIndex = InputDimIndexToArrIndex(incrInputIndex);
-					inputGradients[incrInputArrIndex] += outputGradients[outputIndex] * weights[kernelIndex][depthIndex];
-					weightGradients[kernelIndex][depthIndex] += outputGradients[outputIndex] * input[incrInputArrIndex];
 				}
-				outputIndex++;
 			}
 		}
-
+		return gather;
 	}
 
-	@Override
-	public void update(double learningRate, double momemtum) {
-		//System.out.println("weightGradients: " + Arrays.deepToString(weightGradients));
-		for (int i = 0; i < kernelSize; i++) {
-			for (int j = 0; j < depth; j++) {
-				weights[i][j] -= weightGradients[i][j] * learningRate;
-				weightGradients[i][j] = momemtum * weightGradients[i][j];
+	/**
+	 * Generic construction of the gather table, for any number of dimensions.
+	 */
+	private int[] gatherIndicesND() {
+		int dimensions = inputDimension.length;
+		int kernelElements = kernelSize - 1;
+		int positions = outputSize / depth;
+		int[] outputIndex = new int[dimensions];
+		int[] kernelDimIndex = new int[dimensions];
+		int[] gather = new int[positions * kernelElements];
+		for (int p = 0; p < positions; p++) {
+			// Row-major decomposition of the position, then of each kernel element
+			int rest = p;
+			for (int i = dimensions - 1; i >= 0; i--) {
+				outputIndex[i] = rest % outputDimension[i];
+				rest /= outputDimension[i];
+			}
+			for (int k = 0; k < kernelElements; k++) {
+				KernelArrIndexToDimIndex(k, kernelDimIndex);
+				int index = 0;
+				for (int i = 0; i < dimensions; i++) {
+					int coordinate = outputIndex[i] * stride[i] + kernelDimIndex[i] - padding[i];
+					if (coordinate < 0 || coordinate >= inputDimension[i]) {
+						index = -1;
+						break;
+					}
+					index += coordinate * inputStepSize[i];
+				}
+				gather[p * kernelElements + k] = index;
 			}
 		}
+		return gather;
+	}
+
+	/**
+	 * Get the weights of the kernels, stored depth-major: the weight of kernel element k for the depth channel d is at index d * (kernel volume + 1) + k,
+	 * the last element of each channel being its bias. The array is the storage of the layer, not a copy. Null in float precision outside of a training.
+	 * @return the flat kernel weights
+	 */
+	public double[] getWeights() {
+		return kernelWeights;
 	}
 
 	@Override
@@ -346,14 +571,30 @@ public class ConvolutionalLayer extends Layer {
 	private void initWeight() {
 		for (int i = 0; i < depth; i++) {
 			for (int j = 0; j < kernelSize; j++) {
-				this.weights[j][i] = 1;
+				this.kernelWeights[i * kernelSize + j] = 1;
 				if (j == kernelSize - 1) {
-					this.weights[j][i] = 0;
+					this.kernelWeights[i * kernelSize + j] = 0;
 				}
 			}
 		}
 	}
 
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (weights != null) { // Migrate a model saved with the double[kernelSize][depth] storage
+			kernelWeights = new double[kernelSize * depth];
+			for (int k = 0; k < kernelSize; k++) {
+				for (int d = 0; d < depth; d++) {
+					kernelWeights[d * kernelSize + k] = weights[k][d];
+				}
+			}
+			weights = null;
+		}
+		if (precision == null) { // Model saved before the precision modes
+			precision = Precision.DOUBLE;
+		}
+	}
+
 
 	public static void main(String[] args) {
 		// Test forward
@@ -1,23 +1,48 @@
 package neuralnetwork;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
 import neuralnetwork.function.activation.ActivationFunction;
 import neuralnetwork.function.activation.ReLU;
 
 public class DenseLayer extends Layer {
 
+	private static final long serialVersionUID = 834249524990977010L;
+
+	private static final int BLOCK_SIZE = 64; // Tile size of the batched kernels, a 64x64 tile of weights fits in L2
+
 	private ActivationFunction activationFunction;
 	private final int inputSize;
 	private final int outputSize;
 	
-	transient double[][] weightGradients;
+	transient double[] weightGradients; // Row-major, same layout as weightMatrix
 	transient double[] biasGradients;
-	transient double[] interOutput;
+	transient double[] interOutput; // Pre-activations of the last forward
+
+	// Sparse input, set instead of input and batchInput when the layer is the first of a network trained on sparse vectors.
+	// The non-zeros of a row are sparseIndices[k], sparseValues[k] for k in [rowStart, rowEnd[, the rows of a batch start at sparseRowStarts[sparseFirstRow + r]
+	transient boolean sparse;
+	transient int[] sparseIndices;
+	transient double[] sparseValues;
+	transient int sparseRowStart;
+	transient int sparseRowEnd;
+	transient int[] sparseRowStarts;
+	transient int sparseFirstRow;
 
-	double[][] weights;
+	double[] weightMatrix; // Row-major outputSize x inputSize: the weight from input j to output i is weightMatrix[i * inputSize + j]
 	double[] bias;
 
+	Precision precision = Precision.DOUBLE;
+	float[] weightMatrixFloat; // Storage of the weights in float precision, same layout as weightMatrix. weightMatrix is then only a training copy
+	float[] biasFloat;
+
+	boolean[] pruned; // Weights kept at zero since their pruning, same layout as weightMatrix. Null if the layer has not been pruned, see Pruning
+
+	private double[][] weights; // Legacy storage, only set while loading a model saved before the flat storage
+
 	public DenseLayer(int inputSize, int outputSize) {
-		this.weights = new double[outputSize][inputSize];
+		this.weightMatrix = new double[outputSize * inputSize];
 		this.bias = new double[outputSize];
 		this.inputSize = inputSize;
 		this.outputSize = outputSize;
@@ -29,6 +54,23 @@ public class DenseLayer extends Layer {
 		this.activationFunction = activationFunction;
 	}
 
+	/**
+	 * Create a layer with zero parameters stored in the given precision, to be filled by a loader.
+	 */
+	DenseLayer(int inputSize, int outputSize, ActivationFunction activationFunction, Precision precision) {
+		this.inputSize = inputSize;
+		this.outputSize = outputSize;
+		this.activationFunction = activationFunction;
+		this.precision = precision;
+		if (precision == Precision.FLOAT) {
+			this.weightMatrixFloat = new float[outputSize * inputSize];
+			this.biasFloat = new float[outputSize];
+		} else {
+			this.weightMatrix = new double[outputSize * inputSize];
+			this.bias = new double[outputSize];
+		}
+	}
+
 	@Override
 	public void initForPredict() {
 		this.interOutput = new double[outputSize];
@@ -37,41 +79,102 @@ public class DenseLayer extends Layer {
 
 	@Override
 	public void initForTraining() {
+		if (precision == Precision.FLOAT && weightMatrix == null) { // Replicas share the copy of their layer
+			this.weightMatrix = Precision.toDouble(weightMatrixFloat);
+			this.bias = Precision.toDouble(biasFloat);
+		}
 		this.biasGradients = new double[getOutputDimension()];
-		this.weightGradients = new double[outputSize][inputSize];
+		this.weightGradients = new double[outputSize * inputSize];
 		this.interOutput = new double[outputSize];
 		super.initForTraining();
 	}
+
+	@Override
+	public void initForBatch(int batchCapacity) {
+		super.initForBatch(batchCapacity);
+		if (activationFunction != null && batchPreActivation == null) { // Kept by the batch forward for the activation gradients
+			this.batchPreActivation = new double[batchCapacity * outputSize];
+		}
+	}
 	
 	@Override
 	public void clear() {
 		this.biasGradients = null;
 		this.weightGradients = null;
 		this.interOutput = null;
+		this.sparse = false;
+		this.sparseIndices = null;
+		this.sparseValues = null;
+		this.sparseRowStarts = null;
 		super.clear();
 	}
 
 	@Override
-	public void forward() {
+	public void setInput(double[] input) {
+		this.sparse = false;
+		super.setInput(input);
+	}
 
-		for (int i = 0; i < outputSize; i++) {
-			output[i] = 0;
-			for (int j = 0; j < inputSize; j++) {
-				output[i] += input[j] * weights[i][j];
+	@Override
+	public void setBatchInput(double[] batchInput, int batchSize) {
+		this.sparse = false;
+		super.setBatchInput(batchInput, batchSize);
+	}
+
+	/**
+	 * Set a sparse input: the non-zeros indices[k], values[k] for k in [from, to[, in increasing order of index.
+	 * The forward then costs O(non-zeros x outputs), and the backward only updates the weights of the non-zero inputs.
+	 * The gradients of the inputs are not computed, so the layer must be the first of the network. Cleared by {@link #setInput(double[])}.
+	 */
+	void setSparseInput(int[] indices, double[] values, int from, int to) {
+		this.sparse = true;
+		this.sparseIndices = indices;
+		this.sparseValues = values;
+		this.sparseRowStart = from;
+		this.sparseRowEnd = to;
+	}
+
+	/**
+	 * Set a sparse batch input in compressed rows: the non-zeros of the row r are indices[k], values[k] for k in [rowStarts[firstRow + r], rowStarts[firstRow + r + 1][.
+	 * Same restrictions as {@link #setSparseInput(int[], double[], int, int)}, cleared by {@link #setBatchInput(double[], int)}.
+	 */
+	void setSparseBatchInput(int[] rowStarts, int firstRow, int[] indices, double[] values, int batchSize) {
+		this.sparse = true;
+		this.sparseRowStarts = rowStarts;
+		this.sparseFirstRow = firstRow;
+		this.sparseIndices = indices;
+		this.sparseValues = values;
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	public void forward() {
+		double[] preActivation = activationFunction != null ? interOutput : output;
+		if (sparse) {
+			sparseForward(sparseRowStart, sparseRowEnd, preActivation, 0);
+		} else if (weightMatrix != null) {
+			for (int i = 0; i < outputSize; i++) {
+				preActivation[i] = bias[i] + KERNELS.dot(weightMatrix, i * inputSize, input, 0, inputSize);
+			}
+		} else {
+			for (int i = 0; i < outputSize; i++) {
+				preActivation[i] = biasFloat[i] + KERNELS.dot(weightMatrixFloat, i * inputSize, input, 0, inputSize);
 			}
-			output[i] += bias[i];
-			//interOutput[i] = output[i];   
 		}
 		
 		if ( activationFunction != null) {
-			 activationFunction.activate(output, output);
+			 activationFunction.activate(interOutput, 0, output, 0, outputSize);
 		}
 	}
 	
 	@Override
 	public void backward() {
-		if ( activationFunction != null) {
-			activationFunction.activateGradients(interOutput, output, outputGradients);
+		if (activationFunction != null && !fusedActivationGradients) {
+			activationFunction.activateGradients(interOutput, 0, output, 0, outputGradients, 0, outputSize);
+		}
+		if (sparse) {
+			sparseBackward(sparseRowStart, sparseRowEnd, outputGradients, 0);
+			return;
 		}
 		
 		for (int j = 0; j < inputSize; j++) {
@@ -79,26 +182,277 @@ public class DenseLayer extends Layer {
 		}
 
 		for (int i = 0; i < outputSize; i++) {
-			for (int j = 0; j < inputSize; j++) {
-				inputGradients[j] += outputGradients[i] * weights[i][j];
-				weightGradients[i][j] += outputGradients[i] * input[j];
+			int rowOffset = i * inputSize;
+			double gradient = outputGradients[i];
+			KERNELS.axpy(gradient, weightMatrix, rowOffset, inputGradients, 0, inputSize);
+			KERNELS.axpy(gradient, input, 0, weightGradients, rowOffset, inputSize);
+			biasGradients[i] += gradient;
+		}
+	}
+
+	/**
+	 * Batched forward: batchOutput = batchInput * weights^T + bias, computed as a cache-blocked matrix-matrix product.
+	 * The pre-activations are kept in batchPreActivation, and the rows are activated in place in the flat buffers.
+	 */
+	@Override
+	public void forwardBatch() {
+		double[] preActivation = activationFunction != null ? batchPreActivation : batchOutput;
+		if (sparse) {
+			for (int r = 0; r < batchSize; r++) {
+				int row = sparseFirstRow + r;
+				sparseForward(sparseRowStarts[row], sparseRowStarts[row + 1], preActivation, r * outputSize);
+			}
+		} else {
+			denseForwardBatch(preActivation);
+		}
+
+		if (activationFunction != null) {
+			for (int r = 0; r < batchSize; r++) {
+				activationFunction.activate(batchPreActivation, r * outputSize, batchOutput, r * outputSize, outputSize);
+			}
+		}
+	}
+
+	private void denseForwardBatch(double[] preActivation) {
+		for (int r = 0; r < batchSize; r++) {
+			for (int i = 0; i < outputSize; i++) {
+				preActivation[r * outputSize + i] = weightMatrix != null ? bias[i] : biasFloat[i];
+			}
+		}
+
+		for (int i0 = 0; i0 < outputSize; i0 += BLOCK_SIZE) {
+			int iMax = Math.min(i0 + BLOCK_SIZE, outputSize);
+			for (int j0 = 0; j0 < inputSize; j0 += BLOCK_SIZE) {
+				int jMax = Math.min(j0 + BLOCK_SIZE, inputSize);
+				for (int r = 0; r < batchSize; r++) {
+					int inputOffset = r * inputSize;
+					int outputOffset = r * outputSize;
+					if (weightMatrix != null) {
+						for (int i = i0; i < iMax; i++) {
+							preActivation[outputOffset + i] += KERNELS.dot(weightMatrix, i * inputSize + j0, batchInput, inputOffset + j0, jMax - j0);
+						}
+					} else {
+						for (int i = i0; i < iMax; i++) {
+							preActivation[outputOffset + i] += KERNELS.dot(weightMatrixFloat, i * inputSize + j0, batchInput, inputOffset + j0, jMax - j0);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Batched backward. The gradients of the whole batch are accumulated in weightGradients and biasGradients.
+	 */
+	@Override
+	public void backwardBatch() {
+		if (activationFunction != null && !fusedActivationGradients) {
+			for (int r = 0; r < batchSize; r++) {
+				int outputOffset = r * outputSize;
+				activationFunction.activateGradients(batchPreActivation, outputOffset, batchOutput, outputOffset, batchOutputGradients, outputOffset, outputSize);
+			}
+		}
+		if (sparse) {
+			for (int r = 0; r < batchSize; r++) {
+				int row = sparseFirstRow + r;
+				sparseBackward(sparseRowStarts[row], sparseRowStarts[row + 1], batchOutputGradients, r * outputSize);
+			}
+			return;
+		}
+
+		for (int k = 0; k < batchSize * inputSize; k++) {
+			batchInputGradients[k] = 0;
+		}
+
+		for (int i0 = 0; i0 < outputSize; i0 += BLOCK_SIZE) {
+			int iMax = Math.min(i0 + BLOCK_SIZE, outputSize);
+			for (int j0 = 0; j0 < inputSize; j0 += BLOCK_SIZE) {
+				int jMax = Math.min(j0 + BLOCK_SIZE, inputSize);
+				for (int r = 0; r < batchSize; r++) {
+					int inputOffset = r * inputSize;
+					int outputOffset = r * outputSize;
+					for (int i = i0; i < iMax; i++) {
+						int rowOffset = i * inputSize + j0;
+						double gradient = batchOutputGradients[outputOffset + i];
+						KERNELS.axpy(gradient, weightMatrix, rowOffset, batchInputGradients, inputOffset + j0, jMax - j0);
+						KERNELS.axpy(gradient, batchInput, inputOffset + j0, weightGradients, rowOffset, jMax - j0);
+					}
+				}
+			}
+		}
+
+		for (int r = 0; r < batchSize; r++) {
+			int outputOffset = r * outputSize;
+			for (int i = 0; i < outputSize; i++) {
+				biasGradients[i] += batchOutputGradients[outputOffset + i];
 			}
-			biasGradients[i] = outputGradients[i];
 		}
 	}
 	
+	/**
+	 * Pre-activations of the sparse row [from, to[ of sparseIndices and sparseValues: only the columns of the non-zero inputs are read.
+	 */
+	private void sparseForward(int from, int to, double[] preActivation, int outputOffset) {
+		int[] indices = sparseIndices;
+		double[] values = sparseValues;
+		if (weightMatrix != null) {
+			for (int i = 0; i < outputSize; i++) {
+				int rowOffset = i * inputSize;
+				double sum = bias[i];
+				for (int k = from; k < to; k++) {
+					sum += weightMatrix[rowOffset + indices[k]] * values[k];
+				}
+				preActivation[outputOffset + i] = sum;
+			}
+		} else {
+			for (int i = 0; i < outputSize; i++) {
+				int rowOffset = i * inputSize;
+				double sum = biasFloat[i];
+				for (int k = from; k < to; k++) {
+					sum += weightMatrixFloat[rowOffset + indices[k]] * values[k];
+				}
+				preActivation[outputOffset + i] = sum;
+			}
+		}
+	}
+
+	/**
+	 * Accumulate the gradients of the sparse row [from, to[: only the columns of the non-zero inputs of weightGradients are updated.
+	 */
+	private void sparseBackward(int from, int to, double[] gradients, int gradientOffset) {
+		int[] indices = sparseIndices;
+		double[] values = sparseValues;
+		for (int i = 0; i < outputSize; i++) {
+			int rowOffset = i * inputSize;
+			double gradient = gradients[gradientOffset + i];
+			for (int k = from; k < to; k++) {
+				weightGradients[rowOffset + indices[k]] += gradient * values[k];
+			}
+			biasGradients[i] += gradient;
+		}
+	}
+
 	@Override
 	public void update(double learningRate, double momemtum) {
-		for (int i = 0; i < outputSize; i++) {
-			for (int j = 0; j < inputSize; j++) {
-				weights[i][j] -= weightGradients[i][j] * learningRate;
-				weightGradients[i][j] = momemtum * weightGradients[i][j];
+		KERNELS.update(weightMatrix, weightGradients, weightMatrix.length, learningRate, momemtum);
+		KERNELS.update(bias, biasGradients, outputSize, learningRate, momemtum);
+	}
+
+	@Override
+	public void afterUpdate() {
+		if (pruned == null) {
+			return;
+		}
+		for (int k = 0; k < pruned.length; k++) {
+			if (pruned[k]) {
+				weightMatrix[k] = 0;
+				weightGradients[k] = 0; // The momentum
 			}
-			bias[i] -= biasGradients[i] * learningRate;
-			biasGradients[i] = momemtum * biasGradients[i];
 		}
 	}
 
+	@Override
+	public double[][] getParameterBlocks() {
+		return new double[][] {weightMatrix, bias};
+	}
+
+	@Override
+	public double[][] getGradientBlocks() {
+		return new double[][] {weightGradients, biasGradients};
+	}
+
+	@Override
+	public void resetGradients() {
+		for (int k = 0; k < weightGradients.length; k++) {
+			weightGradients[k] = 0;
+		}
+		for (int i = 0; i < outputSize; i++) {
+			biasGradients[i] = 0;
+		}
+	}
+
+	@Override
+	public void addGradients(Layer replica) {
+		DenseLayer other = (DenseLayer) replica;
+		KERNELS.add(other.weightGradients, weightGradients, weightGradients.length);
+		KERNELS.add(other.biasGradients, biasGradients, outputSize);
+	}
+
+	@Override
+	public void endTraining() {
+		if (precision == Precision.FLOAT) {
+			Precision.narrow(weightMatrix, weightMatrixFloat);
+			Precision.narrow(bias, biasFloat);
+			this.weightMatrix = null;
+			this.bias = null;
+		}
+	}
+
+	@Override
+	public void setPrecision(Precision precision) {
+		if (precision == this.precision) {
+			return;
+		}
+		if (precision == Precision.FLOAT) {
+			this.weightMatrixFloat = Precision.toFloat(weightMatrix);
+			this.biasFloat = Precision.toFloat(bias);
+			this.weightMatrix = null;
+			this.bias = null;
+		} else {
+			this.weightMatrix = Precision.toDouble(weightMatrixFloat);
+			this.bias = Precision.toDouble(biasFloat);
+			this.weightMatrixFloat = null;
+			this.biasFloat = null;
+		}
+		this.precision = precision;
+	}
+
+	public Precision getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Get the weights of the layer, stored row-major: the weight from input j to output i is at index i * inputDimension + j.
+	 * The array is the storage of the layer, not a copy. Null in float precision outside of a training, see {@link #getFloatWeights()}.
+	 * @return the flat weight matrix
+	 */
+	public double[] getWeights() {
+		return weightMatrix;
+	}
+
+	/**
+	 * Get the biases of the layer. The array is the storage of the layer, not a copy. Null in float precision outside of a training.
+	 * @return the biases
+	 */
+	public double[] getBias() {
+		return bias;
+	}
+
+	/**
+	 * Get the weights of the layer in float precision, same layout as {@link #getWeights()}. Null in double precision.
+	 * @return the flat weight matrix
+	 */
+	public float[] getFloatWeights() {
+		return weightMatrixFloat;
+	}
+
+	/**
+	 * Get the biases of the layer in float precision. Null in double precision.
+	 * @return the biases
+	 */
+	public float[] getFloatBias() {
+		return biasFloat;
+	}
+
+	@Override
+	public ActivationFunction getActivationFunction() {
+		return activationFunction;
+	}
+
+	@Override
+	public double[] getPreActivation() {
+		return activationFunction != null ? interOutput : null;
+	}
 
 	@Override
 	public String toString() {
@@ -135,10 +489,24 @@ public class DenseLayer extends Layer {
 	private void initWeight() {
 		for (int i = 0; i < outputSize; i++) {
 			for (int j = 0; j < inputSize; j++) {
-				this.weights[i][j] = (Math.random() + 0.1)/5;
+				this.weightMatrix[i * inputSize + j] = (Math.random() + 0.1)/5;
 			}
 			this.bias[i] = Math.random()/5;
 		}
 		activationFunction = new ReLU(); // default activation function
 	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (weights != null) { // Migrate a model saved with the double[][] storage
+			weightMatrix = new double[outputSize * inputSize];
+			for (int i = 0; i < outputSize; i++) {
+				System.arraycopy(weights[i], 0, weightMatrix, i * inputSize, inputSize);
+			}
+			weights = null;
+		}
+		if (precision == null) { // Model saved before the precision modes
+			precision = Precision.DOUBLE;
+		}
+	}
 }
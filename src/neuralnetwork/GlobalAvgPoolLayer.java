@@ -0,0 +1,88 @@
+package neuralnetwork;
+
+/**
+ * Global average pooling: each channel is reduced to the mean of its volume, the output has one value per channel.
+ * Same input layout as {@link PoolingLayer}.
+ */
+public class GlobalAvgPoolLayer extends Layer {
+
+	private static final long serialVersionUID = 1L;
+
+	int[] inputDimension; // The dimensions of the volume of a channel
+	int channels;
+
+	private final int inputVolume;
+
+	/**
+	 * Create a global average pooling layer.
+	 * @param inputDimension the dimensions of the volume of a channel
+	 * @param channels the number of channels
+	 */
+	public GlobalAvgPoolLayer(int[] inputDimension, int channels) {
+		if (channels <= 0) {
+			throw new IllegalArgumentException("The number of channels must be positive");
+		}
+		int inputVolume = 1;
+		for (int i = 0; i < inputDimension.length; i++) {
+			if (inputDimension[i] <= 0) {
+				throw new IllegalArgumentException("The input dimension must be positive");
+			}
+			inputVolume *= inputDimension[i];
+		}
+		this.inputDimension = inputDimension;
+		this.channels = channels;
+		this.inputVolume = inputVolume;
+	}
+
+	@Override
+	public void forward() {
+		double inverseVolume = 1.0 / inputVolume;
+		for (int c = 0; c < channels; c++) {
+			double sum = 0;
+			for (int i = c * inputVolume; i < (c + 1) * inputVolume; i++) {
+				sum += input[i];
+			}
+			output[c] = sum * inverseVolume;
+		}
+	}
+
+	@Override
+	public void backward() {
+		double inverseVolume = 1.0 / inputVolume;
+		for (int c = 0; c < channels; c++) {
+			double gradient = outputGradients[c] * inverseVolume;
+			for (int i = c * inputVolume; i < (c + 1) * inputVolume; i++) {
+				inputGradients[i] = gradient;
+			}
+		}
+	}
+
+	@Override
+	public void update(double learningRate, double momemtum) {}
+
+	@Override
+	public int getInputDimension() {
+		return channels * inputVolume;
+	}
+
+	@Override
+	public int getOutputDimension() {
+		return channels;
+	}
+
+	@Override
+	public int getParameterCount() {
+		return 0;
+	}
+
+	@Override
+	public void resume() {
+		String s = "GlobalAvgPool Layer ";
+		for (int i = 0; i < inputDimension.length; i++) {
+			s += inputDimension[i] + "x";
+		}
+		s = s.substring(0, s.length()-1);
+		s += "[" + channels + "]->" + channels;
+		System.out.println(s);
+	}
+}
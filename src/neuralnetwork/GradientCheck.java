@@ -0,0 +1,140 @@
+package neuralnetwork;
+
+import java.util.Random;
+
+import neuralnetwork.function.activation.Affine;
+import neuralnetwork.function.activation.GELU;
+import neuralnetwork.function.activation.ReLU;
+import neuralnetwork.function.activation.Sigmoid;
+import neuralnetwork.function.activation.Softmax;
+import neuralnetwork.function.activation.Softplus;
+import neuralnetwork.function.activation.Swish;
+import neuralnetwork.function.activation.Tanh;
+
+/**
+ * Compare the gradients computed by the backward pass of a layer with central finite differences.
+ * The checked loss is a fixed random projection of the output, sum(output[i] * r[i]), so the output gradients are r.
+ * Run the main to check the layers of the library.
+ */
+public final class GradientCheck {
+
+	private static final double EPSILON = 1e-6; // The step of the finite differences
+	private static final double TOLERANCE = 1e-5; // The maximum relative error accepted by the main
+
+	private GradientCheck() {}
+
+	/**
+	 * Check the gradients of the parameters and of the input of a layer.
+	 * The layer is initialized for the training, and its parameters are restored after each difference.
+	 * @param layer the layer, with parameters in double precision
+	 * @param input an input of the layer
+	 * @param seed the seed of the random projection
+	 * @return the maximum relative error between the computed and the estimated gradients
+	 */
+	public static double check(Layer layer, double[] input, long seed) {
+		Random random = new Random(seed);
+		double[] projection = new double[layer.getOutputDimension()];
+		for (int i = 0; i < projection.length; i++) {
+			projection[i] = random.nextDouble() - 0.5;
+		}
+
+		layer.initForTraining();
+		layer.resetGradients();
+		double[] inputCopy = input.clone();
+		layer.setInput(inputCopy);
+		layer.forward();
+		layer.setOutputGradients(projection.clone());
+		layer.backward();
+		double[] inputGradients = layer.getInputGradients().clone();
+
+		double maxError = 0;
+		double[][] parameters = layer.getParameterBlocks();
+		double[][] gradients = layer.getGradientBlocks();
+		for (int b = 0; b < parameters.length; b++) {
+			for (int k = 0; k < parameters[b].length; k++) {
+				double value = parameters[b][k];
+				parameters[b][k] = value + EPSILON;
+				double plus = loss(layer, projection);
+				parameters[b][k] = value - EPSILON;
+				double minus = loss(layer, projection);
+				parameters[b][k] = value;
+				maxError = Math.max(maxError, relativeError(gradients[b][k], (plus - minus) / (2 * EPSILON)));
+			}
+		}
+		for (int i = 0; i < inputCopy.length; i++) {
+			double value = inputCopy[i];
+			inputCopy[i] = value + EPSILON;
+			double plus = loss(layer, projection);
+			inputCopy[i] = value - EPSILON;
+			double minus = loss(layer, projection);
+			inputCopy[i] = value;
+			maxError = Math.max(maxError, relativeError(inputGradients[i], (plus - minus) / (2 * EPSILON)));
+		}
+		return maxError;
+	}
+
+	private static double loss(Layer layer, double[] projection) {
+		layer.forward();
+		double[] output = layer.getOutput();
+		double loss = 0;
+		for (int i = 0; i < output.length; i++) {
+			loss += output[i] * projection[i];
+		}
+		return loss;
+	}
+
+	private static double relativeError(double computed, double estimated) {
+		double scale = Math.max(1, Math.max(Math.abs(computed), Math.abs(estimated)));
+		return Math.abs(computed - estimated) / scale;
+	}
+
+	public static void main(String[] args) {
+		boolean failed = false;
+		failed |= report("conv 1D 17, kernel 4, stride 3, padding 2", new ConvolutionalLayer(new int[] { 17 }, new int[] { 4 }, 3, new int[] { 3 }, new int[] { 2 }, new Sigmoid()));
+		failed |= report("conv 2D 9x7, kernel 3x2, stride 2x1", new ConvolutionalLayer(new int[] { 9, 7 }, new int[] { 3, 2 }, 2, new int[] { 2, 1 }, new int[] { 1, 0 }, new Affine()));
+		failed |= report("conv 2D 8x8, kernel 3x3, stride 1x1", new ConvolutionalLayer(new int[] { 8, 8 }, new int[] { 3, 3 }, 4, new int[] { 1, 1 }, new int[] { 1, 1 }, new Sigmoid()));
+		failed |= report("conv 3D 5x6x7, kernel 3x2x3, stride 2x1x3", new ConvolutionalLayer(new int[] { 5, 6, 7 }, new int[] { 3, 2, 3 }, 2, new int[] { 2, 1, 3 }, new int[] { 1, 1, 0 }, new Affine()));
+		failed |= report("conv 4D 5x4x4x3, kernel 2x3x2x1", new ConvolutionalLayer(new int[] { 5, 4, 4, 3 }, new int[] { 2, 3, 2, 1 }, 2, new int[] { 2, 1, 1, 2 }, new int[] { 1, 1, 0, 0 }, new Sigmoid()));
+		failed |= report("conv 2D 64x64, kernel 5x5 (parallel)", new ConvolutionalLayer(new int[] { 64, 64 }, new int[] { 5, 5 }, 8, new int[] { 1, 1 }, new int[] { 2, 2 }, new Affine()));
+		failed |= report("max pool 2D 9x7[3], pool 3x2, stride 2x2", new MaxPoolLayer(new int[] { 9, 7 }, 3, new int[] { 3, 2 }, new int[] { 2, 2 }, new int[] { 1, 1 }));
+		failed |= report("max pool 3D 4x4x4[2], pool 2x2x2", new MaxPoolLayer(new int[] { 4, 4, 4 }, 2, new int[] { 2, 2, 2 }));
+		failed |= report("avg pool 2D 9x7[3], pool 3x3, stride 2x1", new AvgPoolLayer(new int[] { 9, 7 }, 3, new int[] { 3, 3 }, new int[] { 2, 1 }, new int[] { 1, 1 }));
+		failed |= report("avg pool 1D 16[4], pool 4", new AvgPoolLayer(new int[] { 16 }, 4, new int[] { 4 }));
+		failed |= report("global avg pool 5x6[3]", new GlobalAvgPoolLayer(new int[] { 5, 6 }, 3));
+		failed |= report("dense 12 -> 5",new DenseLayer(12, 5, new Sigmoid()));
+		failed |= report("dense 12 -> 5, softmax", new DenseLayer(12, 5, new Softmax()));
+		failed |= report("dense 12 -> 5, leaky relu treshold 0.1", new DenseLayer(12, 5, new ReLU(0.1, true)));
+		failed |= report("dense 12 -> 5, tanh", new DenseLayer(12, 5, new Tanh()));
+		failed |= report("dense 12 -> 5, gelu", new DenseLayer(12, 5, new GELU()));
+		failed |= report("dense 12 -> 5, fast gelu", new DenseLayer(12, 5, new GELU(true)));
+		failed |= report("dense 12 -> 5, swish beta 1.5", new DenseLayer(12, 5, new Swish(1.5, false)));
+		failed |= report("dense 12 -> 5, softplus", new DenseLayer(12, 5, new Softplus()));
+		failed |= report("sparse dense 12 -> 5, density 30%", pruned(new DenseLayer(12, 5, new Sigmoid()), 0.7));
+		if (failed) {
+			System.exit(1);
+		}
+	}
+
+	private static SparseDenseLayer pruned(DenseLayer layer, double sparsity) {
+		Pruning.prune(layer, sparsity);
+		return SparseDenseLayer.of(layer);
+	}
+
+	private static boolean report(String name, Layer layer) {
+		Random random = new Random(7);
+		layer.initForTraining();
+		for (double[] block : layer.getParameterBlocks()) {
+			for (int k = 0; k < block.length; k++) {
+				block[k] = random.nextDouble() - 0.5;
+			}
+		}
+		double[] input = new double[layer.getInputDimension()];
+		for (int i = 0; i < input.length; i++) {
+			input[i] = random.nextDouble() - 0.5;
+		}
+		double error = check(layer, input, 11);
+		boolean failed = error > TOLERANCE;
+		System.out.printf("%-44s max relative error %.2e %s%n", name, error, failed ? "FAILED" : "ok");
+		return failed;
+	}
+}
@@ -0,0 +1,66 @@
+package neuralnetwork;
+
+import neuralnetwork.monitor.EpochMetrics;
+import neuralnetwork.monitor.TrainingListener;
+
+/**
+ * Gradual magnitude pruning of the dense layers of a network during its training. At the end of each epoch of [startEpoch, endEpoch],
+ * the layers are pruned to the sparsity finalSparsity * (1 - (1 - t)^3), t going from 1 / (endEpoch - startEpoch + 1) to 1:
+ * most of the weights are pruned early, while the network can still recover, and the last steps are small.
+ * The pruned weights stay zero until the end of the training. Call {@link NeuralNetwork#sparsify()} after the training to store the layers in compressed rows.
+ * @see Pruning
+ */
+public class GradualPruning implements TrainingListener {
+
+	private final double finalSparsity;
+	private final int startEpoch;
+	private final int endEpoch;
+	private NeuralNetwork network;
+
+	/**
+	 * @param finalSparsity the fraction of zero weights of each dense layer at the end of the pruning
+	 * @param startEpoch the first epoch pruned, from 0
+	 * @param endEpoch the epoch reaching the final sparsity
+	 */
+	public GradualPruning(double finalSparsity, int startEpoch, int endEpoch) {
+		if (finalSparsity < 0 || finalSparsity > 1) {
+			throw new IllegalArgumentException("The sparsity must be between 0 and 1, got " + finalSparsity + ".");
+		}
+		if (startEpoch < 0 || endEpoch < startEpoch) {
+			throw new IllegalArgumentException("Invalid pruning epochs [" + startEpoch + ", " + endEpoch + "].");
+		}
+		this.finalSparsity = finalSparsity;
+		this.startEpoch = startEpoch;
+		this.endEpoch = endEpoch;
+	}
+
+	@Override
+	public void trainingStarted(NeuralNetwork network, int epochs, int samples) {
+		this.network = network;
+	}
+
+	@Override
+	public void epochEnded(EpochMetrics metrics) {
+		double sparsity = sparsity(metrics.getEpoch());
+		if (sparsity == 0) {
+			return;
+		}
+		for (Layer layer : network.getLayers()) {
+			if (layer instanceof DenseLayer) {
+				Pruning.prune((DenseLayer) layer, sparsity);
+			}
+		}
+	}
+
+	/**
+	 * @param epoch the index of the epoch, from 0
+	 * @return the target sparsity at the end of the epoch, 0 before the start of the pruning
+	 */
+	public double sparsity(int epoch) {
+		if (epoch < startEpoch) {
+			return 0;
+		}
+		double t = Math.min(1, (double) (epoch - startEpoch + 1) / (endEpoch - startEpoch + 1));
+		return finalSparsity * (1 - Math.pow(1 - t, 3));
+	}
+}
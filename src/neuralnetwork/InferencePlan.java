@@ -0,0 +1,516 @@
+package neuralnetwork;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import neuralnetwork.function.activation.ActivationFunction;
+import neuralnetwork.function.activation.Affine;
+import neuralnetwork.function.activation.ReLU;
+import neuralnetwork.function.activation.Sigmoid;
+import neuralnetwork.kernel.Kernels;
+import neuralnetwork.kernel.Kernels.Activation;
+
+/**
+ * Immutable, inference-only plan compiled from a network.
+ * The plan copies the parameters of the network and keeps no training state, so the network can be trained or modified afterwards.
+ * At compile time:
+ * <ul>
+ * <li>the affine activations are folded into the weights of their dense layer,</li>
+ * <li>a dense layer without activation is folded into the next dense layer when the product is not larger than the two layers,</li>
+ * <li>layers with a constant output (dense layers with zero weights, and any layer fed by a constant) are evaluated once,</li>
+ * <li>the ReLU, leaky ReLU and sigmoid activations are fused in the kernel of the dense layers, which reads the weights transposed,</li>
+ * <li>the intermediate outputs are placed in one arena per session, two outputs share memory when their lifetimes do not overlap.</li>
+ * </ul>
+ * Other layers are run through a private copy of the layer.
+ * The plan is thread-safe; {@link #predict(double[])} allocates its buffers, use a {@link Session} per thread for allocation-free predictions.
+ * @see NeuralNetwork#compile()
+ */
+public final class InferencePlan {
+
+	private static final Kernels KERNELS = Kernels.get();
+
+	private final Stage[] stages;
+	private final int inputDimension;
+	private final int outputDimension;
+	private final int[] offsets; // The offset in the arena of the output of each stage, the output of the last stage is written by the caller
+	private final int arenaSize;
+
+	private InferencePlan(Stage[] stages, int inputDimension) {
+		this.stages = stages;
+		this.inputDimension = inputDimension;
+		this.outputDimension = stages[stages.length - 1].outputDimension;
+		this.offsets = new int[stages.length];
+		this.arenaSize = allocate(stages, offsets);
+	}
+
+	/**
+	 * Compile the layers of a network.
+	 */
+	static InferencePlan compile(List<Layer> layers) {
+		if (layers.isEmpty()) {
+			throw new IllegalStateException("The network has no layer.");
+		}
+		List<Stage> stages = new ArrayList<Stage>(layers.size());
+		for (Layer layer : layers) {
+			Stage stage = layer instanceof DenseLayer ? DenseStage.of((DenseLayer) layer) : new LayerStage(layer);
+			stages.add(stage.simplify());
+		}
+
+		// Fold the linear dense stages into the next dense stage
+		for (int i = stages.size() - 2; i >= 0; i--) {
+			if (stages.get(i) instanceof DenseStage && stages.get(i + 1) instanceof DenseStage) {
+				DenseStage first = (DenseStage) stages.get(i);
+				DenseStage second = (DenseStage) stages.get(i + 1);
+				if (first.activationFunction == null && first.inputDimension * second.outputDimension <= first.outputDimension * (first.inputDimension + second.outputDimension)) {
+					stages.set(i, second.compose(first).simplify());
+					stages.remove(i + 1);
+				}
+			}
+		}
+
+		// Evaluate the stages fed by a constant
+		for (int i = 0; i < stages.size() - 1; ) {
+			if (stages.get(i) instanceof ConstantStage) {
+				double[] values = ((ConstantStage) stages.get(i)).values;
+				stages.set(i, new ConstantStage(stages.get(i + 1).evaluate(values)));
+				stages.remove(i + 1);
+			} else {
+				i++;
+			}
+		}
+		// Drop the stages only read by a constant
+		for (int i = stages.size() - 1; i > 0; i--) {
+			if (stages.get(i) instanceof ConstantStage) {
+				stages.subList(0, i).clear();
+				break;
+			}
+		}
+
+		for (Stage stage : stages) {
+			stage.narrow();
+		}
+		return new InferencePlan(stages.toArray(new Stage[0]), layers.get(0).getInputDimension());
+	}
+
+	/**
+	 * Place the output of each stage but the last in the arena, at the lowest offset free during its lifetime.
+	 * The output of the stage i is alive from the stage i to the stage i + 1, so it must not overlap the outputs still alive at the stage i.
+	 * @return the size of the arena
+	 */
+	private static int allocate(Stage[] stages, int[] offsets) {
+		int arenaSize = 0;
+		for (int i = 0; i < stages.length - 1; i++) {
+			int size = stages[i].outputDimension;
+			int offset = 0;
+			boolean moved = true;
+			while (moved) {
+				moved = false;
+				for (int j = 0; j < i; j++) {
+					boolean alive = j + 1 >= i; // The output j is read by the stage j + 1
+					if (alive && offset < offsets[j] + stages[j].outputDimension && offsets[j] < offset + size) {
+						offset = offsets[j] + stages[j].outputDimension;
+						moved = true;
+					}
+				}
+			}
+			offsets[i] = offset;
+			arenaSize = Math.max(arenaSize, offset + size);
+		}
+		return arenaSize;
+	}
+
+	/**
+	 * Compute the prediction of the plan for the given input. Thread-safe, allocates its buffers.
+	 * @param input the input of the network
+	 * @return the prediction of the network
+	 */
+	public double[] predict(double[] input) {
+		double[] output = new double[outputDimension];
+		new Session().predictInto(input, 0, output, 0);
+		return output;
+	}
+
+	/**
+	 * Open a new session on the plan, owning the buffers of the predictions.
+	 * @return the session
+	 */
+	public Session newSession() {
+		return new Session();
+	}
+
+	public int getInputDimension() {
+		return inputDimension;
+	}
+
+	public int getOutputDimension() {
+		return outputDimension;
+	}
+
+	/**
+	 * @return the number of stages run by a prediction, after the folding of the layers
+	 */
+	public int getStageCount() {
+		return stages.length;
+	}
+
+	/**
+	 * @return the number of doubles of the arena of a session
+	 */
+	public int getArenaSize() {
+		return arenaSize;
+	}
+
+	public void resume() {
+		System.out.println("---------------------------------");
+		System.out.println("Inference plan resume:");
+		for (Stage stage : stages) {
+			System.out.println(stage);
+		}
+		System.out.println();
+		System.out.println("Arena: " + arenaSize + " doubles");
+		System.out.println("---------------------------------");
+	}
+
+	/**
+	 * Buffers of the predictions of one thread. A session must be used by one thread at a time and does not allocate.
+	 */
+	public final class Session {
+
+		private final double[] arena; // The intermediate outputs of the stages
+		private final double[][] buffers; // The private buffer of each stage, null if the stage needs none
+		private final Layer[] replicas; // The layer run by each layer stage
+
+		private Session() {
+			arena = new double[arenaSize];
+			buffers = new double[stages.length][];
+			replicas = new Layer[stages.length];
+			for (int i = 0; i < stages.length; i++) {
+				buffers[i] = stages[i].newBuffer();
+				replicas[i] = stages[i].newReplica();
+			}
+		}
+
+		/**
+		 * Compute the prediction of the plan for the given input.
+		 * @param input the input of the network
+		 * @return the prediction of the network
+		 */
+		public double[] predict(double[] input) {
+			double[] output = new double[outputDimension];
+			predictInto(input, 0, output, 0);
+			return output;
+		}
+
+		/**
+		 * Compute the predictions of the plan for a batch of inputs, written in the given outputs.
+		 * @param inputs the inputs of the network
+		 * @param outputs the arrays receiving the predictions, one per input, of at least the output dimension of the network
+		 */
+		public void predictBatch(double[][] inputs, double[][] outputs) {
+			if (outputs.length < inputs.length) {
+				throw new IllegalArgumentException("The number of outputs (" + outputs.length + ") is lower than the number of inputs (" + inputs.length + ").");
+			}
+			for (int i = 0; i < inputs.length; i++) {
+				predictInto(inputs[i], 0, outputs[i], 0);
+			}
+		}
+
+		/**
+		 * Compute the prediction of the plan for an input read in a flat buffer, written in another flat buffer.
+		 * The first stage reads the input in place and the last stage writes the prediction in place.
+		 * @param input the buffer holding the input
+		 * @param offset the offset of the input in the buffer
+		 * @param output the buffer receiving the prediction
+		 * @param outputOffset the offset of the prediction in the buffer
+		 */
+		public void predictInto(double[] input, int offset, double[] output, int outputOffset) {
+			double[] current = input;
+			int currentOffset = offset;
+			int last = stages.length - 1;
+			for (int i = 0; i < last; i++) {
+				stages[i].forward(current, currentOffset, arena, offsets[i], buffers[i], replicas[i]);
+				current = arena;
+				currentOffset = offsets[i];
+			}
+			stages[last].forward(current, currentOffset, output, outputOffset, buffers[last], replicas[last]);
+		}
+	}
+
+	/**
+	 * One operation of the plan.
+	 */
+	private abstract static class Stage {
+
+		final int outputDimension;
+
+		Stage(int outputDimension) {
+			this.outputDimension = outputDimension;
+		}
+
+		/**
+		 * Forward the stage from input[inputOffset, inputOffset + inputDimension[ to output[outputOffset, outputOffset + outputDimension[.
+		 */
+		abstract void forward(double[] input, int inputOffset, double[] output, int outputOffset, double[] buffer, Layer replica);
+
+		/**
+		 * @return the private buffer of the stage in a session, or null
+		 */
+		double[] newBuffer() {
+			return null;
+		}
+
+		/**
+		 * @return the layer run by the stage in a session, or null
+		 */
+		Layer newReplica() {
+			return null;
+		}
+
+		/**
+		 * @return an equivalent stage, cheaper to run, or this stage
+		 */
+		Stage simplify() {
+			return this;
+		}
+
+		/**
+		 * Store the parameters in their final precision, once the folding is done.
+		 */
+		void narrow() {}
+
+		/**
+		 * Forward the stage at compile time.
+		 */
+		double[] evaluate(double[] input) {
+			double[] output = new double[outputDimension];
+			forward(input, 0, output, 0, newBuffer(), newReplica());
+			return output;
+		}
+	}
+
+	/**
+	 * Dense layer with its activation fused in the kernel.
+	 * The weights are stored transposed, so the outputs are accumulated in registers with one update per input instead of one reduction per output,
+	 * which is much faster for the narrow layers of small networks.
+	 * @see Kernels#denseTransposed(double[], double[], int, int, double[], int, double[], int, Activation, double, double)
+	 */
+	private static final class DenseStage extends Stage {
+
+		private final int inputDimension;
+		private double[] weights; // Row-major outputDimension x inputDimension until the folding is done, then null
+		private double[] transposed; // Row-major inputDimension x outputDimension: the weight from input j to output i is at j * outputDimension + i
+		private float[] transposedFloat;
+		private final double[] bias;
+		private final boolean narrow; // Store the weights in float, as the layer did
+		private final Activation activation; // The fused activation, IDENTITY when the activation function is run after the kernel
+		private final ActivationFunction activationFunction;
+		private final double treshold; // Of the ReLU activations
+		private final double slope; // Of the leaky ReLU activation
+
+		private DenseStage(int inputDimension, double[] weights, double[] bias, boolean narrow, ActivationFunction activationFunction) {
+			super(bias.length);
+			this.inputDimension = inputDimension;
+			this.weights = weights;
+			this.bias = bias;
+			this.narrow = narrow;
+			this.activationFunction = activationFunction;
+			// Exact classes only: a subclass may override the function, so it is run after the kernel
+			if (activationFunction != null && activationFunction.getClass() == ReLU.class) {
+				ReLU relu = (ReLU) activationFunction;
+				activation = relu.isVariant() ? Activation.LEAKY_RELU : Activation.RELU;
+				treshold = relu.getTreshold();
+				slope = relu.getEpsilon();
+			} else {
+				activation = activationFunction != null && activationFunction.getClass() == Sigmoid.class && !((Sigmoid) activationFunction).isFast() ? Activation.SIGMOID : Activation.IDENTITY;
+				treshold = 0;
+				slope = 0;
+			}
+		}
+
+		/**
+		 * @return true if the activation function is run after the kernel
+		 */
+		private boolean unfused() {
+			return activation == Activation.IDENTITY && activationFunction != null;
+		}
+
+		static DenseStage of(DenseLayer layer) {
+			boolean narrow = layer.weightMatrix == null;
+			double[] weights = narrow ? Precision.toDouble(layer.weightMatrixFloat) : layer.weightMatrix.clone();
+			double[] bias = narrow ? Precision.toDouble(layer.biasFloat) : layer.bias.clone();
+			return new DenseStage(layer.getInputDimension(), weights, bias, narrow, layer.getActivationFunction());
+		}
+
+		/**
+		 * Fold an affine activation into the weights, and a dense stage with zero weights into a constant.
+		 */
+		@Override
+		Stage simplify() {
+			if (activationFunction != null && activationFunction.getClass() == Affine.class) {
+				double a = ((Affine) activationFunction).getA();
+				double b = ((Affine) activationFunction).getB();
+				for (int k = 0; k < weights.length; k++) {
+					weights[k] *= a;
+				}
+				for (int i = 0; i < outputDimension; i++) {
+					bias[i] = a * bias[i] + b;
+				}
+				return new DenseStage(inputDimension, weights, bias, narrow, null).simplify();
+			}
+			for (double weight : weights) {
+				if (weight != 0) {
+					return this;
+				}
+			}
+			return new ConstantStage(evaluate(new double[inputDimension]));
+		}
+
+		/**
+		 * @return the stage computing this stage applied to the output of the given stage, which has no activation
+		 */
+		DenseStage compose(DenseStage previous) {
+			int inner = previous.outputDimension;
+			int input = previous.inputDimension;
+			double[] weights = new double[outputDimension * input];
+			double[] bias = new double[outputDimension];
+			for (int i = 0; i < outputDimension; i++) {
+				bias[i] = this.bias[i] + KERNELS.dot(this.weights, i * inner, previous.bias, 0, inner);
+				for (int k = 0; k < inner; k++) {
+					KERNELS.axpy(this.weights[i * inner + k], previous.weights, k * input, weights, i * input, input);
+				}
+			}
+			return new DenseStage(input, weights, bias, narrow && previous.narrow, activationFunction);
+		}
+
+		@Override
+		void narrow() {
+			double[] transposed = new double[weights.length];
+			for (int i = 0; i < outputDimension; i++) {
+				for (int j = 0; j < inputDimension; j++) {
+					transposed[j * outputDimension + i] = weights[i * inputDimension + j];
+				}
+			}
+			if (narrow) {
+				this.transposedFloat = Precision.toFloat(transposed);
+			} else {
+				this.transposed = transposed;
+			}
+			this.weights = null;
+		}
+
+		@Override
+		double[] newBuffer() {
+			return unfused() ? new double[outputDimension] : null;
+		}
+
+		@Override
+		double[] evaluate(double[] input) { // Called before narrow(), from the row-major weights
+			double[] output = new double[outputDimension];
+			for (int i = 0; i < outputDimension; i++) {
+				output[i] = bias[i] + KERNELS.dot(weights, i * inputDimension, input, 0, inputDimension);
+			}
+			if (activationFunction != null) {
+				activationFunction.activate(output, output);
+			}
+			return output;
+		}
+
+		@Override
+		void forward(double[] input, int inputOffset, double[] output, int outputOffset, double[] buffer, Layer replica) {
+			if (unfused()) {
+				forward(input, inputOffset, buffer, 0);
+				activationFunction.activate(buffer, buffer);
+				System.arraycopy(buffer, 0, output, outputOffset, outputDimension);
+			} else {
+				forward(input, inputOffset, output, outputOffset);
+			}
+		}
+
+		private void forward(double[] input, int inputOffset, double[] output, int outputOffset) {
+			if (transposed != null) {
+				KERNELS.denseTransposed(transposed, bias, inputDimension, outputDimension, input, inputOffset, output, outputOffset, activation, treshold, slope);
+			} else {
+				KERNELS.denseTransposed(transposedFloat, bias, inputDimension, outputDimension, input, inputOffset, output, outputOffset, activation, treshold, slope);
+			}
+		}
+
+		@Override
+		public String toString() {
+			String s = "Dense " + inputDimension + "->" + outputDimension;
+			if (activationFunction != null) {
+				s += " (" + activationFunction.getClass().getSimpleName() + (unfused() ? "" : ", fused") + ")";
+			}
+			return s + (narrow ? " [float]" : "");
+		}
+	}
+
+	/**
+	 * Stage with an output independent of its input.
+	 */
+	private static final class ConstantStage extends Stage {
+
+		private final double[] values;
+
+		ConstantStage(double[] values) {
+			super(values.length);
+			this.values = values;
+		}
+
+		@Override
+		void forward(double[] input, int inputOffset, double[] output, int outputOffset, double[] buffer, Layer replica) {
+			System.arraycopy(values, 0, output, outputOffset, outputDimension);
+		}
+
+		@Override
+		public String toString() {
+			return "Constant " + outputDimension;
+		}
+	}
+
+	/**
+	 * Layer without a compiled implementation, run through a replica of a private copy of the layer.
+	 */
+	private static final class LayerStage extends Stage {
+
+		private final Layer layer;
+		private final int inputDimension;
+
+		LayerStage(Layer layer) {
+			super(layer.getOutputDimension());
+			this.inputDimension = layer.getInputDimension();
+			try {
+				this.layer = (Layer) ModelFormat.deserialize(ModelFormat.serialize(layer));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Cannot copy the layer " + layer, e);
+			}
+			this.layer.clear();
+		}
+
+		@Override
+		double[] newBuffer() {
+			return new double[inputDimension];
+		}
+
+		@Override
+		Layer newReplica() {
+			Layer replica = layer.replica();
+			replica.initForPredict();
+			return replica;
+		}
+
+		@Override
+		void forward(double[] input, int inputOffset, double[] output, int outputOffset, double[] buffer, Layer replica) {
+			System.arraycopy(input, inputOffset, buffer, 0, inputDimension);
+			replica.setInput(buffer);
+			replica.forward();
+			System.arraycopy(replica.getOutput(), 0, output, outputOffset, outputDimension);
+		}
+
+		@Override
+		public String toString() {
+			return "Layer " + layer.getClass().getSimpleName() + " " + inputDimension + "->" + outputDimension;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package neuralnetwork;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inference session of a neural network.
+ * A session owns replicas of the layers of the network: the parameters are shared with the network, the activation buffers are owned by the session.
+ * A session must be used by one thread at a time, but any number of sessions can run concurrently on the same network without locks.
+ * Sessions are cheap to create, so a request can simply open its own session.
+ * The network must not be trained while sessions are running.
+ * @see NeuralNetwork#newSession()
+ */
+public class InferenceSession {
+
+	private final List<Layer> layers; // The replicas of the layers of the network
+
+	private final double[] inputRow; // Buffer of one input, used when the input is read at an offset
+
+	InferenceSession(List<Layer> networkLayers) {
+		if (networkLayers.isEmpty()) {
+			throw new IllegalStateException("The network has no layer.");
+		}
+		layers = new ArrayList<Layer>(networkLayers.size());
+		for (Layer layer : networkLayers) {
+			Layer replica = layer.replica();
+			replica.initForPredict();
+			layers.add(replica);
+		}
+		inputRow = new double[layers.get(0).getInputDimension()];
+	}
+
+	/**
+	 * Compute the prediction of the network for the given input.
+	 * @param input the input of the network
+	 * @return the prediction of the network
+	 */
+	public double[] predict(double[] input) {
+		forward(input);
+		return layers.get(layers.size() - 1).getOutput().clone();
+	}
+
+	/**
+	 * Compute the predictions of the network for a batch of inputs, written in the given outputs. Does not allocate.
+	 * @param inputs the inputs of the network
+	 * @param outputs the arrays receiving the predictions, one per input, of at least the output dimension of the network
+	 */
+	public void predictBatch(double[][] inputs, double[][] outputs) {
+		if (outputs.length < inputs.length) {
+			throw new IllegalArgumentException("The number of outputs (" + outputs.length + ") is lower than the number of inputs (" + inputs.length + ").");
+		}
+		double[] prediction = layers.get(layers.size() - 1).getOutput();
+		for (int i = 0; i < inputs.length; i++) {
+			forward(inputs[i]);
+			System.arraycopy(prediction, 0, outputs[i], 0, prediction.length);
+		}
+	}
+
+	/**
+	 * Compute the prediction of the network for an input read in a flat buffer, written in another flat buffer. Does not allocate.
+	 * @param input the buffer holding the input
+	 * @param offset the offset of the input in the buffer
+	 * @param output the buffer receiving the prediction
+	 * @param outputOffset the offset of the prediction in the buffer
+	 */
+	public void predictInto(double[] input, int offset, double[] output, int outputOffset) {
+		System.arraycopy(input, offset, inputRow, 0, inputRow.length);
+		forward(inputRow);
+		double[] prediction = layers.get(layers.size() - 1).getOutput();
+		System.arraycopy(prediction, 0, output, outputOffset, prediction.length);
+	}
+
+	/**
+	 * @return the inputs of the activation of the output layer for the last prediction, see {@link Layer#getPreActivation()}
+	 */
+	double[] getPreActivation() {
+		return layers.get(layers.size() - 1).getPreActivation();
+	}
+
+	private void forward(double[] input) {
+		layers.get(0).setInput(input);
+		for (int i = 0; i < layers.size(); i++) {
+			layers.get(i).forward();
+			if (i < layers.size() - 1)
+				layers.get(i + 1).setInput(layers.get(i).getOutput());
+		}
+	}
+}
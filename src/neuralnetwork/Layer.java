@@ -2,15 +2,29 @@ package neuralnetwork;
 
 import java.io.Serializable;
 
-public abstract class Layer implements Serializable {
+import neuralnetwork.function.activation.ActivationFunction;
+import neuralnetwork.kernel.Kernels;
+
+public abstract class Layer implements Serializable, Cloneable {
 
 	private static final long serialVersionUID = 1L;
 
+	static final Kernels KERNELS = Kernels.get(); // Backend of the hot loops of the layers
+
 	transient double[] input;
 	transient double[] output;
 	transient double[] inputGradients;
 	transient double[] outputGradients;
 
+	transient int batchSize; // Number of rows currently held by the batch buffers
+	transient double[] batchInput; // Row-major block of batchSize x inputDimension
+	transient double[] batchOutput; // Row-major block of batchSize x outputDimension
+	transient double[] batchInputGradients; // Row-major block of batchSize x inputDimension
+	transient double[] batchOutputGradients; // Row-major block of batchSize x outputDimension
+	transient double[] rowInput; // Row buffer used by the default batch implementation
+	transient boolean fusedActivationGradients; // Set on the output layer when the error function computes the gradients of the inputs of the activation
+	transient double[] batchPreActivation; // Pre-activations of the last batch, same layout as batchOutput. Kept by the default batch for the fused error only
+
 	public Layer() {
 	}
 
@@ -18,6 +32,41 @@ public abstract class Layer implements Serializable {
 	public abstract void backward();
 	public abstract void update(double learningRate, double momemtum);
 
+	/**
+	 * Forward a whole batch held in {@link #batchInput}.
+	 * The default implementation runs {@link #forward()} row by row, subclasses should override it with a real batched kernel.
+	 */
+	public void forwardBatch() {
+		int inputDimension = getInputDimension();
+		int outputDimension = getOutputDimension();
+		for (int r = 0; r < batchSize; r++) {
+			System.arraycopy(batchInput, r * inputDimension, rowInput, 0, inputDimension);
+			input = rowInput;
+			forward();
+			System.arraycopy(output, 0, batchOutput, r * outputDimension, outputDimension);
+			if (batchPreActivation != null) {
+				System.arraycopy(getPreActivation(), 0, batchPreActivation, r * outputDimension, outputDimension);
+			}
+		}
+	}
+
+	/**
+	 * Backward a whole batch, gradients of the parameters are accumulated over all the rows.
+	 * The default implementation replays {@link #forward()} and {@link #backward()} row by row.
+	 */
+	public void backwardBatch() {
+		int inputDimension = getInputDimension();
+		int outputDimension = getOutputDimension();
+		for (int r = 0; r < batchSize; r++) {
+			System.arraycopy(batchInput, r * inputDimension, rowInput, 0, inputDimension);
+			input = rowInput;
+			forward();
+			System.arraycopy(batchOutputGradients, r * outputDimension, outputGradients, 0, outputDimension);
+			backward();
+			System.arraycopy(inputGradients, 0, batchInputGradients, r * inputDimension, inputDimension);
+		}
+	}
+
 	public void setInput(double[] input) {
 		this.input = input;
 	}
@@ -34,6 +83,41 @@ public abstract class Layer implements Serializable {
 		return inputGradients;
 	}
 
+	public void setBatchInput(double[] batchInput, int batchSize) {
+		this.batchInput = batchInput;
+		this.batchSize = batchSize;
+	}
+
+	public double[] getBatchOutput() {
+		return batchOutput;
+	}
+
+	public void setBatchOutputGradients(double[] batchOutputGradients) {
+		this.batchOutputGradients = batchOutputGradients;
+	}
+
+	public double[] getBatchInputGradients() {
+		return batchInputGradients;
+	}
+
+	/**
+	 * Get the inputs of the activation function of the last forward, read by the fused error functions.
+	 * Layers with an activation function must override it.
+	 * @return the pre-activations, null for layers without activation function
+	 */
+	public double[] getPreActivation() {
+		return null;
+	}
+
+	/**
+	 * Get the inputs of the activation function of the last batch, same layout as {@link #getBatchOutput()}.
+	 * Kept by the output layer of a fused error function, or always by the layers whose batch needs them.
+	 * @return the pre-activations of the batch, null if they are not kept
+	 */
+	public double[] getBatchPreActivation() {
+		return batchPreActivation;
+	}
+
 	public abstract int getInputDimension();
 	public abstract int getOutputDimension();
 	public abstract int getParameterCount();
@@ -50,11 +134,102 @@ public abstract class Layer implements Serializable {
 	}
 
 
+	/**
+	 * Allocate the batch buffers. Must be called after {@link #initForTraining()}.
+	 * @param batchCapacity the maximum number of rows of a batch
+	 */
+	public void initForBatch(int batchCapacity) {
+		this.batchSize = 0;
+		this.batchInput = null;
+		this.batchOutput = new double[batchCapacity * getOutputDimension()];
+		this.batchInputGradients = new double[batchCapacity * getInputDimension()];
+		this.batchOutputGradients = new double[batchCapacity * getOutputDimension()];
+		this.rowInput = new double[getInputDimension()];
+		this.batchPreActivation = fusedActivationGradients && getActivationFunction() != null ? new double[batchCapacity * getOutputDimension()] : null;
+	}
+
 	public void clear() {
 		this.input = null;
 		this.output = null;
 		this.inputGradients = null;
 		this.outputGradients = null;
+		this.batchSize = 0;
+		this.batchInput = null;
+		this.batchOutput = null;
+		this.batchInputGradients = null;
+		this.batchOutputGradients = null;
+		this.rowInput = null;
+		this.batchPreActivation = null;
+		this.fusedActivationGradients = false;
+	}
+
+	/**
+	 * Called by the network after each update of the parameters. Layers constraining their parameters must override it.
+	 */
+	public void afterUpdate() {}
+
+	/**
+	 * Called at the end of a training, before {@link #clear()}. Layers keeping training-only copies of their parameters must override it.
+	 */
+	public void endTraining() {}
+
+	/**
+	 * Set the storage precision of the parameters of the layer, converting the current parameters. Must not be called during a training.
+	 * Layers without parameters ignore it.
+	 * @param precision the precision
+	 */
+	public void setPrecision(Precision precision) {}
+
+	/**
+	 * Create a replica of the layer. The replica shares the parameters of the layer but owns its transient buffers and gradients,
+	 * so several replicas can be run on different threads. The replica must be initialized before use.
+	 * @return the replica
+	 */
+	public Layer replica() {
+		try {
+			Layer replica = (Layer) super.clone();
+			replica.clear();
+			return replica;
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Reset the accumulated gradients of the parameters to 0. Layers with parameters must override it.
+	 */
+	public void resetGradients() {}
+
+	/**
+	 * Add the accumulated gradients of a replica of this layer to the gradients of this layer. Layers with parameters must override it.
+	 * @param replica a replica of this layer
+	 * @see #replica()
+	 */
+	public void addGradients(Layer replica) {}
+
+	/**
+	 * Get the parameters of the layer updated by the training, in blocks. Valid between {@link #initForTraining()} and {@link #endTraining()}.
+	 * Layers with parameters must override it, together with {@link #getGradientBlocks()}.
+	 * @return the parameter blocks, empty for layers without parameters
+	 * @see neuralnetwork.optimizer.Optimizer
+	 */
+	public double[][] getParameterBlocks() {
+		return new double[0][];
+	}
+
+	/**
+	 * Get the accumulated gradients of the parameters, in blocks of the same shapes as {@link #getParameterBlocks()}.
+	 * @return the gradient blocks, empty for layers without parameters
+	 */
+	public double[][] getGradientBlocks() {
+		return new double[0][];
+	}
+
+	/**
+	 * @return the activation function applied to the output of the layer, null if none
+	 */
+	public ActivationFunction getActivationFunction() {
+		return null;
 	}
 
 	public abstract void resume();
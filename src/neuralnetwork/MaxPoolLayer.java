@@ -0,0 +1,89 @@
+package neuralnetwork;
+
+/**
+ * Max pooling: each output is the maximum of its window. The forward pass stores the index of each maximum,
+ * so the backward pass routes each output gradient to its input in O(output).
+ * @see PoolingLayer
+ */
+public class MaxPoolLayer extends PoolingLayer {
+
+	private static final long serialVersionUID = 1L;
+
+	transient int[] argmax; // The input index of the maximum of each output
+
+	/**
+	 * Create a max pooling layer.
+	 * @param inputDimension the dimensions of the volume of a channel
+	 * @param channels the number of channels
+	 * @param poolDimension the dimensions of the window
+	 * @param stride the step of the window in each dimension
+	 * @param padding the padding on both sides of each dimension, never selected
+	 */
+	public MaxPoolLayer(int[] inputDimension, int channels, int[] poolDimension, int[] stride, int[] padding) {
+		super(inputDimension, channels, poolDimension, stride, padding);
+	}
+
+	/**
+	 * Create a max pooling layer with non-overlapping windows and no padding.
+	 * @param inputDimension the dimensions of the volume of a channel
+	 * @param channels the number of channels
+	 * @param poolDimension the dimensions of the window, also the stride
+	 */
+	public MaxPoolLayer(int[] inputDimension, int channels, int[] poolDimension) {
+		this(inputDimension, channels, poolDimension, poolDimension.clone(), new int[poolDimension.length]);
+	}
+
+	@Override
+	public void initForPredict() {
+		this.argmax = new int[getOutputDimension()];
+		super.initForPredict();
+	}
+
+	@Override
+	public void initForTraining() {
+		this.argmax = new int[getOutputDimension()];
+		super.initForTraining();
+	}
+
+	@Override
+	public void clear() {
+		this.argmax = null;
+		super.clear();
+	}
+
+	@Override
+	public void forward() {
+		for (int c = 0; c < channels; c++) {
+			int channelOffset = c * inputVolume;
+			for (int p = 0; p < outputVolume; p++) {
+				int window = p * poolSize;
+				double max = Double.NEGATIVE_INFINITY;
+				int maxIndex = -1;
+				for (int k = 0; k < poolSize; k++) {
+					int index = gather[window + k];
+					if (index >= 0 && (maxIndex < 0 || input[channelOffset + index] > max)) {
+						max = input[channelOffset + index];
+						maxIndex = channelOffset + index;
+					}
+				}
+				output[c * outputVolume + p] = max;
+				argmax[c * outputVolume + p] = maxIndex;
+			}
+		}
+	}
+
+	@Override
+	public void backward() {
+		for (int i = 0; i < inputGradients.length; i++) {
+			inputGradients[i] = 0;
+		}
+		for (int o = 0; o < argmax.length; o++) {
+			inputGradients[argmax[o]] += outputGradients[o];
+		}
+	}
+
+	@Override
+	public void resume() {
+		resume("MaxPool Layer");
+	}
+}
@@ -0,0 +1,657 @@
+package neuralnetwork;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import neuralnetwork.function.activation.ActivationFunction;
+import neuralnetwork.function.activation.Affine;
+import neuralnetwork.function.activation.GELU;
+import neuralnetwork.function.activation.ReLU;
+import neuralnetwork.function.activation.Sigmoid;
+import neuralnetwork.function.activation.Softmax;
+import neuralnetwork.function.activation.Softplus;
+import neuralnetwork.function.activation.Swish;
+import neuralnetwork.function.activation.Tanh;
+import neuralnetwork.function.error.CrossEntropy;
+import neuralnetwork.function.error.ErrorFunction;
+import neuralnetwork.function.error.MinSquareError;
+
+/**
+ * Versioned binary model format. Everything is little-endian.
+ * <pre>
+ * header:  magic "JNNB", int version, int header length, int layer count,
+ *          double learning rate, byte trained, double last error, byte precision, function error function,
+ *          layer descriptors
+ * layer:   byte type, type-specific configuration, function activation function, byte precision,
+ *          int block count, (long offset, int element count) per block
+ * function: byte tag, tag-specific parameters. Unknown functions and layers are stored as a Java serialized blob (int length, bytes).
+ * blocks:  raw double, float or int arrays, each one aligned on 64 bytes
+ * </pre>
+ * A pruned dense layer has a third block, its pruning mask packed in ints (bit k % 32 of int k / 32 set when weight k is pruned);
+ * the block count of the descriptor tells whether it is present, so the files written without it still load.
+ * The loader maps the file with {@link FileChannel#map}: the blocks are bulk-copied from the page cache, which is shared by all the JVMs of the host.
+ * The blocks are written and mapped in segments of at most 1 GB, so models larger than 2 GB are supported.
+ * @see NeuralNetwork#saveBinary(String)
+ * @see NeuralNetwork#loadBinary(String)
+ */
+final class ModelFormat {
+
+	static final int MAGIC = 0x424E4E4A; // "JNNB" read as a little-endian int
+	static final int VERSION = 1;
+	static final int ALIGNMENT = 64; // Alignment of the weight blocks, one cache line
+	static final long SEGMENT_SIZE = 1L << 30; // Maximum size of a mapped or written part of a block
+	private static final int FIXED_HEADER_LENGTH = 16; // Magic, version, header length and layer count
+
+	// Layer types
+	static final byte DENSE = 1;
+	static final byte CONVOLUTIONAL = 2;
+	static final byte SPARSE_DENSE = 3; // Blocks: row starts, columns, values, bias
+	static final byte SERIALIZED = (byte) 255;
+
+	// Function tags
+	static final byte NONE = 0;
+	static final byte RELU = 1;
+	static final byte SIGMOID = 2;
+	static final byte AFFINE = 3;
+	static final byte MIN_SQUARE_ERROR = 4;
+	static final byte SOFTMAX = 5;
+	static final byte CROSS_ENTROPY = 6;
+	static final byte FAST_SIGMOID = 7;
+	static final byte TANH = 8; // Followed by the fast flag, as the next tags
+	static final byte GAUSSIAN_ERROR_LINEAR_UNIT = 9; // GELU
+	static final byte SWISH = 10; // Followed by beta
+	static final byte SOFTPLUS = 11;
+
+	private ModelFormat() {
+	}
+
+	// SECTION : Writing
+	static void write(NeuralNetwork network, String path) throws IOException {
+		Header header = new Header();
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(0); // Header length, patched below
+		header.putInt(network.layers.size());
+		header.putDouble(network.learningRate);
+		header.put((byte) (network.hasBeenTrained ? 1 : 0));
+		header.putDouble(network.lastError);
+		header.put((byte) network.precision.ordinal());
+		writeFunction(header, network.errorFunction);
+
+		List<Object> blocks = new ArrayList<Object>(); // double[], float[] or int[], in file order
+		List<Integer> offsetPositions = new ArrayList<Integer>(); // Position of the offset of each block in the header
+		for (Layer layer : network.layers) {
+			Object[] layerBlocks = writeLayer(header, layer);
+			header.putInt(layerBlocks.length);
+			for (Object block : layerBlocks) {
+				offsetPositions.add(header.position());
+				header.putLong(0); // Offset, patched below
+				header.putInt(length(block));
+				blocks.add(block);
+			}
+		}
+
+		int headerLength = header.position();
+		header.patchInt(8, headerLength);
+		long offset = align(headerLength);
+		for (int i = 0; i < blocks.size(); i++) {
+			header.patchLong(offsetPositions.get(i), offset);
+			offset = align(offset + byteLength(blocks.get(i)));
+		}
+
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer headerBytes = header.buffer();
+			headerBytes.flip();
+			writeFully(channel, headerBytes, 0);
+			long position = align(headerLength);
+			for (Object block : blocks) {
+				int elementBytes = elementBytes(block);
+				int segmentLength = (int) (SEGMENT_SIZE / elementBytes);
+				for (int from = 0; from < length(block); from += segmentLength) {
+					int count = Math.min(segmentLength, length(block) - from);
+					ByteBuffer bytes = ByteBuffer.allocate(count * elementBytes).order(ByteOrder.LITTLE_ENDIAN);
+					if (block instanceof double[]) {
+						bytes.asDoubleBuffer().put((double[]) block, from, count);
+					} else if (block instanceof float[]) {
+						bytes.asFloatBuffer().put((float[]) block, from, count);
+					} else {
+						bytes.asIntBuffer().put((int[]) block, from, count);
+					}
+					writeFully(channel, bytes, position + (long) from * elementBytes);
+				}
+				position = align(position + byteLength(block));
+			}
+		}
+	}
+
+	/**
+	 * Write the descriptor of a layer.
+	 * @return the weight blocks of the layer
+	 */
+	private static Object[] writeLayer(Header header, Layer layer) throws IOException {
+		if (layer instanceof DenseLayer) {
+			DenseLayer dense = (DenseLayer) layer;
+			header.put(DENSE);
+			header.putInt(dense.getInputDimension());
+			header.putInt(dense.getOutputDimension());
+			writeFunction(header, dense.getActivationFunction());
+			header.put((byte) dense.precision.ordinal());
+			Object weights = dense.precision == Precision.FLOAT ? dense.weightMatrixFloat : dense.weightMatrix;
+			Object bias = dense.precision == Precision.FLOAT ? dense.biasFloat : dense.bias;
+			if (dense.pruned != null) {
+				return new Object[] { weights, bias, packMask(dense.pruned) };
+			}
+			return new Object[] { weights, bias };
+		}
+		if (layer instanceof SparseDenseLayer) {
+			SparseDenseLayer sparse = (SparseDenseLayer) layer;
+			header.put(SPARSE_DENSE);
+			header.putInt(sparse.getInputDimension());
+			header.putInt(sparse.getOutputDimension());
+			header.putInt(sparse.getNonZeros());
+			writeFunction(header, sparse.getActivationFunction());
+			header.put((byte) sparse.precision.ordinal());
+			if (sparse.precision == Precision.FLOAT) {
+				return new Object[] { sparse.rowStarts, sparse.columns, sparse.valuesFloat, sparse.biasFloat };
+			}
+			return new Object[] { sparse.rowStarts, sparse.columns, sparse.values, sparse.bias };
+		}
+		if (layer instanceof ConvolutionalLayer) {
+			ConvolutionalLayer convolutional = (ConvolutionalLayer) layer;
+			header.put(CONVOLUTIONAL);
+			header.putInt(convolutional.inputDimension.length);
+			header.putInts(convolutional.inputDimension);
+			header.putInts(convolutional.kernelDimension);
+			header.putInt(convolutional.depth);
+			header.putInts(convolutional.stride);
+			header.putInts(convolutional.padding);
+			writeFunction(header, convolutional.getActivationFunction());
+			header.put((byte) convolutional.precision.ordinal());
+			if (convolutional.precision == Precision.FLOAT) {
+				return new Object[] { convolutional.kernelWeightsFloat };
+			}
+			return new Object[] { convolutional.kernelWeights };
+		}
+		header.put(SERIALIZED);
+		header.putBlob(serialize(layer));
+		return new Object[0];
+	}
+
+	private static void writeFunction(Header header, Serializable function) throws IOException {
+		if (function == null) {
+			header.put(NONE);
+		} else if (function.getClass() == ReLU.class) {
+			ReLU relu = (ReLU) function;
+			header.put(RELU);
+			header.putDouble(relu.getTreshold());
+			header.putDouble(relu.getEpsilon());
+			header.put((byte) (relu.isVariant() ? 1 : 0));
+		} else if (function.getClass() == Sigmoid.class) {
+			header.put(((Sigmoid) function).isFast() ? FAST_SIGMOID : SIGMOID);
+		} else if (function.getClass() == Tanh.class) {
+			header.put(TANH);
+			header.put((byte) (((Tanh) function).isFast() ? 1 : 0));
+		} else if (function.getClass() == GELU.class) {
+			header.put(GAUSSIAN_ERROR_LINEAR_UNIT);
+			header.put((byte) (((GELU) function).isFast() ? 1 : 0));
+		} else if (function.getClass() == Swish.class) {
+			Swish swish = (Swish) function;
+			header.put(SWISH);
+			header.putDouble(swish.getBeta());
+			header.put((byte) (swish.isFast() ? 1 : 0));
+		} else if (function.getClass() == Softplus.class) {
+			header.put(SOFTPLUS);
+			header.put((byte) (((Softplus) function).isFast() ? 1 : 0));
+		} else if (function.getClass() == Affine.class) {
+			Affine affine = (Affine) function;
+			header.put(AFFINE);
+			header.putDouble(affine.getA());
+			header.putDouble(affine.getB());
+		} else if (function.getClass() == MinSquareError.class) {
+			header.put(MIN_SQUARE_ERROR);
+		} else if (function.getClass() == Softmax.class) {
+			header.put(SOFTMAX);
+		} else if (function.getClass() == CrossEntropy.class) {
+			header.put(CROSS_ENTROPY);
+		} else {
+			header.put(SERIALIZED);
+			header.putBlob(serialize(function));
+		}
+	}
+	// !SECTION : Writing
+
+	// SECTION : Reading
+	static NeuralNetwork read(String path) throws IOException {
+		Path file = Paths.get(path);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < FIXED_HEADER_LENGTH) {
+				throw new IOException(path + " is not a binary neural network model.");
+			}
+			ByteBuffer fixed = channel.map(FileChannel.MapMode.READ_ONLY, 0, FIXED_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+			if (fixed.getInt() != MAGIC) {
+				throw new IOException(path + " is not a binary neural network model.");
+			}
+			int version = fixed.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported model version " + version + " (expected " + VERSION + ").");
+			}
+			int headerLength = fixed.getInt();
+			int layerCount = fixed.getInt();
+			if (headerLength < FIXED_HEADER_LENGTH || headerLength > size || layerCount < 0) {
+				throw new IOException("Corrupted model: header of " + headerLength + " bytes and " + layerCount + " layers in a file of " + size + " bytes.");
+			}
+
+			// The descriptors are read from the header only, the blocks are mapped from the channel
+			ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerLength).order(ByteOrder.LITTLE_ENDIAN);
+			mapped.position(FIXED_HEADER_LENGTH);
+			Blocks blocks = new Blocks(channel, align(headerLength), size);
+			try {
+				NeuralNetwork network = new NeuralNetwork();
+				network.learningRate = mapped.getDouble();
+				network.hasBeenTrained = mapped.get() != 0;
+				network.lastError = mapped.getDouble();
+				network.precision = readPrecision(mapped);
+				network.errorFunction = (ErrorFunction) readFunction(mapped);
+				for (int i = 0; i < layerCount; i++) {
+					network.layers.add(readLayer(mapped, blocks));
+				}
+				return network;
+			} catch (BufferUnderflowException e) {
+				throw new IOException("Corrupted model: the layer descriptors overflow the header of " + headerLength + " bytes.", e);
+			} catch (IllegalArgumentException | NegativeArraySizeException e) { // Rejected by the constructors of the layers
+				throw new IOException("Corrupted model: " + e.getMessage(), e);
+			} catch (ClassCastException e) { // An activation function where an error function is expected, or the converse
+				throw new IOException("Corrupted model: unexpected function type.", e);
+			}
+		}
+	}
+
+	private static Layer readLayer(ByteBuffer mapped, Blocks blocks) throws IOException {
+		byte type = mapped.get();
+		switch (type) {
+		case DENSE: {
+			int inputSize = mapped.getInt();
+			int outputSize = mapped.getInt();
+			ActivationFunction activationFunction = (ActivationFunction) readFunction(mapped);
+			Precision precision = readPrecision(mapped);
+			blocks.reserve((long) inputSize * outputSize + outputSize, precision);
+			DenseLayer layer = new DenseLayer(inputSize, outputSize, activationFunction, precision);
+			int count = mapped.getInt();
+			if (count != 2 && count != 3) { // The third block is the pruning mask
+				throw new IOException("Corrupted model: " + count + " weight blocks instead of 2 or 3.");
+			}
+			if (precision == Precision.FLOAT) {
+				blocks.read(mapped, layer.weightMatrixFloat);
+				blocks.read(mapped, layer.biasFloat);
+			} else {
+				blocks.read(mapped, layer.weightMatrix);
+				blocks.read(mapped, layer.bias);
+			}
+			if (count == 3) {
+				int[] words = new int[(inputSize * outputSize + 31) / 32];
+				blocks.read(mapped, words);
+				layer.pruned = unpackMask(words, inputSize * outputSize);
+			}
+			return layer;
+		}
+		case SPARSE_DENSE: {
+			int inputSize = mapped.getInt();
+			int outputSize = mapped.getInt();
+			int nonZeros = mapped.getInt();
+			ActivationFunction activationFunction = (ActivationFunction) readFunction(mapped);
+			Precision precision = readPrecision(mapped);
+			blocks.reserve((long) nonZeros + outputSize, precision);
+			blocks.reserve((long) nonZeros + outputSize + 1, Precision.FLOAT); // The int blocks
+			int[] rowStarts = new int[outputSize + 1];
+			int[] columns = new int[nonZeros];
+			expectBlocks(mapped, 4);
+			blocks.read(mapped, rowStarts);
+			blocks.read(mapped, columns);
+			for (int i = 0; i < outputSize; i++) {
+				if (rowStarts[i] > rowStarts[i + 1]) {
+					throw new IOException("Corrupted model: decreasing row starts.");
+				}
+			}
+			for (int column : columns) {
+				if (column < 0 || column >= inputSize) {
+					throw new IOException("Corrupted model: column " + column + " out of the input dimension " + inputSize + ".");
+				}
+			}
+			if (rowStarts[0] != 0 || rowStarts[outputSize] != nonZeros) {
+				throw new IOException("Corrupted model: the rows do not cover the " + nonZeros + " weights.");
+			}
+			SparseDenseLayer layer = new SparseDenseLayer(inputSize, outputSize, activationFunction, rowStarts, columns, precision);
+			if (precision == Precision.FLOAT) {
+				blocks.read(mapped, layer.valuesFloat);
+				blocks.read(mapped, layer.biasFloat);
+			} else {
+				blocks.read(mapped, layer.values);
+				blocks.read(mapped, layer.bias);
+			}
+			return layer;
+		}
+		case CONVOLUTIONAL: {
+			int dimensions = mapped.getInt();
+			int[] inputDimension = readInts(mapped, dimensions);
+			int[] kernelDimension = readInts(mapped, dimensions);
+			int depth = mapped.getInt();
+			int[] stride = readInts(mapped, dimensions);
+			int[] padding = readInts(mapped, dimensions);
+			ActivationFunction activationFunction = (ActivationFunction) readFunction(mapped);
+			Precision precision = readPrecision(mapped);
+			long kernelSize = 1;
+			for (int size : kernelDimension) {
+				kernelSize *= Math.max(size, 0);
+			}
+			blocks.reserve((kernelSize + 1) * depth, precision);
+			ConvolutionalLayer layer = new ConvolutionalLayer(inputDimension, kernelDimension, depth, stride, padding, activationFunction);
+			layer.setPrecision(precision);
+			expectBlocks(mapped, 1);
+			if (precision == Precision.FLOAT) {
+				blocks.read(mapped, layer.kernelWeightsFloat);
+			} else {
+				blocks.read(mapped, layer.kernelWeights);
+			}
+			return layer;
+		}
+		case SERIALIZED:
+			Layer layer = (Layer) deserialize(readBlob(mapped));
+			expectBlocks(mapped, 0);
+			return layer;
+		default:
+			throw new IOException("Unknown layer type " + type + ".");
+		}
+	}
+
+	private static Serializable readFunction(ByteBuffer mapped) throws IOException {
+		byte tag = mapped.get();
+		switch (tag) {
+		case NONE:
+			return null;
+		case RELU: {
+			double treshold = mapped.getDouble();
+			double eps = mapped.getDouble();
+			boolean variant = mapped.get() != 0;
+			ReLU relu = new ReLU(treshold, variant);
+			return variant ? relu.setEpsilon(eps) : relu;
+		}
+		case SIGMOID:
+			return new Sigmoid();
+		case FAST_SIGMOID:
+			return new Sigmoid(true);
+		case TANH:
+			return new Tanh(mapped.get() != 0);
+		case GAUSSIAN_ERROR_LINEAR_UNIT:
+			return new GELU(mapped.get() != 0);
+		case SWISH: {
+			double beta = mapped.getDouble();
+			return new Swish(beta, mapped.get() != 0);
+		}
+		case SOFTPLUS:
+			return new Softplus(mapped.get() != 0);
+		case AFFINE:
+			return new Affine(mapped.getDouble(), mapped.getDouble());
+		case MIN_SQUARE_ERROR:
+			return new MinSquareError();
+		case SOFTMAX:
+			return new Softmax();
+		case CROSS_ENTROPY:
+			return new CrossEntropy();
+		case SERIALIZED:
+			return deserialize(readBlob(mapped));
+		default:
+			throw new IOException("Unknown function tag " + tag + ".");
+		}
+	}
+
+	private static void expectBlocks(ByteBuffer mapped, int expected) throws IOException {
+		int count = mapped.getInt();
+		if (count != expected) {
+			throw new IOException("Corrupted model: " + count + " weight blocks instead of " + expected + ".");
+		}
+	}
+
+	private static Precision readPrecision(ByteBuffer mapped) throws IOException {
+		byte ordinal = mapped.get();
+		if (ordinal < 0 || ordinal >= Precision.values().length) {
+			throw new IOException("Corrupted model: unknown precision " + ordinal + ".");
+		}
+		return Precision.values()[ordinal];
+	}
+
+	/**
+	 * Reader of the weight blocks: checks that each block lies between the header and the end of the file, then maps it in segments.
+	 */
+	private static final class Blocks {
+
+		private final FileChannel channel;
+		private final long start; // The first byte after the aligned header
+		private final long size; // The size of the file
+
+		Blocks(FileChannel channel, long start, long size) {
+			this.channel = channel;
+			this.start = start;
+			this.size = size;
+		}
+
+		void read(ByteBuffer mapped, double[] destination) throws IOException {
+			long offset = locate(mapped, destination.length, Double.BYTES);
+			int segmentLength = (int) (SEGMENT_SIZE / Double.BYTES);
+			for (int from = 0; from < destination.length; from += segmentLength) {
+				int count = Math.min(segmentLength, destination.length - from);
+				map(offset + (long) from * Double.BYTES, count * Double.BYTES).asDoubleBuffer().get(destination, from, count);
+			}
+		}
+
+		void read(ByteBuffer mapped, float[] destination) throws IOException {
+			long offset = locate(mapped, destination.length, Float.BYTES);
+			int segmentLength = (int) (SEGMENT_SIZE / Float.BYTES);
+			for (int from = 0; from < destination.length; from += segmentLength) {
+				int count = Math.min(segmentLength, destination.length - from);
+				map(offset + (long) from * Float.BYTES, count * Float.BYTES).asFloatBuffer().get(destination, from, count);
+			}
+		}
+
+		void read(ByteBuffer mapped, int[] destination) throws IOException {
+			long offset = locate(mapped, destination.length, Integer.BYTES);
+			int segmentLength = (int) (SEGMENT_SIZE / Integer.BYTES);
+			for (int from = 0; from < destination.length; from += segmentLength) {
+				int count = Math.min(segmentLength, destination.length - from);
+				map(offset + (long) from * Integer.BYTES, count * Integer.BYTES).asIntBuffer().get(destination, from, count);
+			}
+		}
+
+		/**
+		 * Check that the file can hold a number of values, before a layer allocates them.
+		 */
+		void reserve(long values, Precision precision) throws IOException {
+			long bytes = values * (precision == Precision.FLOAT ? Float.BYTES : Double.BYTES);
+			if (values < 0 || bytes > size - start) {
+				throw new IOException("Corrupted model: a layer of " + values + " parameters does not fit in a file of " + size + " bytes.");
+			}
+		}
+
+		/**
+		 * Read the descriptor of a block and check its bounds.
+		 * @return the offset of the block in the file
+		 */
+		private long locate(ByteBuffer mapped, int expectedLength, int elementBytes) throws IOException {
+			long offset = mapped.getLong();
+			int length = mapped.getInt();
+			if (length != expectedLength) {
+				throw new IOException("Corrupted model: block of " + length + " values instead of " + expectedLength + ".");
+			}
+			long bytes = (long) length * elementBytes;
+			if (offset < start || offset > size - bytes) {
+				throw new IOException("Corrupted model: block of " + bytes + " bytes at " + offset + " outside of [" + start + ", " + size + "[.");
+			}
+			return offset;
+		}
+
+		private ByteBuffer map(long position, int bytes) throws IOException {
+			return channel.map(FileChannel.MapMode.READ_ONLY, position, bytes).order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	private static int[] readInts(ByteBuffer mapped, int count) throws IOException {
+		if (count < 0 || count > mapped.remaining() / Integer.BYTES) {
+			throw new IOException("Corrupted model: " + count + " dimensions.");
+		}
+		int[] values = new int[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = mapped.getInt();
+		}
+		return values;
+	}
+
+	private static byte[] readBlob(ByteBuffer mapped) throws IOException {
+		int length = mapped.getInt();
+		if (length < 0 || length > mapped.remaining()) {
+			throw new IOException("Corrupted model: serialized object of " + length + " bytes.");
+		}
+		byte[] bytes = new byte[length];
+		mapped.get(bytes);
+		return bytes;
+	}
+	// !SECTION : Reading
+
+	// SECTION : Utilities
+	private static long align(long position) {
+		return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	private static int length(Object block) {
+		if (block instanceof double[]) {
+			return ((double[]) block).length;
+		}
+		return block instanceof float[] ? ((float[]) block).length : ((int[]) block).length;
+	}
+
+	private static int elementBytes(Object block) {
+		return block instanceof double[] ? Double.BYTES : Float.BYTES; // int and float are both 4 bytes
+	}
+
+	private static int[] packMask(boolean[] mask) {
+		int[] words = new int[(mask.length + 31) / 32];
+		for (int k = 0; k < mask.length; k++) {
+			if (mask[k]) {
+				words[k / 32] |= 1 << (k % 32);
+			}
+		}
+		return words;
+	}
+
+	private static boolean[] unpackMask(int[] words, int length) {
+		boolean[] mask = new boolean[length];
+		for (int k = 0; k < length; k++) {
+			mask[k] = (words[k / 32] & (1 << (k % 32))) != 0;
+		}
+		return mask;
+	}
+
+	private static long byteLength(Object block) {
+		return (long) length(block) * elementBytes(block);
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+		while (bytes.hasRemaining()) {
+			position += channel.write(bytes, position);
+		}
+	}
+
+	static byte[] serialize(Serializable object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+			oos.writeObject(object);
+		}
+		return bytes.toByteArray();
+	}
+
+	static Serializable deserialize(byte[] bytes) throws IOException {
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return (Serializable) ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Unknown serialized class in the model.", e);
+		}
+	}
+
+	/**
+	 * Growable little-endian buffer holding the header.
+	 */
+	private static final class Header {
+
+		private ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+
+		private void ensure(int bytes) {
+			if (buffer.remaining() < bytes) {
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes)).order(ByteOrder.LITTLE_ENDIAN);
+				buffer.flip();
+				larger.put(buffer);
+				buffer = larger;
+			}
+		}
+
+		void put(byte value) {
+			ensure(1);
+			buffer.put(value);
+		}
+
+		void putInt(int value) {
+			ensure(4);
+			buffer.putInt(value);
+		}
+
+		void putLong(long value) {
+			ensure(8);
+			buffer.putLong(value);
+		}
+
+		void putDouble(double value) {
+			ensure(8);
+			buffer.putDouble(value);
+		}
+
+		void putInts(int[] values) {
+			for (int value : values) {
+				putInt(value);
+			}
+		}
+
+		void putBlob(byte[] bytes) {
+			putInt(bytes.length);
+			ensure(bytes.length);
+			buffer.put(bytes);
+		}
+
+		void patchInt(int position, int value) {
+			buffer.putInt(position, value);
+		}
+
+		void patchLong(int position, long value) {
+			buffer.putLong(position, value);
+		}
+
+		int position() {
+			return buffer.position();
+		}
+
+		ByteBuffer buffer() {
+			return buffer;
+		}
+	}
+	// !SECTION : Utilities
+}
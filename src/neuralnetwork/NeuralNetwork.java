@@ -6,17 +6,42 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.Function;
 
 import javax.swing.panel.JPlot;
 
+import jdk.jfr.EventType;
+
+import neuralnetwork.data.ArrayDataset;
+import neuralnetwork.data.BatchLoader;
+import neuralnetwork.data.Dataset;
+import neuralnetwork.data.SparseDataset;
+import neuralnetwork.data.SparseVector;
+
 import neuralnetwork.function.activation.ReLU;
 import neuralnetwork.function.activation.Sigmoid;
 import neuralnetwork.function.error.ErrorFunction;
 import neuralnetwork.function.error.MinSquareError;
+import neuralnetwork.monitor.BatchEvent;
+import neuralnetwork.monitor.BatchMetrics;
+import neuralnetwork.monitor.ConsoleListener;
+import neuralnetwork.monitor.EpochEvent;
+import neuralnetwork.monitor.EpochMetrics;
+import neuralnetwork.monitor.TrainingListener;
+import neuralnetwork.optimizer.LearningRateSchedule;
+import neuralnetwork.optimizer.Optimizer;
 
 /**
  * Simple implementation of a neural network. Based on the same API of tensorflow.
@@ -25,6 +50,12 @@ import neuralnetwork.function.error.MinSquareError;
 public class NeuralNetwork implements Serializable{
 
 	private static final long serialVersionUID = 1L;
+
+	static final int PREFETCHED_BATCHES = 3; // The batches in flight between the loader and the training
+
+	static final int VALIDATION_CHUNK = 256; // The minimal number of validation samples per validator
+
+	private static final EventType BATCH_EVENT = EventType.getEventType(BatchEvent.class);
 	
 	List<Layer> layers; // The layers of the network
 
@@ -38,10 +69,74 @@ public class NeuralNetwork implements Serializable{
 
 	boolean shuffle = true; // True if the network should shuffle the inputs during the training
 
+	boolean batchMode = false; // True if the network should forward and backward whole batches at once during the training
+
+	int parallelism = 1; // The number of threads used to compute each batch during the training
+
+	Precision precision = Precision.DOUBLE; // The storage precision of the parameters of the layers
+
+	Optimizer optimizer = null; // The update rule of the parameters, null for the gradient descent with momemtum of the layers
+
+	LearningRateSchedule schedule = null; // The learning rate of each epoch, null to keep the learning rate of the network
+
+	double validationSplit = 0; // The fraction of the samples kept for the validation when no validation set is given
+
+	int patience = 0; // The number of epochs without improvement of the monitored error before stopping the training, 0 to never stop early
+
+	double minDelta = 0; // The minimal decrease of the monitored error counted as an improvement
+
+	boolean restoreBestWeights = false; // True to restore the parameters of the best epoch at the end of the training
+
 	double lastError = 0; // The last error of the network during the training
 
 	transient double[] logs = null; // The logs of error of the network during the training
 
+	transient double[] stallLogs = null; // The time in ms the training waited for the batches at each epoch
+
+	transient double[] validationLogs = null; // The logs of error of the network on the validation set during the training
+
+	transient Dataset validationSet = null; // The samples of the validation, not saved with the network
+
+	transient double currentLearningRate; // The learning rate of the current epoch
+
+	transient volatile boolean stopRequested = false; // Set by stop() to end the training
+
+	transient double[] batchInputs = null; // Contiguous row-major block of the inputs of the current batch
+
+	transient double[] batchGradients = null; // Contiguous row-major block of the error gradients of the current batch
+
+	transient double[] inputRow = null; // Buffer of one input, used when the input is read at an offset
+
+	transient double[] targetRow = null; // Buffer of one expected output
+
+	transient double[] errorGradients = null; // Buffer of the error gradients of one sample
+
+	transient boolean fusedGradient; // The error function computes the gradients of the inputs of the output activation
+
+	transient Random random = new Random(); // Source of the shuffles
+
+	transient double[][] parameterBlocks = null; // The parameter blocks of all the layers during the training
+
+	transient double[][] gradientBlocks = null; // The gradient blocks of all the layers during the training
+
+	transient List<TrainingListener> listeners = new ArrayList<TrainingListener>(); // The listeners of the trainings, not saved with the network
+
+	transient long[] forwardNanos = null; // The time spent in the forward pass of each layer, null when the training is not profiled
+
+	transient long[] backwardNanos = null; // The time spent in the backward pass of each layer, null when the training is not profiled
+
+	transient double[][][] layerGradientBlocks = null; // The gradient blocks of each layer, when the training is profiled
+
+	transient List<Validator> validators = null; // The validators of the chunks of the validation set
+
+	transient ForkJoinPool pool = null; // The pool running the workers during a parallel training
+
+	transient NeuralNetwork[] workers = null; // The workers of a parallel training, each one owns replicas of the layers
+
+	transient String checkpointPath = null; // The file of the checkpoints of the trainings, not saved with the network
+
+	transient int checkpointInterval = 0; // The number of epochs between two checkpoints, 0 for no checkpoint
+
 	transient private boolean isInit = false; // True if the network has been initialized for the prediction (init for training implies init for prediction)
 
 	 /**
@@ -53,6 +148,17 @@ public class NeuralNetwork implements Serializable{
 		errorFunction = new MinSquareError();
 	}
 
+	/**
+	 * Create a new empty neural network storing its parameters in the given precision.
+	 * Default error function is the mean square error.
+	 * @param precision the storage precision of the parameters of the layers
+	 * @see Precision
+	 */
+	public NeuralNetwork(Precision precision) {
+		this();
+		this.precision = precision;
+	}
+
 
 	// SECTION : Public setup methods
 
@@ -80,6 +186,154 @@ public class NeuralNetwork implements Serializable{
 		this.shuffle = shuffle;
 	}
 
+	/**
+	 * Set the seed of the shuffles of the training, to make them reproducible.
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Set the batched execution mode of the training.
+	 * When enabled, each batch is copied in a contiguous row-major block and forwarded through the layers at once,
+	 * which lets the layers use matrix-matrix kernels instead of one matrix-vector product per sample.
+	 * @param batchMode true to train batch by batch
+	 * @see Layer#forwardBatch()
+	 */
+	public void setBatchMode(boolean batchMode) {
+		this.batchMode = batchMode;
+	}
+
+	/**
+	 * Set the number of threads used during the training.
+	 * Each batch is split in as many shards, each shard is computed by a worker owning replicas of the layers,
+	 * then the gradients of the workers are reduced in a tree before the update. The shards and the reduction order only
+	 * depend on the batch size, so the result is deterministic and matches the sequential training up to rounding.
+	 * @param parallelism the number of threads, 1 for a sequential training
+	 * @see Layer#replica()
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be greater than 0.");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Set the storage precision of the parameters of the network, converting the parameters of the layers already added.
+	 * Converting a double network to float rounds its parameters to float32; the inputs and the outputs of the network stay double.
+	 * @param precision the precision
+	 * @see Precision
+	 */
+	public void setPrecision(Precision precision) {
+		this.precision = precision;
+		for (Layer layer : layers) {
+			layer.setPrecision(precision);
+		}
+		isInit = false;
+	}
+
+	public Precision getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Set the update rule of the parameters. The optimizer keeps its state between the trainings and is saved with the network.
+	 * When an optimizer is set, the momemtum given to the training is ignored.
+	 * @param optimizer the optimizer, null for the gradient descent with momemtum of the layers
+	 * @see neuralnetwork.optimizer.Adam
+	 */
+	public void setOptimizer(Optimizer optimizer) {
+		this.optimizer = optimizer;
+	}
+
+	/**
+	 * @return the update rule of the parameters, null for the gradient descent with momemtum of the layers
+	 */
+	public Optimizer getOptimizer() {
+		return optimizer;
+	}
+
+	/**
+	 * Set the learning rate of each epoch, computed from the learning rate of the network.
+	 * @param schedule the schedule, null to keep the learning rate of the network
+	 * @see neuralnetwork.optimizer.StepDecay
+	 * @see neuralnetwork.optimizer.CosineAnnealing
+	 * @see neuralnetwork.optimizer.ReduceOnPlateau
+	 */
+	public void setLearningRateSchedule(LearningRateSchedule schedule) {
+		this.schedule = schedule;
+	}
+
+	/**
+	 * Set the samples used to validate the network at the end of each epoch. The validation set is not saved with the network.
+	 * @param validationSet the validation samples, null to use the validation split
+	 */
+	public void setValidationSet(Dataset validationSet) {
+		this.validationSet = validationSet;
+	}
+
+	/**
+	 * Keep the last samples of the training set for the validation, when no validation set is given.
+	 * @param validationSplit the fraction of the samples kept for the validation, between 0 and 1. 0 for no validation
+	 */
+	public void setValidationSplit(double validationSplit) {
+		if (validationSplit < 0 || validationSplit >= 1) {
+			throw new IllegalArgumentException("The validation split must be between 0 and 1.");
+		}
+		this.validationSplit = validationSplit;
+	}
+
+	/**
+	 * Stop the training when the monitored error (validation error if there is a validation, training error otherwise)
+	 * has not improved for a given number of epochs.
+	 * @param patience the number of epochs without improvement, 0 to never stop early
+	 * @param minDelta the minimal decrease of the error counted as an improvement
+	 * @param restoreBestWeights true to restore the parameters of the epoch with the lowest error at the end of the training
+	 */
+	public void setEarlyStopping(int patience, double minDelta, boolean restoreBestWeights) {
+		if (patience < 0) {
+			throw new IllegalArgumentException("The patience must be positive.");
+		}
+		this.patience = patience;
+		this.minDelta = minDelta;
+		this.restoreBestWeights = restoreBestWeights;
+	}
+
+	/**
+	 * Write a checkpoint of the trainings every given number of epochs, see {@link Checkpoint}. The state is copied in memory at the end of the epoch,
+	 * then written on a background thread, so the training does not wait for the disk; when the disk is slower than the epochs, only the latest
+	 * checkpoint waiting to be written is kept. Each checkpoint replaces the previous one in the file. Not saved with the network.
+	 * @param path the path of the file, null to disable the checkpoints
+	 * @param interval the number of epochs between two checkpoints
+	 * @see #resume(Checkpoint, Dataset, boolean)
+	 */
+	public void setCheckpoints(String path, int interval) {
+		if (path != null && interval < 1) {
+			throw new IllegalArgumentException("The checkpoint interval must be at least 1 epoch.");
+		}
+		this.checkpointPath = path;
+		this.checkpointInterval = path != null ? interval : 0;
+	}
+
+	/**
+	 * Register a listener of the trainings of the network. The listeners are not saved with the network.
+	 * @param listener the listener
+	 * @see neuralnetwork.monitor.ConsoleListener
+	 */
+	public void addTrainingListener(TrainingListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Remove a listener of the trainings of the network.
+	 * @param listener the listener
+	 */
+	public void removeTrainingListener(TrainingListener listener) {
+		listeners.remove(listener);
+	}
+
 	/**
 	 * Add a layer to the network.
 	 * @param layer
@@ -91,6 +345,7 @@ public class NeuralNetwork implements Serializable{
 		if (layers.size() > 0 && layer.getInputDimension() != layers.get(layers.size() - 1).getOutputDimension()) {
 			throw new IllegalArgumentException("Incompatible layer dimensions:" + layers.get(layers.size() - 1).getOutputDimension() + " -/-> " + layer.getInputDimension());
 		}
+		layer.setPrecision(precision);
 		layers.add(layer);
 	}
 
@@ -171,6 +426,28 @@ public class NeuralNetwork implements Serializable{
 		return nn;
 	}
 
+	/**
+	 * Save the neural network in the versioned binary format: a header describing the layers, then aligned raw weight blocks.
+	 * Unlike {@link #save(String)}, the file does not depend on the version of the classes and loads through a memory mapping.
+	 * @param path the path of the file
+	 * @throws IOException if an error occurs during the saving
+	 * @see #loadBinary(String)
+	 */
+	public void saveBinary(String path) throws IOException {
+		ModelFormat.write(this, path);
+	}
+
+	/**
+	 * Load a neural network saved with {@link #saveBinary(String)}. The file is memory-mapped and the weight blocks are bulk-copied from the page cache,
+	 * so loading a large model takes milliseconds and the JVMs of a host share the cached file.
+	 * @param path the path of the file
+	 * @return the neural network
+	 * @throws IOException if the file is not a valid binary model
+	 */
+	public static NeuralNetwork loadBinary(String path) throws IOException {
+		return ModelFormat.read(path);
+	}
+
 	/**
 	 * Charge the neural network with the parameters of another neural network.
 	 * @param nn the neural network to charge
@@ -182,6 +459,15 @@ public class NeuralNetwork implements Serializable{
 		this.hasBeenTrained = nn.hasBeenTrained;
 		this.bigVerbose = nn.bigVerbose;
 		this.shuffle = nn.shuffle;
+		this.batchMode = nn.batchMode;
+		this.parallelism = nn.parallelism;
+		this.precision = nn.precision;
+		this.optimizer = nn.optimizer;
+		this.schedule = nn.schedule;
+		this.validationSplit = nn.validationSplit;
+		this.patience = nn.patience;
+		this.minDelta = nn.minDelta;
+		this.restoreBestWeights = nn.restoreBestWeights;
 		this.logs = nn.logs;
 		this.isInit = nn.isInit;
 	}
@@ -199,8 +485,6 @@ public class NeuralNetwork implements Serializable{
 	 * @param verbose true if the network should print messages during the training to show the progress
 	 */
 	public void train(double[][] inputs, double[][] outputs, int epochs, int batchSize, double momemtum, boolean verbose) {
-		initForTrainig();
-
 		// Check input dimensions
 		if (inputs.length != outputs.length) {
 			throw new IllegalArgumentException("The number of inputs and outputs must be the same.");
@@ -217,63 +501,366 @@ public class NeuralNetwork implements Serializable{
 			}
 		}
 
-		logs = new double[epochs];
-		int count = 0;
-		long start = System.currentTimeMillis();
-		long globalStart = start;
-		long end;
-		for (int i = 0; i < epochs; i++) {
-
-			if (shuffle) {
-				for (int k = 0; k < inputs.length; k++) {
-					int j = (int) (Math.random() * inputs.length);
-					double[] temp = inputs[k];
-					inputs[k] = inputs[j];
-					inputs[j] = temp;
-					temp = outputs[k];
-					outputs[k] = outputs[j];
-					outputs[j] = temp;
+		train(new ArrayDataset(inputs, outputs), epochs, batchSize, momemtum, verbose);
+	}
+
+	/**
+	 * Train the neural network with sparse inputs, see {@link SparseVector}. When the first layer is a {@link DenseLayer},
+	 * its forward costs O(non-zeros x outputs) and its backward only updates the weights of the non-zero inputs.
+	 * @param inputs the sparse inputs of the network
+	 * @param outputs the outputs of the network
+	 * @param epochs the number of epochs
+	 * @param batchSize the size of the batch
+	 * @param momemtum the momemtum of the network. 0 for no momemtum, should be between 0 and 1.
+	 * @param verbose true if the network should print messages during the training to show the progress
+	 * @see SparseDataset
+	 */
+	public void train(SparseVector[] inputs, double[][] outputs, int epochs, int batchSize, double momemtum, boolean verbose) {
+		train(new SparseDataset(inputs, outputs), epochs, batchSize, momemtum, verbose);
+	}
+
+	/**
+	 * Train the neural network on a dataset. The samples are read batch by batch, so the dataset does not have to fit in memory.
+	 * When the shuffle is enabled, each epoch visits a new permutation of the indices of the samples: blocks of {@link Dataset#blockSize()} consecutive
+	 * samples in a random order, and the samples of each block in a random order.
+	 * The batches are shuffled and gathered by a background {@link BatchLoader} while the previous batch is computed, see {@link #getStallLogs()}.
+	 * @param dataset the samples
+	 * @param epochs the number of epochs
+	 * @param batchSize the size of the batch
+	 * @param momemtum the momemtum of the network. 0 for no momemtum, should be between 0 and 1.
+	 * @param verbose true if the network should print messages during the training to show the progress, through a {@link ConsoleListener}
+	 * @see ArrayDataset
+	 * @see neuralnetwork.data.MappedDataset
+	 */
+	public void train(Dataset dataset, int epochs, int batchSize, double momemtum, boolean verbose) {
+		train(dataset, epochs, batchSize, momemtum, verbose, null);
+	}
+
+	/**
+	 * Resume a training from a checkpoint, on the same network and samples. The training continues with the epoch following the checkpoint,
+	 * the planned epochs, batch size and momemtum of the checkpoint, its logs, the state of its optimizer, and the same shuffles.
+	 * The optimizer and the learning rate schedule of the checkpoint replace the ones of the network.
+	 * A checkpoint of the epoch where the early stopping ended the training resumes to the same end, without training.
+	 * @param checkpoint the checkpoint, see {@link Checkpoint#load(String)}
+	 * @param dataset the samples of the interrupted training
+	 * @param verbose true if the network should print messages during the training to show the progress
+	 * @throws IllegalArgumentException if the checkpoint does not match the layers of the network or the dataset
+	 */
+	public void resume(Checkpoint checkpoint, Dataset dataset, boolean verbose) {
+		train(dataset, checkpoint.epochs, checkpoint.batchSize, checkpoint.momemtum, verbose, checkpoint);
+	}
+
+	/**
+	 * Resume a training from a checkpoint, see {@link #resume(Checkpoint, Dataset, boolean)}.
+	 * @param checkpoint the checkpoint
+	 * @param inputs the inputs of the interrupted training
+	 * @param outputs the outputs of the interrupted training
+	 * @param verbose true if the network should print messages during the training to show the progress
+	 */
+	public void resume(Checkpoint checkpoint, double[][] inputs, double[][] outputs, boolean verbose) {
+		resume(checkpoint, new ArrayDataset(inputs, outputs), verbose);
+	}
+
+	private void train(Dataset dataset, int epochs, int batchSize, double momemtum, boolean verbose, Checkpoint start) {
+		// Split the validation samples
+		Dataset trainingSet = dataset;
+		Dataset validation = validationSet;
+		if (validation == null && validationSplit > 0) {
+			int validationSize = (int) Math.round(dataset.size() * validationSplit);
+			if (validationSize == 0 || validationSize == dataset.size()) {
+				throw new IllegalArgumentException("A validation split of " + validationSplit + " leaves no training or no validation sample out of " + dataset.size() + ".");
+			}
+			trainingSet = dataset.range(0, dataset.size() - validationSize);
+			validation = dataset.range(dataset.size() - validationSize, dataset.size());
+		}
+
+		// Check dataset dimensions
+		if (trainingSet.size() == 0) {
+			throw new IllegalArgumentException("The number of inputs must be greater than 0.");
+		}
+		if (trainingSet.inputDimension() != layers.get(0).getInputDimension()) {
+			throw new IllegalArgumentException("The inputs have a dimension of " + trainingSet.inputDimension() + " but the first layer has a dimension of " + layers.get(0).getInputDimension());
+		}
+		if (trainingSet.outputDimension() != layers.get(layers.size() - 1).getOutputDimension()) {
+			throw new IllegalArgumentException("The outputs have a dimension of " + trainingSet.outputDimension() + " but the last layer has a dimension of " + layers.get(layers.size() - 1).getOutputDimension());
+		}
+		if (validation != null && (validation.inputDimension() != trainingSet.inputDimension() || validation.outputDimension() != trainingSet.outputDimension())) {
+			throw new IllegalArgumentException("The validation set has dimensions " + validation.inputDimension() + "->" + validation.outputDimension() + " instead of " + trainingSet.inputDimension() + "->" + trainingSet.outputDimension());
+		}
+
+		int samples = trainingSet.size();
+		int batchCapacity = Math.min(batchSize, samples);
+		initForTrainig();
+		BatchLoader loader = null;
+		CheckpointWriter checkpoints = null;
+		try { // The layers are restored and the workers stopped even if the training fails
+			initParameterBlocks();
+			int startEpoch = 0;
+			if (start != null) {
+				restore(start);
+				startEpoch = start.epoch;
+			}
+			if (optimizer != null) {
+				optimizer.init(parameterBlocks); // Keeps the restored state
+			}
+			if (schedule != null && start == null) {
+				schedule.reset();
+			}
+			if (batchMode) {
+				initForBatch(batchCapacity);
+			}
+			if (parallelism > 1) {
+				initWorkers(batchCapacity);
+			}
+			if (validation != null) {
+				initValidators(validation.size());
+			}
+			double[][] bestParameters = restoreBestWeights ? copyBlocks(parameterBlocks, null) : null;
+			double bestError = Double.POSITIVE_INFINITY;
+			int epochsWithoutImprovement = 0;
+			double monitoredError = Double.NaN;
+			stopRequested = false;
+
+			logs = new double[epochs];
+			stallLogs = new double[epochs];
+			validationLogs = validation != null ? new double[epochs] : null;
+			BatchLoader.ShuffleState shuffleState = null;
+			if (start != null) {
+				System.arraycopy(start.logs, 0, logs, 0, startEpoch);
+				System.arraycopy(start.stallLogs, 0, stallLogs, 0, startEpoch);
+				if (validationLogs != null && start.validationLogs != null) {
+					System.arraycopy(start.validationLogs, 0, validationLogs, 0, startEpoch);
 				}
+				if (bestParameters != null && start.bestParameters != null) {
+					copyBlocks(start.bestParameters, bestParameters);
+				}
+				bestError = start.bestError;
+				epochsWithoutImprovement = start.epochsWithoutImprovement;
+				monitoredError = start.monitoredError;
+				if (patience > 0 && epochsWithoutImprovement >= patience) { // The interrupted training had stopped early at this epoch
+					stopRequested = true;
+				}
+				shuffleState = start.shuffleState;
+				if (shuffleState != null) {
+					random = shuffleState.getRandom();
+				}
+			}
+			checkpoints = checkpointPath != null ? new CheckpointWriter(checkpointPath) : null;
+
+			// The metrics are only measured when someone listens
+			List<TrainingListener> activeListeners = new ArrayList<TrainingListener>(listeners);
+			if (verbose) {
+				activeListeners.add(new ConsoleListener(bigVerbose));
+			}
+			boolean profiling = !activeListeners.isEmpty();
+			BatchMetrics batchMetrics = null;
+			double[] gradientNorms = null;
+			if (profiling) {
+				initProfiling();
+				batchMetrics = new BatchMetrics(layers.size());
+				gradientNorms = new double[layers.size()];
+			}
+			int batches = (samples + batchSize - 1) / batchSize;
+			for (TrainingListener listener : activeListeners) {
+				listener.trainingStarted(this, epochs, samples);
 			}
+
+			int count = startEpoch;
+			long globalStart = System.nanoTime();
+			loader = new BatchLoader(trainingSet, batchSize, epochs - startEpoch, shuffle, random, PREFETCHED_BATCHES, shuffleState);
+			for (int i = startEpoch; i < epochs && !stopRequested; i++) {
+				currentLearningRate = schedule != null ? schedule.learningRate(i, learningRate, monitoredError) : learningRate;
+				long epochStart = System.nanoTime();
+				long allocatedStart = allocatedBytes();
+				EpochEvent epochEvent = new EpochEvent();
+				epochEvent.begin();
+				boolean batchEvents = BATCH_EVENT.isEnabled();
 			
-			lastError = 0;
-			for (int j = 0; j < inputs.length; j += batchSize) {
-				for (int k = 0; k < batchSize && j + k < inputs.length ; k++) {
-					setInput(inputs[j + k]);
-					forward();
-					lastError += errorFunction.error(getOutput(),outputs[j + k]);
-					backward(outputs[j + k]);
+				lastError = 0;
+				for (int j = 0; j < batches && !stopRequested; j++) {
+					BatchLoader.Batch batch = loader.next();
+					BatchEvent batchEvent = null;
+					if (batchEvents) {
+						batchEvent = new BatchEvent();
+						batchEvent.begin();
+					}
+					long batchStart = profiling ? System.nanoTime() : 0;
+					double batchError;
+					if (workers != null) {
+						batchError = trainParallel(batch);
+					} else {
+						batchError = trainRange(batch, 0, batch.size);
+					}
+					lastError += batchError;
+					if (profiling) {
+						long batchTime = System.nanoTime() - batchStart;
+						computeGradientNorms(batchMetrics.getGradientNorms());
+						for (int l = 0; l < layers.size(); l++) {
+							gradientNorms[l] += batchMetrics.getGradientNorms()[l];
+						}
+						batchMetrics.set(i, j, batches, batch.size, batchError / batch.size, batchTime);
+						for (TrainingListener listener : activeListeners) {
+							listener.batchEnded(batchMetrics);
+						}
+					}
+					if (batchEvent != null) {
+						batchEvent.epoch = i;
+						batchEvent.batch = j;
+						batchEvent.size = batch.size;
+						batchEvent.error = batchError / batch.size;
+						batchEvent.commit();
+					}
+					update(momemtum);
+					loader.release(batch);
+				}
+				if (stopRequested) { // The interrupted epoch is not logged
+					break;
+				}
+				long stallTime = loader.takeStallTime();
+				shuffleState = loader.takeShuffleState(i - startEpoch);
+				logs[i] = lastError/samples;
+				stallLogs[i] = stallTime / 1e6;
+				monitoredError = logs[i];
+				if (validation != null) {
+					validationLogs[i] = validate(validation);
+					monitoredError = validationLogs[i];
 				}
-				if (verbose && bigVerbose) {
-					System.out.println("Epoch " + i + "/" + epochs +  "- Batch " + (j/batchSize + 1) + "/" + (inputs.length/batchSize) + " - error: " + lastError/batchSize);
-					int layerIndex = 0;
-					for (Layer layer : layers) {
-						layerIndex++;
-						System.out.println("Layer " + layerIndex + ":");
-						layer.resumeGradient();
+				count++;
+				long allocated = allocatedStart < 0 ? -1 : allocatedBytes() - allocatedStart;
+				if (epochEvent.shouldCommit()) {
+					epochEvent.epoch = i;
+					epochEvent.samples = samples;
+					epochEvent.error = logs[i];
+					epochEvent.validationError = validation != null ? validationLogs[i] : Double.NaN;
+					epochEvent.learningRate = currentLearningRate;
+					epochEvent.stallTime = stallTime;
+					epochEvent.allocated = allocated;
+					epochEvent.commit();
+				}
+				if (profiling) {
+					long[] forwardTimes = new long[layers.size()];
+					long[] backwardTimes = new long[layers.size()];
+					collectLayerTimes(forwardTimes, backwardTimes);
+					double[] meanGradientNorms = new double[layers.size()];
+					for (int l = 0; l < layers.size(); l++) {
+						meanGradientNorms[l] = gradientNorms[l] / batches;
+						gradientNorms[l] = 0;
+					}
+					EpochMetrics metrics = new EpochMetrics(i, epochs, samples, logs[i], validation != null ? validationLogs[i] : Double.NaN, currentLearningRate,
+						System.nanoTime() - epochStart, stallTime, allocated, forwardTimes, backwardTimes, meanGradientNorms);
+					for (TrainingListener listener : activeListeners) {
+						listener.epochEnded(metrics);
 					}
 				}
-				update(momemtum);
-			}
-			logs[i] = lastError/inputs.length;
-			count++;
-			end = System.currentTimeMillis();
-			if (verbose && !bigVerbose) {
-				if (!bigVerbose) {
-					System.out.println("Epoch " + count + "/" + epochs + " (" + (end - start) + " ms) - error: " + lastError/inputs.length);
+
+				// Early stopping
+				boolean stopEarly = false;
+				if (monitoredError < bestError - minDelta) {
+					bestError = monitoredError;
+					epochsWithoutImprovement = 0;
+					if (bestParameters != null) {
+						copyBlocks(parameterBlocks, bestParameters);
+					}
+				} else if (patience > 0 && ++epochsWithoutImprovement >= patience) {
+					stopEarly = true;
+				}
+
+				if (checkpoints != null && (i + 1) % checkpointInterval == 0) {
+					checkpoints.submit(new Checkpoint(i + 1, epochs, batchSize, momemtum, copyBlocks(parameterBlocks, null),
+							optimizer == null ? copyBlocks(gradientBlocks, null) : null, optimizer != null ? optimizer.copy() : null, copy(schedule),
+							Arrays.copyOf(logs, i + 1), Arrays.copyOf(stallLogs, i + 1), validationLogs != null ? Arrays.copyOf(validationLogs, i + 1) : null,
+							bestError, epochsWithoutImprovement, monitoredError, bestParameters != null ? copyBlocks(bestParameters, null) : null, shuffleState));
+				}
+				if (stopEarly) {
+					break;
 				}
 			}
-			start = end;
-		}
-		end = System.currentTimeMillis();
-		if (verbose) {
-			System.out.println("Training finished in " + (end - globalStart) + " ms.");
-			System.out.println("Modifier variables count: " + getParameterCount() * epochs);
+			if (bestParameters != null && count > 0) {
+				copyBlocks(bestParameters, parameterBlocks);
+				for (Layer layer : layers) { // The best weights may predate the last pruning
+					layer.afterUpdate();
+				}
+			}
+			if (count < epochs) {
+				logs = Arrays.copyOf(logs, count);
+				stallLogs = Arrays.copyOf(stallLogs, count);
+				if (validationLogs != null) {
+					validationLogs = Arrays.copyOf(validationLogs, count);
+				}
+			}
+			for (TrainingListener listener : activeListeners) {
+				listener.trainingEnded(this, count, System.nanoTime() - globalStart);
+			}
+			lastError = count > 0 ? logs[count - 1] : 0;
+		} finally {
+			if (loader != null) {
+				loader.close();
+			}
+			if (checkpoints != null) {
+				checkpoints.close(); // Wait for the last checkpoint
+			}
+			for (Layer layer : layers) {
+				layer.endTraining();
+			}
+			clear();
+			isInit = false;
 		}
-		clear();
 		hasBeenTrained = true;
+		if (checkpoints != null) {
+			if (verbose && checkpoints.getReplaced() > 0) {
+				System.out.println("Warning: " + checkpoints.getReplaced() + " checkpoints replaced by a newer one before being written, the disk is slower than the epochs.");
+			}
+			checkpoints.checkFailure();
+		}
+	}
+
+	/**
+	 * Stop the current training at the end of the current batch. Can be called from any thread, the logs stop at the last complete epoch.
+	 */
+	public void stop() {
+		stopRequested = true;
+	}
+
+	/**
+	 * Prune the dense layers of the network: in each one, the fraction sparsity of the weights of smallest absolute value is set to zero,
+	 * then the layers are stored in compressed rows, see {@link #sparsify()}.
+	 * @param sparsity the fraction of zero weights of each dense layer, between 0 and 1
+	 * @see Pruning
+	 * @see GradualPruning
+	 */
+	public void prune(double sparsity) {
+		for (Layer layer : layers) {
+			if (layer instanceof DenseLayer) {
+				Pruning.prune((DenseLayer) layer, sparsity);
+			}
+		}
+		sparsify();
+	}
+
+	/**
+	 * Prune the weights of the dense layers of absolute value lower than a treshold, then store the layers in compressed rows, see {@link #sparsify()}.
+	 * @param treshold the treshold
+	 */
+	public void pruneBelow(double treshold) {
+		for (Layer layer : layers) {
+			if (layer instanceof DenseLayer) {
+				Pruning.pruneBelow((DenseLayer) layer, treshold);
+			}
+		}
+		sparsify();
+	}
+
+	/**
+	 * Replace the dense layers of density at most {@link Pruning#MAX_SPARSE_DENSITY} by {@link SparseDenseLayer}s storing only their non-zero weights,
+	 * so the size of the model and the cost of the predictions scale with the number of non-zero weights. Must not be called during a training.
+	 */
+	public void sparsify() {
+		for (int i = 0; i < layers.size(); i++) {
+			if (layers.get(i) instanceof DenseLayer && 1 - Pruning.sparsity((DenseLayer) layers.get(i)) <= Pruning.MAX_SPARSE_DENSITY) {
+				layers.set(i, SparseDenseLayer.of((DenseLayer) layers.get(i)));
+			}
+		}
 		isInit = false;
-		lastError = lastError/inputs.length;
 	}
 
 	// !SECTION : Public training methods
@@ -281,8 +868,10 @@ public class NeuralNetwork implements Serializable{
 	// SECTION : Public prediction methods
 	/**
 	 * Compute the prediction of the network for the given input.
+	 * Uses the buffers of the layers of the network, so it must not be called concurrently: use one {@link InferenceSession} per thread instead.
 	 * @param input the input of the network
 	 * @return the prediction of the network
+	 * @see #newSession()
 	 */
 	public double[] predict(double[] input) {
 		initForPredict();
@@ -296,6 +885,88 @@ public class NeuralNetwork implements Serializable{
 		}
 		return clone;
 	}
+
+	/**
+	 * Compute the prediction of the network for a sparse input. Same restrictions as {@link #predict(double[])}.
+	 * @param input the sparse input of the network
+	 * @return the prediction of the network
+	 */
+	public double[] predict(SparseVector input) {
+		if (input.getDimension() != layers.get(0).getInputDimension()) {
+			throw new IllegalArgumentException("The input has a dimension of " + input.getDimension() + " but the first layer has a dimension of " + layers.get(0).getInputDimension());
+		}
+		initForPredict();
+		setSparseInput(input.getIndices(), input.getValues(), 0, input.getNonZeros());
+		forward();
+		return getOutput().clone();
+	}
+
+	/**
+	 * Open a new inference session on the network. The session shares the parameters of the network and owns its activation buffers,
+	 * so each thread can predict with its own session without copying the model.
+	 * @return the session
+	 * @see InferenceSession
+	 */
+	public InferenceSession newSession() {
+		return new InferenceSession(layers);
+	}
+
+	/**
+	 * Compute the predictions of the network for a batch of inputs, written in the given outputs.
+	 * Does not allocate once the network has been initialized for the prediction.
+	 * @param inputs the inputs of the network
+	 * @param outputs the arrays receiving the predictions, one per input, of at least the output dimension of the network
+	 */
+	public void predictBatch(double[][] inputs, double[][] outputs) {
+		if (outputs.length < inputs.length) {
+			throw new IllegalArgumentException("The number of outputs (" + outputs.length + ") is lower than the number of inputs (" + inputs.length + ").");
+		}
+		initForPredict();
+		int outputDimension = layers.get(layers.size() - 1).getOutputDimension();
+		for (int i = 0; i < inputs.length; i++) {
+			setInput(inputs[i]);
+			forward();
+			System.arraycopy(getOutput(), 0, outputs[i], 0, outputDimension);
+		}
+	}
+
+	/**
+	 * Compute the prediction of the network for an input read in a flat buffer, written in another flat buffer.
+	 * Does not allocate once the network has been initialized for the prediction.
+	 * @param input the buffer holding the input
+	 * @param offset the offset of the input in the buffer
+	 * @param output the buffer receiving the prediction
+	 * @param outputOffset the offset of the prediction in the buffer
+	 */
+	public void predictInto(double[] input, int offset, double[] output, int outputOffset) {
+		initForPredict();
+		System.arraycopy(input, offset, inputRow, 0, inputRow.length);
+		setInput(inputRow);
+		forward();
+		double[] prediction = getOutput();
+		System.arraycopy(prediction, 0, output, outputOffset, prediction.length);
+	}
+
+	/**
+	 * Quantize the network to int8 for the inference. The network itself is not modified.
+	 * The accuracy delta of the quantized network on the calibration inputs is available with {@link QuantizedNetwork#getCalibrationReport()}.
+	 * @param calibrationInputs representative inputs, used to choose the scales of the activations
+	 * @return the quantized network
+	 * @see QuantizedNetwork
+	 */
+	public QuantizedNetwork quantize(double[][] calibrationInputs) {
+		return QuantizedNetwork.quantize(this, layers, calibrationInputs);
+	}
+
+	/**
+	 * Compile the network to an immutable inference plan: the layers are fused and folded, and the plan keeps no training state.
+	 * The plan copies the parameters, so later trainings of the network do not affect it.
+	 * @return the inference plan
+	 * @see InferencePlan
+	 */
+	public InferencePlan compile() {
+		return InferencePlan.compile(layers);
+	}
 	// !SECTION : Public prediction methods
 
 	// SECTION : Public information methods
@@ -316,6 +987,22 @@ public class NeuralNetwork implements Serializable{
 		return logs;
 	}
 
+	/**
+	 * Get the time the training waited for the batches to be loaded, at each epoch. Close to 0 when the loading is hidden behind the computation.
+	 * @return the waiting time in ms of each epoch
+	 */
+	public double[] getStallLogs() {
+		return stallLogs;
+	}
+
+	/**
+	 * Get the logs of error of the network on the validation set during the training. Null when the training had no validation.
+	 * @return the mean validation error of each epoch
+	 */
+	public double[] getValidationLogs() {
+		return validationLogs;
+	}
+
 	/**
 	 * Get the last error of the network during the training.
 	 * @return
@@ -324,6 +1011,26 @@ public class NeuralNetwork implements Serializable{
 		return lastError;
 	}
 
+	/**
+	 * Get the number of parameters of the network.
+	 * @return the sum of the parameter counts of the layers
+	 */
+	public int getParameterCount() {
+		int count = 0;
+		for (Layer layer : layers) {
+			count += layer.getParameterCount();
+		}
+		return count;
+	}
+
+	/**
+	 * Get the layers of the network.
+	 * @return a read-only view of the layers
+	 */
+	public List<Layer> getLayers() {
+		return Collections.unmodifiableList(layers);
+	}
+
 	/**
 	 * Print the information of the network.
 	 */
@@ -334,6 +1041,8 @@ public class NeuralNetwork implements Serializable{
 			layer.resume();
 		}
 		System.out.println("\nError function: " + errorFunction.toString());
+		System.out.println("Precision: " + precision);
+		System.out.println("Optimizer: " + (optimizer == null ? "gradient descent" : optimizer.getClass().getSimpleName()));
 		int totalParameters = 0;
 		for (Layer layer : layers) {
 			totalParameters += layer.getParameterCount();
@@ -357,24 +1066,204 @@ public class NeuralNetwork implements Serializable{
 	
 	private void forward() {
 		for (int i = 0; i < layers.size(); i++) {
-			layers.get(i).forward();
+			if (forwardNanos != null) {
+				long start = System.nanoTime();
+				layers.get(i).forward();
+				forwardNanos[i] += System.nanoTime() - start;
+			} else {
+				layers.get(i).forward();
+			}
 			if (i < layers.size() - 1)
 				layers.get(i + 1).setInput(layers.get(i).getOutput());
 		}
 	}
 
 	private void backward(double[] outputs) {
-		layers.get(layers.size() - 1).setOutputGradients(errorFunction.errorGradient(layers.get(layers.size() - 1).getOutput(), outputs));
+		if (fusedGradient) {
+			errorFunction.fusedGradient(getOutput(), outputs, errorGradients);
+		} else {
+			errorFunction.errorGradient(getOutput(), outputs, errorGradients);
+		}
+		layers.get(layers.size() - 1).setOutputGradients(errorGradients);
 		for (int i = layers.size() - 1; i >= 0; i--) {
-			layers.get(i).backward();
+			if (backwardNanos != null) {
+				long start = System.nanoTime();
+				layers.get(i).backward();
+				backwardNanos[i] += System.nanoTime() - start;
+			} else {
+				layers.get(i).backward();
+			}
 			if (i > 0)
 				layers.get(i - 1).setOutputGradients(layers.get(i).getInputGradients());
 		}
 	}
 
+	/**
+	 * Forward and backward the rows [from, from + size[ of a gathered batch, gradients are accumulated in the layers.
+	 * @return the sum of the errors of the rows
+	 */
+	private double trainRange(BatchLoader.Batch batch, int from, int size) {
+		if (batchMode) {
+			return trainBatch(batch, from, size);
+		}
+		int inputDimension = inputRow.length;
+		int outputDimension = targetRow.length;
+		double error = 0;
+		for (int k = from; k < from + size; k++) {
+			if (batch.sparse) {
+				setSparseInput(batch.indices, batch.values, batch.rowStarts[k], batch.rowStarts[k + 1]);
+			} else {
+				System.arraycopy(batch.inputs, k * inputDimension, inputRow, 0, inputDimension);
+				setInput(inputRow);
+			}
+			System.arraycopy(batch.targets, k * outputDimension, targetRow, 0, outputDimension);
+			forward();
+			if (fusedGradient) {
+				error += errorFunction.fusedError(layers.get(layers.size() - 1).getPreActivation(), 0, targetRow, 0, outputDimension);
+			} else {
+				error += errorFunction.error(getOutput(), targetRow);
+			}
+			backward(targetRow);
+		}
+		return error;
+	}
+
+	/**
+	 * Split the rows of a gathered batch in shards computed by the workers, then reduce their gradients in this network.
+	 * @return the sum of the errors of the rows
+	 */
+	private double trainParallel(BatchLoader.Batch batch) {
+		int shards = Math.min(workers.length, batch.size);
+		double error = pool.invoke(new ShardTask(batch, shards, 0, shards));
+		for (int i = 0; i < layers.size(); i++) {
+			layers.get(i).addGradients(workers[0].layers.get(i));
+		}
+		return error;
+	}
+
+	/**
+	 * Compute the shards [from, to[ of a batch. The gradients of the shards are tree-reduced in the worker of the first shard.
+	 */
+	private class ShardTask extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		final BatchLoader.Batch batch;
+		final int shards;
+		final int from;
+		final int to;
+
+		ShardTask(BatchLoader.Batch batch, int shards, int from, int to) {
+			this.batch = batch;
+			this.shards = shards;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Double compute() {
+			if (to - from == 1) {
+				NeuralNetwork worker = workers[from];
+				for (Layer layer : worker.layers) {
+					layer.resetGradients();
+				}
+				int shardStart = (int) ((long) batch.size * from / shards);
+				int shardEnd = (int) ((long) batch.size * to / shards);
+				return worker.trainRange(batch, shardStart, shardEnd - shardStart);
+			}
+			int middle = (from + to) >>> 1;
+			ShardTask left = new ShardTask(batch, shards, from, middle);
+			ShardTask right = new ShardTask(batch, shards, middle, to);
+			right.fork();
+			double error = left.compute();
+			error += right.join();
+			List<Layer> target = workers[from].layers;
+			List<Layer> source = workers[middle].layers;
+			for (int i = 0; i < target.size(); i++) {
+				target.get(i).addGradients(source.get(i));
+			}
+			return error;
+		}
+	}
+
+	/**
+	 * Forward and backward the rows [from, from + size[ of a gathered batch as one batch.
+	 * @return the sum of the errors of the batch
+	 */
+	private double trainBatch(BatchLoader.Batch batch, int from, int size) {
+		int inputDimension = inputRow.length;
+		int outputDimension = targetRow.length;
+		double[] targets = batch.targets;
+		if (batch.sparse) {
+			setSparseBatchInput(batch, from, size);
+		} else {
+			double[] block = batch.inputs;
+			if (from != 0) { // The layers read their batch from the start of the block
+				System.arraycopy(batch.inputs, from * inputDimension, batchInputs, 0, size * inputDimension);
+				block = batchInputs;
+			}
+			layers.get(0).setBatchInput(block, size);
+		}
+		forwardBatch(size);
+
+		double error = 0;
+		double[] batchOutputs = layers.get(layers.size() - 1).getBatchOutput();
+		double[] batchPreActivations = layers.get(layers.size() - 1).getBatchPreActivation();
+		for (int k = 0; k < size; k++) {
+			int outputOffset = k * outputDimension;
+			int targetOffset = (from + k) * outputDimension;
+			if (fusedGradient) {
+				error += errorFunction.fusedError(batchPreActivations, outputOffset, targets, targetOffset, outputDimension);
+				errorFunction.fusedGradient(batchOutputs, outputOffset, targets, targetOffset, batchGradients, outputOffset, outputDimension);
+			} else {
+				error += errorFunction.error(batchOutputs, outputOffset, targets, targetOffset, outputDimension);
+				errorFunction.errorGradient(batchOutputs, outputOffset, targets, targetOffset, batchGradients, outputOffset, outputDimension);
+			}
+		}
+
+		backwardBatch();
+		return error;
+	}
+
+	private void forwardBatch(int size) {
+		for (int i = 0; i < layers.size(); i++) {
+			if (forwardNanos != null) {
+				long start = System.nanoTime();
+				layers.get(i).forwardBatch();
+				forwardNanos[i] += System.nanoTime() - start;
+			} else {
+				layers.get(i).forwardBatch();
+			}
+			if (i < layers.size() - 1)
+				layers.get(i + 1).setBatchInput(layers.get(i).getBatchOutput(), size);
+		}
+	}
+
+	private void backwardBatch() {
+		layers.get(layers.size() - 1).setBatchOutputGradients(batchGradients);
+		for (int i = layers.size() - 1; i >= 0; i--) {
+			if (backwardNanos != null) {
+				long start = System.nanoTime();
+				layers.get(i).backwardBatch();
+				backwardNanos[i] += System.nanoTime() - start;
+			} else {
+				layers.get(i).backwardBatch();
+			}
+			if (i > 0)
+				layers.get(i - 1).setBatchOutputGradients(layers.get(i).getBatchInputGradients());
+		}
+	}
+
 	private void update(double momemtum) {
+		if (optimizer != null) {
+			optimizer.step(parameterBlocks, gradientBlocks, currentLearningRate);
+		} else {
+			for (Layer layer : layers) {
+				layer.update(currentLearningRate, momemtum);
+			}
+		}
 		for (Layer layer : layers) {
-			layer.update(this.learningRate, momemtum);
+			layer.afterUpdate();
 		}
 	}
 	// !SECTION : Private training methods
@@ -384,20 +1273,44 @@ public class NeuralNetwork implements Serializable{
 		layers.get(0).setInput(input);
 	}
 
+	/**
+	 * Set the sparse input indices[k], values[k] for k in [from, to[. A first dense layer reads it as is, other layers read it densified in inputRow.
+	 */
+	private void setSparseInput(int[] indices, double[] values, int from, int to) {
+		if (layers.get(0) instanceof DenseLayer) {
+			((DenseLayer) layers.get(0)).setSparseInput(indices, values, from, to);
+			return;
+		}
+		Arrays.fill(inputRow, 0);
+		for (int k = from; k < to; k++) {
+			inputRow[indices[k]] = values[k];
+		}
+		setInput(inputRow);
+	}
+
+	/**
+	 * Set the rows [from, from + size[ of a sparse batch as the batch input, densified in batchInputs unless the first layer is a dense layer.
+	 */
+	private void setSparseBatchInput(BatchLoader.Batch batch, int from, int size) {
+		if (layers.get(0) instanceof DenseLayer) {
+			((DenseLayer) layers.get(0)).setSparseBatchInput(batch.rowStarts, from, batch.indices, batch.values, size);
+			return;
+		}
+		int inputDimension = inputRow.length;
+		Arrays.fill(batchInputs, 0, size * inputDimension, 0);
+		for (int r = 0; r < size; r++) {
+			for (int k = batch.rowStarts[from + r]; k < batch.rowStarts[from + r + 1]; k++) {
+				batchInputs[r * inputDimension + batch.indices[k]] = batch.values[k];
+			}
+		}
+		layers.get(0).setBatchInput(batchInputs, size);
+	}
+
 	private double[] getOutput() {
 		return layers.get(layers.size() - 1).getOutput();
 	}
 	// !SECTION : Private prediction methods
 
-	// SECTION : Private information methods
-	private int getParameterCount() {
-		int count = 0;
-		for (Layer layer : layers) {
-			count += layer.getParameterCount();
-		}
-		return count;
-	}
-	// !SECTION : Private information methods
 
 
 	// SECTION : Private state methods
@@ -405,14 +1318,242 @@ public class NeuralNetwork implements Serializable{
 		for (Layer layer : layers) {
 			layer.initForTraining();
 		}
+		inputRow = new double[layers.get(0).getInputDimension()];
+		targetRow = new double[layers.get(layers.size() - 1).getOutputDimension()];
+		errorGradients = new double[layers.get(layers.size() - 1).getOutputDimension()];
+		Layer outputLayer = layers.get(layers.size() - 1);
+		fusedGradient = errorFunction.fuses(outputLayer.getActivationFunction());
+		outputLayer.fusedActivationGradients = fusedGradient;
 		isInit = true;
 	}
 
+	private void initParameterBlocks() {
+		List<double[]> parameters = new ArrayList<double[]>();
+		List<double[]> gradients = new ArrayList<double[]>();
+		for (Layer layer : layers) {
+			parameters.addAll(Arrays.asList(layer.getParameterBlocks()));
+			gradients.addAll(Arrays.asList(layer.getGradientBlocks()));
+		}
+		parameterBlocks = parameters.toArray(new double[0][]);
+		gradientBlocks = gradients.toArray(new double[0][]);
+	}
+
+	/**
+	 * Restore the state of a checkpoint in the training buffers: the parameters, the momemtum of the layers, the optimizer and the schedule.
+	 */
+	private void restore(Checkpoint checkpoint) {
+		if (!sameShapes(checkpoint.parameters, parameterBlocks)) {
+			throw new IllegalArgumentException("The checkpoint does not match the layers of the network.");
+		}
+		copyBlocks(checkpoint.parameters, parameterBlocks);
+		if (checkpoint.velocities != null) {
+			copyBlocks(checkpoint.velocities, gradientBlocks);
+		}
+		optimizer = checkpoint.optimizer != null ? checkpoint.optimizer.copy() : null; // The checkpoint can be resumed again
+		schedule = copy(checkpoint.schedule);
+	}
+
+	private static boolean sameShapes(double[][] a, double[][] b) {
+		if (a.length != b.length) {
+			return false;
+		}
+		for (int k = 0; k < a.length; k++) {
+			if (a[k].length != b[k].length) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static LearningRateSchedule copy(LearningRateSchedule schedule) {
+		if (schedule == null) {
+			return null;
+		}
+		try {
+			return (LearningRateSchedule) ModelFormat.deserialize(ModelFormat.serialize(schedule));
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot copy the learning rate schedule.", e);
+		}
+	}
+
+	/**
+	 * Copy parameter blocks in blocks of the same shapes, allocated if destination is null.
+	 * @return the destination
+	 */
+	private static double[][] copyBlocks(double[][] source, double[][] destination) {
+		if (destination == null) {
+			destination = new double[source.length][];
+			for (int b = 0; b < source.length; b++) {
+				destination[b] = new double[source[b].length];
+			}
+		}
+		for (int b = 0; b < source.length; b++) {
+			System.arraycopy(source[b], 0, destination[b], 0, source[b].length);
+		}
+		return destination;
+	}
+
+	/**
+	 * Allocate the timers of the layers of this network and of its workers.
+	 */
+	private void initProfiling() {
+		forwardNanos = new long[layers.size()];
+		backwardNanos = new long[layers.size()];
+		if (workers != null) {
+			for (NeuralNetwork worker : workers) {
+				worker.forwardNanos = new long[layers.size()];
+				worker.backwardNanos = new long[layers.size()];
+			}
+		}
+		layerGradientBlocks = new double[layers.size()][][];
+		for (int l = 0; l < layers.size(); l++) {
+			layerGradientBlocks[l] = layers.get(l).getGradientBlocks();
+		}
+	}
+
+	/**
+	 * Move the times measured by the timers of this network and of its workers in the given arrays, and reset the timers.
+	 */
+	private void collectLayerTimes(long[] forwardTimes, long[] backwardTimes) {
+		for (int l = 0; l < layers.size(); l++) {
+			forwardTimes[l] = forwardNanos[l];
+			backwardTimes[l] = backwardNanos[l];
+			forwardNanos[l] = 0;
+			backwardNanos[l] = 0;
+			if (workers != null) {
+				for (NeuralNetwork worker : workers) {
+					forwardTimes[l] += worker.forwardNanos[l];
+					backwardTimes[l] += worker.backwardNanos[l];
+					worker.forwardNanos[l] = 0;
+					worker.backwardNanos[l] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compute the L2 norm of the accumulated gradients of each layer.
+	 */
+	private void computeGradientNorms(double[] norms) {
+		for (int l = 0; l < layerGradientBlocks.length; l++) {
+			double sum = 0;
+			for (double[] block : layerGradientBlocks[l]) {
+				for (int k = 0; k < block.length; k++) {
+					sum += block[k] * block[k];
+				}
+			}
+			norms[l] = Math.sqrt(sum);
+		}
+	}
+
+	/**
+	 * @return the bytes allocated so far by the current thread, -1 if the JVM does not measure it
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+		}
+		return -1;
+	}
+
+	private void initValidators(int validationSize) {
+		int count = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), validationSize / VALIDATION_CHUNK));
+		validators = new ArrayList<Validator>(count);
+		for (int i = 0; i < count; i++) {
+			validators.add(new Validator());
+		}
+	}
+
+	/**
+	 * Compute the mean error of the network on a validation set, split in chunks computed concurrently by the validators.
+	 */
+	private double validate(Dataset validation) {
+		int count = validators.size();
+		for (int i = 0; i < count; i++) {
+			Validator validator = validators.get(i);
+			validator.dataset = validation;
+			validator.from = (int) ((long) validation.size() * i / count);
+			validator.to = (int) ((long) validation.size() * (i + 1) / count);
+		}
+		ForkJoinPool validationPool = pool != null ? pool : ForkJoinPool.commonPool();
+		double error = 0;
+		try {
+			for (Future<Double> result : validationPool.invokeAll(validators)) {
+				error += result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted during the validation.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("The validation failed.", e.getCause());
+		}
+		return error / validation.size();
+	}
+
+	/**
+	 * Compute the error of a chunk of a validation set, with its own inference session on the parameters being trained.
+	 */
+	private class Validator implements Callable<Double> {
+
+		final InferenceSession session = newSession();
+		final double[] input = new double[layers.get(0).getInputDimension()];
+		final double[] output = new double[layers.get(layers.size() - 1).getOutputDimension()];
+		final double[] target = new double[output.length];
+		Dataset dataset;
+		int from;
+		int to;
+
+		@Override
+		public Double call() {
+			double error = 0;
+			for (int k = from; k < to; k++) {
+				dataset.readInput(k, input, 0);
+				dataset.readOutput(k, target, 0);
+				session.predictInto(input, 0, output, 0);
+				if (fusedGradient) {
+					error += errorFunction.fusedError(session.getPreActivation(), 0, target, 0, target.length);
+				} else {
+					error += errorFunction.error(output, target);
+				}
+			}
+			return error;
+		}
+	}
+
+	private void initForBatch(int batchCapacity) {
+		for (Layer layer : layers) {
+			layer.initForBatch(batchCapacity);
+		}
+		batchInputs = new double[batchCapacity * layers.get(0).getInputDimension()];
+		batchGradients = new double[batchCapacity * layers.get(layers.size() - 1).getOutputDimension()];
+	}
+
+	private void initWorkers(int batchCapacity) {
+		pool = new ForkJoinPool(parallelism);
+		workers = new NeuralNetwork[parallelism];
+		int shardCapacity = (batchCapacity + parallelism - 1) / parallelism;
+		for (int i = 0; i < parallelism; i++) {
+			NeuralNetwork worker = new NeuralNetwork();
+			for (Layer layer : layers) {
+				worker.layers.add(layer.replica());
+			}
+			worker.errorFunction = errorFunction;
+			worker.batchMode = batchMode;
+			worker.initForTrainig();
+			if (batchMode) {
+				worker.initForBatch(shardCapacity);
+			}
+			workers[i] = worker;
+		}
+	}
+
 	private void initForPredict() {
 		if (isInit) return;
 		for (Layer layer : layers) {
 			layer.initForPredict();
 		}
+		inputRow = new double[layers.get(0).getInputDimension()];
 		isInit = true;
 	}
 
@@ -420,6 +1561,39 @@ public class NeuralNetwork implements Serializable{
 		for (Layer layer : layers) {
 			layer.clear();
 		}
+		batchInputs = null;
+		batchGradients = null;
+		inputRow = null;
+		targetRow = null;
+		errorGradients = null;
+		parameterBlocks = null;
+		gradientBlocks = null;
+		validators = null;
+		forwardNanos = null;
+		backwardNanos = null;
+		layerGradientBlocks = null;
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+		if (workers != null) {
+			for (NeuralNetwork worker : workers) {
+				worker.clear();
+			}
+			workers = null;
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (precision == null) { // Model saved before the precision modes
+			precision = Precision.DOUBLE;
+		}
+		if (parallelism < 1) { // Model saved before the parallel training
+			parallelism = 1;
+		}
+		random = new Random();
+		listeners = new ArrayList<TrainingListener>();
 	}
 	// !SECTION : Private state methods
 
@@ -0,0 +1,174 @@
+package neuralnetwork;
+
+/**
+ * Base of the pooling layers. The shapes follow {@link ConvolutionalLayer}: the input holds channels of n-dimensional volumes,
+ * channel-major (the channel c starts at c * volume), each volume row-major, as the output of a convolutional layer of depth channels.
+ * A window of pool elements slides over each channel with a stride, the output has the same layout with the pooled volumes.
+ * Pooling layers have no parameters.
+ */
+public abstract class PoolingLayer extends Layer {
+
+	private static final long serialVersionUID = 1L;
+
+	int[] inputDimension; // The dimensions of the volume of a channel
+	int[] outputDimension; // The dimensions of the pooled volume of a channel
+	int channels;
+	int[] poolDimension;
+	int[] stride;
+	int[] padding;
+
+	final int inputVolume;
+	final int outputVolume;
+	final int poolSize; // The number of elements of a window
+
+	transient int[] gather; // For each output position and each pool element, the index in the channel volume, or -1 in the padding. Immutable, shared by the replicas
+
+	/**
+	 * Create a pooling layer.
+	 * @param inputDimension the dimensions of the volume of a channel
+	 * @param channels the number of channels
+	 * @param poolDimension the dimensions of the window
+	 * @param stride the step of the window in each dimension
+	 * @param padding the padding on both sides of each dimension, the padding is never selected nor averaged
+	 */
+	public PoolingLayer(int[] inputDimension, int channels, int[] poolDimension, int[] stride, int[] padding) {
+		if (inputDimension.length != poolDimension.length
+			|| inputDimension.length != stride.length
+			|| inputDimension.length != padding.length) {
+			throw new IllegalArgumentException("The length of inputDimension, poolDimension, stride and padding must be the same");
+		}
+		if (channels <= 0) {
+			throw new IllegalArgumentException("The number of channels must be positive");
+		}
+		int[] outputDimension = new int[inputDimension.length];
+		int inputVolume = 1;
+		int outputVolume = 1;
+		int poolSize = 1;
+		for (int i = 0; i < inputDimension.length; i++) {
+			if (inputDimension[i] <= 0 || poolDimension[i] <= 0 || stride[i] <= 0 || padding[i] < 0 || padding[i] >= poolDimension[i]) {
+				throw new IllegalArgumentException("The dimensions, pool dimensions and strides must be positive, the padding lower than the pool dimension");
+			}
+			outputDimension[i] = (inputDimension[i] - poolDimension[i] + 2 * padding[i]) / stride[i] + 1;
+			if (outputDimension[i] <= 0) {
+				throw new IllegalArgumentException("The output dimension must be positive");
+			}
+			inputVolume *= inputDimension[i];
+			outputVolume *= outputDimension[i];
+			poolSize *= poolDimension[i];
+		}
+		this.inputDimension = inputDimension;
+		this.outputDimension = outputDimension;
+		this.channels = channels;
+		this.poolDimension = poolDimension;
+		this.stride = stride;
+		this.padding = padding;
+		this.inputVolume = inputVolume;
+		this.outputVolume = outputVolume;
+		this.poolSize = poolSize;
+	}
+
+	@Override
+	public void initForPredict() {
+		initGather();
+		super.initForPredict();
+	}
+
+	@Override
+	public void initForTraining() {
+		initGather();
+		super.initForTraining();
+	}
+
+	private void initGather() {
+		if (gather == null) {
+			this.gather = gatherIndices();
+		}
+	}
+
+	/**
+	 * Compute, for each output position and each pool element, the index read in the volume of a channel, or -1 when it falls in the padding.
+	 * The index read by the pool element k at the position o is o * stride + k - padding, in each dimension.
+	 * @return the gather table, outputVolume x poolSize row-major
+	 */
+	int[] gatherIndices() {
+		int dimensions = inputDimension.length;
+		int[] outputIndex = new int[dimensions];
+		int[] poolIndex = new int[dimensions];
+		int[] gather = new int[outputVolume * poolSize];
+		for (int p = 0; p < outputVolume; p++) {
+			int rest = p;
+			for (int i = dimensions - 1; i >= 0; i--) {
+				outputIndex[i] = rest % outputDimension[i];
+				rest /= outputDimension[i];
+			}
+			for (int k = 0; k < poolSize; k++) {
+				rest = k;
+				for (int i = dimensions - 1; i >= 0; i--) {
+					poolIndex[i] = rest % poolDimension[i];
+					rest /= poolDimension[i];
+				}
+				int index = 0;
+				for (int i = 0; i < dimensions; i++) {
+					int coordinate = outputIndex[i] * stride[i] + poolIndex[i] - padding[i];
+					if (coordinate < 0 || coordinate >= inputDimension[i]) {
+						index = -1;
+						break;
+					}
+					index = index * inputDimension[i] + coordinate;
+				}
+				gather[p * poolSize + k] = index;
+			}
+		}
+		return gather;
+	}
+
+	@Override
+	public void update(double learningRate, double momemtum) {}
+
+	@Override
+	public int getInputDimension() {
+		return channels * inputVolume;
+	}
+
+	@Override
+	public int getOutputDimension() {
+		return channels * outputVolume;
+	}
+
+	@Override
+	public int getParameterCount() {
+		return 0;
+	}
+
+	/**
+	 * Print the shapes of the layer, after the given name.
+	 */
+	void resume(String name) {
+		String s = name + " ";
+		for (int i = 0; i < inputDimension.length; i++) {
+			s += inputDimension[i] + "x";
+		}
+		s = s.substring(0, s.length()-1);
+		s += "[" + channels + "]->";
+		for (int i = 0; i < outputDimension.length; i++) {
+			s += outputDimension[i] + "x";
+		}
+		s = s.substring(0, s.length()-1);
+		s += "[" + channels + "] - pool ";
+		for (int i = 0; i < poolDimension.length; i++) {
+			s += poolDimension[i] + "x";
+		}
+		s = s.substring(0, s.length()-1);
+		s += " - stride ";
+		for (int i = 0; i < stride.length; i++) {
+			s += stride[i] + "x";
+		}
+		s = s.substring(0, s.length()-1);
+		s += " - padding ";
+		for (int i = 0; i < padding.length; i++) {
+			s += padding[i] + "x";
+		}
+		s = s.substring(0, s.length()-1);
+		System.out.println(s);
+	}
+}
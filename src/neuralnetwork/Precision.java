@@ -0,0 +1,35 @@
+package neuralnetwork;
+
+/**
+ * Storage precision of the parameters of a network.
+ * In {@link #FLOAT} precision the parameters are stored and read as float32, which halves the size of the model and the memory traffic of the prediction.
+ * The training keeps double master copies of the parameters, rounded back to float32 at the end of the training.
+ * Inputs, activations and outputs stay in double, so the API of the network does not depend on the precision.
+ * @see NeuralNetwork#setPrecision(Precision)
+ */
+public enum Precision {
+	DOUBLE,
+	FLOAT;
+
+	static float[] toFloat(double[] values) {
+		float[] result = new float[values.length];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = (float) values[i];
+		}
+		return result;
+	}
+
+	static double[] toDouble(float[] values) {
+		double[] result = new double[values.length];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = values[i];
+		}
+		return result;
+	}
+
+	static void narrow(double[] values, float[] destination) {
+		for (int i = 0; i < values.length; i++) {
+			destination[i] = (float) values[i];
+		}
+	}
+}
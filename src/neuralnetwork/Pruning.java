@@ -0,0 +1,150 @@
+package neuralnetwork;
+
+import java.util.Arrays;
+
+/**
+ * Magnitude pruning of the weights of the dense layers: the weights of smallest absolute value are set to zero,
+ * and stay zero during the next trainings of the layer. The biases are not pruned.
+ * A pruned layer is then converted to a {@link SparseDenseLayer} storing only its non-zero weights.
+ * @see NeuralNetwork#prune(double)
+ * @see GradualPruning
+ */
+public final class Pruning {
+
+	/**
+	 * Maximum density of the weights for which the compressed rows are used: a non-zero weight stores an int column besides its value
+	 * and is read through an indirection, while the dense dot products are vectorized. On a 1024x1024 layer the sparse forward
+	 * is slower than the dense one at a density of 50%, and twice faster at 20%, see {@link neuralnetwork.benchmark.PruningBenchmark}.
+	 */
+	public static final double MAX_SPARSE_DENSITY = 0.3;
+
+	private Pruning() {}
+
+	/**
+	 * Prune the weights of a layer of smallest absolute value, until a target fraction of the weights is zero.
+	 * The weights already pruned are counted in the target.
+	 * @param layer the layer
+	 * @param sparsity the target fraction of zero weights, between 0 and 1
+	 * @return the number of zero weights of the layer
+	 */
+	public static int prune(DenseLayer layer, double sparsity) {
+		if (sparsity < 0 || sparsity > 1) {
+			throw new IllegalArgumentException("The sparsity must be between 0 and 1, got " + sparsity + ".");
+		}
+		int length = layer.getInputDimension() * layer.getOutputDimension();
+		int count = (int) Math.round(sparsity * length);
+		if (count == 0) {
+			return pruneBelow(layer, 0);
+		}
+		double[] magnitudes = new double[length];
+		for (int k = 0; k < length; k++) {
+			magnitudes[k] = Math.abs(weight(layer, k));
+		}
+		Arrays.sort(magnitudes);
+		double treshold = magnitudes[count - 1]; // The largest pruned magnitude
+		int ties = count - lowerCount(magnitudes, treshold); // The weights of magnitude treshold to prune, the first ones
+		boolean[] pruned = mask(layer);
+		for (int k = 0; k < length; k++) {
+			double magnitude = Math.abs(weight(layer, k));
+			if (magnitude < treshold || (magnitude == treshold && ties-- > 0)) {
+				zero(layer, k);
+				pruned[k] = true;
+			}
+		}
+		return countPruned(pruned);
+	}
+
+	/**
+	 * Prune the weights of a layer of absolute value lower than a treshold.
+	 * @param layer the layer
+	 * @param treshold the treshold
+	 * @return the number of zero weights of the layer
+	 */
+	public static int pruneBelow(DenseLayer layer, double treshold) {
+		boolean[] pruned = mask(layer);
+		for (int k = 0; k < pruned.length; k++) {
+			double magnitude = Math.abs(weight(layer, k));
+			if (magnitude < treshold || magnitude == 0) {
+				zero(layer, k);
+				pruned[k] = true;
+			}
+		}
+		return countPruned(pruned);
+	}
+
+	/**
+	 * @return the fraction of the weights of a layer that are zero
+	 */
+	public static double sparsity(DenseLayer layer) {
+		int length = layer.getInputDimension() * layer.getOutputDimension();
+		int nonZeros = layer.weightMatrix != null ? countNonZeros(layer.weightMatrix) : countNonZeros(layer.weightMatrixFloat);
+		return 1 - (double) nonZeros / length;
+	}
+
+	static int countNonZeros(double[] values) {
+		int count = 0;
+		for (double value : values) {
+			if (value != 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	static int countNonZeros(float[] values) {
+		int count = 0;
+		for (float value : values) {
+			if (value != 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static double weight(DenseLayer layer, int index) {
+		return layer.weightMatrix != null ? layer.weightMatrix[index] : layer.weightMatrixFloat[index];
+	}
+
+	/**
+	 * Zero a weight in every storage of the layer: during a training in float precision, both the training copy and the float storage exist.
+	 */
+	private static void zero(DenseLayer layer, int index) {
+		if (layer.weightMatrix != null) {
+			layer.weightMatrix[index] = 0;
+		}
+		if (layer.weightMatrixFloat != null) {
+			layer.weightMatrixFloat[index] = 0;
+		}
+	}
+
+	private static boolean[] mask(DenseLayer layer) {
+		if (layer.pruned == null) {
+			layer.pruned = new boolean[layer.getInputDimension() * layer.getOutputDimension()];
+		}
+		return layer.pruned;
+	}
+
+	private static int countPruned(boolean[] pruned) {
+		int count = 0;
+		for (boolean value : pruned) {
+			if (value) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of values of a sorted array lower than a value
+	 */
+	private static int lowerCount(double[] sorted, double value) {
+		int index = Arrays.binarySearch(sorted, value);
+		if (index < 0) {
+			return -index - 1;
+		}
+		while (index > 0 && sorted[index - 1] == value) {
+			index--;
+		}
+		return index;
+	}
+}
@@ -0,0 +1,42 @@
+package neuralnetwork;
+
+/**
+ * Accuracy delta between a quantized network and the network it has been quantized from, measured on a set of inputs.
+ * @see QuantizedNetwork#compare(NeuralNetwork, double[][])
+ */
+public class QuantizationReport {
+
+	private final int samples; // The number of inputs compared
+	private final double maxAbsoluteError; // The maximum absolute difference between two outputs
+	private final double meanAbsoluteError; // The mean absolute difference between two outputs
+	private final double argmaxAgreement; // The fraction of inputs for which both networks have the same largest output
+
+	QuantizationReport(int samples, double maxAbsoluteError, double meanAbsoluteError, double argmaxAgreement) {
+		this.samples = samples;
+		this.maxAbsoluteError = maxAbsoluteError;
+		this.meanAbsoluteError = meanAbsoluteError;
+		this.argmaxAgreement = argmaxAgreement;
+	}
+
+	public int getSamples() {
+		return samples;
+	}
+
+	public double getMaxAbsoluteError() {
+		return maxAbsoluteError;
+	}
+
+	public double getMeanAbsoluteError() {
+		return meanAbsoluteError;
+	}
+
+	public double getArgmaxAgreement() {
+		return argmaxAgreement;
+	}
+
+	@Override
+	public String toString() {
+		return "Quantization report on " + samples + " samples: max abs error " + maxAbsoluteError
+			+ ", mean abs error " + meanAbsoluteError + ", argmax agreement " + (argmaxAgreement * 100) + "%";
+	}
+}
@@ -0,0 +1,390 @@
+package neuralnetwork;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import neuralnetwork.function.activation.ActivationFunction;
+
+/**
+ * Immutable, inference-only int8 version of a neural network.
+ * The weights of the dense and convolutional layers are quantized to int8 with one scale per output row (per depth channel for the convolutions),
+ * the inputs of these layers are quantized to int8 with a scale calibrated on sample inputs, and the dot products are accumulated in int.
+ * Biases and activation functions stay in double. Other layers are run in their original precision.
+ * The network is thread-safe; {@link #predict(double[])} allocates its buffers, use a {@link Session} per thread for allocation-free predictions.
+ * @see NeuralNetwork#quantize(double[][])
+ */
+public final class QuantizedNetwork {
+
+	private final Stage[] stages; // The stages of the network, one per layer
+	private final int inputDimension;
+	private final int maxDimension; // The largest input dimension of the stages
+	private final QuantizationReport calibrationReport; // The accuracy delta on the calibration inputs
+
+	private QuantizedNetwork(Stage[] stages, int inputDimension, NeuralNetwork reference, double[][] calibrationInputs) {
+		this.stages = stages;
+		this.inputDimension = inputDimension;
+		int maxDimension = inputDimension;
+		for (Stage stage : stages) {
+			maxDimension = Math.max(maxDimension, stage.outputDimension);
+		}
+		this.maxDimension = maxDimension;
+		this.calibrationReport = compare(reference, calibrationInputs);
+	}
+
+	/**
+	 * Quantize the layers of a network. The scales of the inputs of the layers are the largest absolute values observed on the calibration inputs.
+	 */
+	static QuantizedNetwork quantize(NeuralNetwork network, List<Layer> layers, double[][] calibrationInputs) {
+		if (calibrationInputs.length == 0) {
+			throw new IllegalArgumentException("The number of calibration inputs must be greater than 0.");
+		}
+
+		// Observe the range of the input of each layer
+		double[] ranges = new double[layers.size()];
+		List<Layer> replicas = new ArrayList<Layer>(layers.size());
+		for (Layer layer : layers) {
+			Layer replica = layer.replica();
+			replica.initForPredict();
+			replicas.add(replica);
+		}
+		for (double[] input : calibrationInputs) {
+			double[] current = input;
+			for (int i = 0; i < replicas.size(); i++) {
+				for (double value : current) {
+					ranges[i] = Math.max(ranges[i], Math.abs(value));
+				}
+				Layer replica = replicas.get(i);
+				replica.setInput(current);
+				replica.forward();
+				current = replica.getOutput();
+			}
+		}
+
+		Stage[] stages = new Stage[layers.size()];
+		for (int i = 0; i < layers.size(); i++) {
+			Layer layer = layers.get(i);
+			double inputScale = ranges[i] > 0 ? ranges[i] / 127 : 1;
+			if (layer instanceof DenseLayer) {
+				stages[i] = new DenseStage((DenseLayer) layer, inputScale);
+			} else if (layer instanceof ConvolutionalLayer) {
+				stages[i] = new ConvolutionalStage((ConvolutionalLayer) layer, inputScale);
+			} else {
+				stages[i] = new LayerStage(layer);
+			}
+		}
+		return new QuantizedNetwork(stages, layers.get(0).getInputDimension(), network, calibrationInputs);
+	}
+
+	/**
+	 * Compute the prediction of the network for the given input. Thread-safe, allocates its buffers.
+	 * @param input the input of the network
+	 * @return the prediction of the network
+	 */
+	public double[] predict(double[] input) {
+		double[] output = new double[stages[stages.length - 1].outputDimension];
+		new Session().predictInto(input, 0, output, 0);
+		return output;
+	}
+
+	/**
+	 * Open a new session on the network, owning the buffers of the predictions.
+	 * @return the session
+	 */
+	public Session newSession() {
+		return new Session();
+	}
+
+	/**
+	 * Measure the accuracy delta between this network and the network it has been quantized from.
+	 * @param reference the original network
+	 * @param inputs the inputs to compare on
+	 * @return the report
+	 */
+	public QuantizationReport compare(NeuralNetwork reference, double[][] inputs) {
+		InferenceSession referenceSession = reference.newSession();
+		Session session = newSession();
+		double[] output = new double[stages[stages.length - 1].outputDimension];
+		double maxError = 0;
+		double sumError = 0;
+		int agreements = 0;
+		for (double[] input : inputs) {
+			double[] expected = referenceSession.predict(input);
+			session.predictInto(input, 0, output, 0);
+			int expectedArgmax = 0;
+			int argmax = 0;
+			for (int i = 0; i < output.length; i++) {
+				double error = Math.abs(output[i] - expected[i]);
+				maxError = Math.max(maxError, error);
+				sumError += error;
+				if (expected[i] > expected[expectedArgmax]) {
+					expectedArgmax = i;
+				}
+				if (output[i] > output[argmax]) {
+					argmax = i;
+				}
+			}
+			if (argmax == expectedArgmax) {
+				agreements++;
+			}
+		}
+		return new QuantizationReport(inputs.length, maxError, sumError / ((double) inputs.length * output.length), (double) agreements / inputs.length);
+	}
+
+	/**
+	 * @return the accuracy delta measured on the calibration inputs
+	 */
+	public QuantizationReport getCalibrationReport() {
+		return calibrationReport;
+	}
+
+	/**
+	 * @return the size in bytes of the parameters of the network
+	 */
+	public long getParameterBytes() {
+		long bytes = 0;
+		for (Stage stage : stages) {
+			bytes += stage.parameterBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Buffers of the predictions of one thread. A session must be used by one thread at a time and does not allocate.
+	 */
+	public final class Session {
+
+		private final double[][] outputs; // The output of each stage
+		private final double[] inputRow;
+		private final byte[] quantized; // The quantized input of the current stage
+		private final Layer[] replicas; // Replicas of the layers run in their original precision
+
+		private Session() {
+			outputs = new double[stages.length][];
+			for (int i = 0; i < stages.length; i++) {
+				outputs[i] = new double[stages[i].outputDimension];
+			}
+			inputRow = new double[inputDimension];
+			quantized = new byte[maxDimension];
+			replicas = new Layer[stages.length];
+			for (int i = 0; i < stages.length; i++) {
+				if (stages[i] instanceof LayerStage) {
+					replicas[i] = ((LayerStage) stages[i]).layer.replica();
+					replicas[i].initForPredict();
+				}
+			}
+		}
+
+		/**
+		 * Compute the prediction of the network for an input read in a flat buffer, written in another flat buffer.
+		 * @param input the buffer holding the input
+		 * @param offset the offset of the input in the buffer
+		 * @param output the buffer receiving the prediction
+		 * @param outputOffset the offset of the prediction in the buffer
+		 */
+		public void predictInto(double[] input, int offset, double[] output, int outputOffset) {
+			System.arraycopy(input, offset, inputRow, 0, inputDimension);
+			double[] current = inputRow;
+			for (int i = 0; i < stages.length; i++) {
+				stages[i].forward(current, outputs[i], quantized, replicas[i]);
+				current = outputs[i];
+			}
+			System.arraycopy(current, 0, output, outputOffset, current.length);
+		}
+	}
+
+	/**
+	 * One layer of the quantized network.
+	 */
+	private abstract static class Stage {
+
+		final int outputDimension;
+
+		Stage(int outputDimension) {
+			this.outputDimension = outputDimension;
+		}
+
+		/**
+		 * Forward the stage. The quantized buffer is at least as large as the input.
+		 */
+		abstract void forward(double[] input, double[] output, byte[] quantized, Layer replica);
+
+		abstract long parameterBytes();
+
+		/**
+		 * Quantize the first length values of input with the given scale.
+		 */
+		static void quantize(double[] input, int length, double scale, byte[] quantized) {
+			double inverse = 1 / scale;
+			for (int i = 0; i < length; i++) {
+				long value = Math.round(input[i] * inverse);
+				quantized[i] = (byte) Math.max(-127, Math.min(127, value));
+			}
+		}
+
+		/**
+		 * Quantize each row of a row-major matrix with its own scale.
+		 * @return the scales of the rows
+		 */
+		static double[] quantizeRows(double[] matrix, int rows, int columns, byte[] quantized) {
+			double[] scales = new double[rows];
+			for (int i = 0; i < rows; i++) {
+				double range = 0;
+				for (int j = 0; j < columns; j++) {
+					range = Math.max(range, Math.abs(matrix[i * columns + j]));
+				}
+				scales[i] = range > 0 ? range / 127 : 1;
+				for (int j = 0; j < columns; j++) {
+					quantized[i * columns + j] = (byte) Math.round(matrix[i * columns + j] / scales[i]);
+				}
+			}
+			return scales;
+		}
+
+	}
+
+	private static final class DenseStage extends Stage {
+
+		private final int inputDimension;
+		private final byte[] weights; // Row-major outputDimension x inputDimension
+		private final double[] scales; // Scale of each row of the weights, multiplied by the scale of the input
+		private final double[] bias;
+		private final double inputScale;
+		private final ActivationFunction activationFunction;
+
+		DenseStage(DenseLayer layer, double inputScale) {
+			super(layer.getOutputDimension());
+			this.inputDimension = layer.getInputDimension();
+			double[] matrix = layer.weightMatrix != null ? layer.weightMatrix : Precision.toDouble(layer.weightMatrixFloat);
+			this.bias = layer.bias != null ? layer.bias.clone() : Precision.toDouble(layer.biasFloat);
+			this.weights = new byte[matrix.length];
+			this.scales = quantizeRows(matrix, outputDimension, inputDimension, weights);
+			for (int i = 0; i < outputDimension; i++) {
+				scales[i] *= inputScale;
+			}
+			this.inputScale = inputScale;
+			this.activationFunction = layer.getActivationFunction();
+		}
+
+		@Override
+		void forward(double[] input, double[] output, byte[] quantized, Layer replica) {
+			quantize(input, inputDimension, inputScale, quantized);
+			for (int i = 0; i < outputDimension; i++) {
+				int rowOffset = i * inputDimension;
+				int sum = 0;
+				for (int j = 0; j < inputDimension; j++) {
+					sum += weights[rowOffset + j] * quantized[j];
+				}
+				output[i] = sum * scales[i] + bias[i];
+			}
+			if (activationFunction != null) {
+				activationFunction.activate(output, output);
+			}
+		}
+
+		@Override
+		long parameterBytes() {
+			return weights.length + 8L * (scales.length + bias.length);
+		}
+	}
+
+	private static final class ConvolutionalStage extends Stage {
+
+		private final int inputDimension;
+		private final int depth;
+		private final int positions; // The number of positions of each depth channel
+		private final int kernelElements; // The number of elements of a kernel, bias excluded
+		private final int[] gather; // Input index read by each kernel element at each position, -1 in the padding
+		private final byte[] weights; // Depth-major depth x kernelElements
+		private final double[] scales; // Scale of each depth channel, multiplied by the scale of the input
+		private final double[] bias;
+		private final double inputScale;
+		private final ActivationFunction activationFunction;
+
+		ConvolutionalStage(ConvolutionalLayer layer, double inputScale) {
+			super(layer.getOutputDimension());
+			this.inputDimension = layer.getInputDimension();
+			this.depth = layer.depth;
+			this.gather = layer.gatherIndices();
+			double[] kernels = layer.kernelWeights != null ? layer.kernelWeights : Precision.toDouble(layer.kernelWeightsFloat);
+			int kernelSize = kernels.length / depth;
+			this.kernelElements = kernelSize - 1;
+			this.positions = gather.length / kernelElements;
+			double[] matrix = new double[depth * kernelElements];
+			this.bias = new double[depth];
+			for (int d = 0; d < depth; d++) {
+				System.arraycopy(kernels, d * kernelSize, matrix, d * kernelElements, kernelElements);
+				bias[d] = kernels[d * kernelSize + kernelElements];
+			}
+			this.weights = new byte[matrix.length];
+			this.scales = quantizeRows(matrix, depth, kernelElements, weights);
+			for (int d = 0; d < depth; d++) {
+				scales[d] *= inputScale;
+			}
+			this.inputScale = inputScale;
+			this.activationFunction = layer.getActivationFunction();
+		}
+
+		@Override
+		void forward(double[] input, double[] output, byte[] quantized, Layer replica) {
+			quantize(input, inputDimension, inputScale, quantized);
+			for (int i = 0; i < outputDimension; i++) {
+				output[i] = 0;
+			}
+			for (int d = 0; d < depth; d++) {
+				int kernelOffset = d * kernelElements;
+				for (int p = 0; p < positions; p++) {
+					int gatherOffset = p * kernelElements;
+					int sum = 0;
+					for (int k = 0; k < kernelElements; k++) {
+						int index = gather[gatherOffset + k];
+						if (index >= 0) {
+							sum += weights[kernelOffset + k] * quantized[index];
+						}
+					}
+					output[d * positions + p] = sum * scales[d] + bias[d];
+				}
+			}
+			if (activationFunction != null) {
+				activationFunction.activate(output, output);
+			}
+		}
+
+		@Override
+		long parameterBytes() {
+			return weights.length + 8L * (scales.length + bias.length);
+		}
+	}
+
+	/**
+	 * Layer without a quantized implementation, run in its original precision through a replica owned by the session.
+	 * The stage owns a copy of the layer of the network.
+	 */
+	private static final class LayerStage extends Stage {
+
+		private final Layer layer;
+
+		LayerStage(Layer layer) {
+			super(layer.getOutputDimension());
+			try {
+				this.layer = (Layer) ModelFormat.deserialize(ModelFormat.serialize(layer));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Cannot copy the layer " + layer, e);
+			}
+			this.layer.clear();
+		}
+
+		@Override
+		void forward(double[] input, double[] output, byte[] quantized, Layer replica) {
+			replica.setInput(input);
+			replica.forward();
+			System.arraycopy(replica.getOutput(), 0, output, 0, outputDimension);
+		}
+
+		@Override
+		long parameterBytes() {
+			return 8L * layer.getParameterCount();
+		}
+	}
+}
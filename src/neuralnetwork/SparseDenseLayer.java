@@ -0,0 +1,279 @@
+package neuralnetwork;
+
+import neuralnetwork.function.activation.ActivationFunction;
+
+/**
+ * Dense layer whose weights are stored in compressed sparse rows (CSR), built from a pruned {@link DenseLayer}.
+ * Only the non-zero weights are stored and computed, so the size of the model and the cost of the forward scale with their number.
+ * The layer can still be trained, the zero weights then stay zero.
+ * @see Pruning
+ * @see NeuralNetwork#prune(double)
+ */
+public class SparseDenseLayer extends Layer {
+
+	private static final long serialVersionUID = 6172903385021744531L;
+
+	private final ActivationFunction activationFunction;
+	private final int inputSize;
+	private final int outputSize;
+
+	final int[] rowStarts; // The weights of the output i are at [rowStarts[i], rowStarts[i + 1][ in columns and values
+	final int[] columns; // The input of each weight, increasing in each row
+	double[] values; // The non-zero weights. Only a training copy in float precision
+	double[] bias;
+
+	Precision precision = Precision.DOUBLE;
+	float[] valuesFloat; // Storage of the weights in float precision
+	float[] biasFloat;
+
+	transient double[] valueGradients;
+	transient double[] biasGradients;
+	transient double[] interOutput; // Pre-activations of the last forward
+
+	/**
+	 * Create a layer from its compressed rows. The arrays are not copied.
+	 */
+	SparseDenseLayer(int inputSize, int outputSize, ActivationFunction activationFunction, int[] rowStarts, int[] columns, double[] values, double[] bias) {
+		this.inputSize = inputSize;
+		this.outputSize = outputSize;
+		this.activationFunction = activationFunction;
+		this.rowStarts = rowStarts;
+		this.columns = columns;
+		this.values = values;
+		this.bias = bias;
+	}
+
+	/**
+	 * Create an empty layer with the given structure stored in the given precision, to be filled by a loader.
+	 */
+	SparseDenseLayer(int inputSize, int outputSize, ActivationFunction activationFunction, int[] rowStarts, int[] columns, Precision precision) {
+		this(inputSize, outputSize, activationFunction, rowStarts, columns, null, null);
+		this.precision = precision;
+		if (precision == Precision.FLOAT) {
+			this.valuesFloat = new float[columns.length];
+			this.biasFloat = new float[outputSize];
+		} else {
+			this.values = new double[columns.length];
+			this.bias = new double[outputSize];
+		}
+	}
+
+	/**
+	 * Build the sparse layer of the non-zero weights of a dense layer, in the precision of the dense layer.
+	 * @param layer the dense layer, usually pruned
+	 * @return the sparse layer
+	 */
+	public static SparseDenseLayer of(DenseLayer layer) {
+		int inputSize = layer.getInputDimension();
+		int outputSize = layer.getOutputDimension();
+		boolean isFloat = layer.weightMatrix == null;
+		int nonZeros = isFloat ? Pruning.countNonZeros(layer.weightMatrixFloat) : Pruning.countNonZeros(layer.weightMatrix);
+		int[] rowStarts = new int[outputSize + 1];
+		int[] columns = new int[nonZeros];
+		SparseDenseLayer sparse = new SparseDenseLayer(inputSize, outputSize, layer.getActivationFunction(), rowStarts, columns, isFloat ? Precision.FLOAT : Precision.DOUBLE);
+		int k = 0;
+		for (int i = 0; i < outputSize; i++) {
+			for (int j = 0; j < inputSize; j++) {
+				int index = i * inputSize + j;
+				if (isFloat ? layer.weightMatrixFloat[index] != 0 : layer.weightMatrix[index] != 0) {
+					columns[k] = j;
+					if (isFloat) {
+						sparse.valuesFloat[k] = layer.weightMatrixFloat[index];
+					} else {
+						sparse.values[k] = layer.weightMatrix[index];
+					}
+					k++;
+				}
+			}
+			rowStarts[i + 1] = k;
+		}
+		if (isFloat) {
+			System.arraycopy(layer.biasFloat, 0, sparse.biasFloat, 0, outputSize);
+		} else {
+			System.arraycopy(layer.bias, 0, sparse.bias, 0, outputSize);
+		}
+		return sparse;
+	}
+
+	@Override
+	public void initForPredict() {
+		this.interOutput = new double[outputSize];
+		super.initForPredict();
+	}
+
+	@Override
+	public void initForTraining() {
+		if (precision == Precision.FLOAT && values == null) { // Replicas share the copy of their layer
+			this.values = Precision.toDouble(valuesFloat);
+			this.bias = Precision.toDouble(biasFloat);
+		}
+		this.valueGradients = new double[columns.length];
+		this.biasGradients = new double[outputSize];
+		this.interOutput = new double[outputSize];
+		super.initForTraining();
+	}
+
+	@Override
+	public void clear() {
+		this.valueGradients = null;
+		this.biasGradients = null;
+		this.interOutput = null;
+		super.clear();
+	}
+
+	@Override
+	public void forward() {
+		double[] preActivation = activationFunction != null ? interOutput : output;
+		if (values != null) {
+			for (int i = 0; i < outputSize; i++) {
+				preActivation[i] = bias[i] + KERNELS.sparseDot(values, columns, rowStarts[i], rowStarts[i + 1], input);
+			}
+		} else {
+			for (int i = 0; i < outputSize; i++) {
+				preActivation[i] = biasFloat[i] + KERNELS.sparseDot(valuesFloat, columns, rowStarts[i], rowStarts[i + 1], input);
+			}
+		}
+		if (activationFunction != null) {
+			activationFunction.activate(interOutput, 0, output, 0, outputSize);
+		}
+	}
+
+	@Override
+	public void backward() {
+		if (activationFunction != null && !fusedActivationGradients) {
+			activationFunction.activateGradients(interOutput, 0, output, 0, outputGradients, 0, outputSize);
+		}
+		for (int j = 0; j < inputSize; j++) {
+			inputGradients[j] = 0;
+		}
+		for (int i = 0; i < outputSize; i++) {
+			double gradient = outputGradients[i];
+			for (int k = rowStarts[i]; k < rowStarts[i + 1]; k++) {
+				inputGradients[columns[k]] += gradient * values[k];
+				valueGradients[k] += gradient * input[columns[k]];
+			}
+			biasGradients[i] += gradient;
+		}
+	}
+
+	@Override
+	public void update(double learningRate, double momemtum) {
+		KERNELS.update(values, valueGradients, values.length, learningRate, momemtum);
+		KERNELS.update(bias, biasGradients, outputSize, learningRate, momemtum);
+	}
+
+	@Override
+	public double[][] getParameterBlocks() {
+		return new double[][] {values, bias};
+	}
+
+	@Override
+	public double[][] getGradientBlocks() {
+		return new double[][] {valueGradients, biasGradients};
+	}
+
+	@Override
+	public void resetGradients() {
+		for (int k = 0; k < valueGradients.length; k++) {
+			valueGradients[k] = 0;
+		}
+		for (int i = 0; i < outputSize; i++) {
+			biasGradients[i] = 0;
+		}
+	}
+
+	@Override
+	public void addGradients(Layer replica) {
+		SparseDenseLayer other = (SparseDenseLayer) replica;
+		KERNELS.add(other.valueGradients, valueGradients, valueGradients.length);
+		KERNELS.add(other.biasGradients, biasGradients, outputSize);
+	}
+
+	@Override
+	public void endTraining() {
+		if (precision == Precision.FLOAT) {
+			Precision.narrow(values, valuesFloat);
+			Precision.narrow(bias, biasFloat);
+			this.values = null;
+			this.bias = null;
+		}
+	}
+
+	@Override
+	public void setPrecision(Precision precision) {
+		if (precision == this.precision) {
+			return;
+		}
+		if (precision == Precision.FLOAT) {
+			this.valuesFloat = Precision.toFloat(values);
+			this.biasFloat = Precision.toFloat(bias);
+			this.values = null;
+			this.bias = null;
+		} else {
+			this.values = Precision.toDouble(valuesFloat);
+			this.bias = Precision.toDouble(biasFloat);
+			this.valuesFloat = null;
+			this.biasFloat = null;
+		}
+		this.precision = precision;
+	}
+
+	public Precision getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * @return the number of stored weights
+	 */
+	public int getNonZeros() {
+		return columns.length;
+	}
+
+	/**
+	 * @return the fraction of the weights of the equivalent dense layer that are stored
+	 */
+	public double getDensity() {
+		return (double) columns.length / ((long) inputSize * outputSize);
+	}
+
+	@Override
+	public ActivationFunction getActivationFunction() {
+		return activationFunction;
+	}
+
+	@Override
+	public double[] getPreActivation() {
+		return activationFunction != null ? interOutput : null;
+	}
+
+	@Override
+	public String toString() {
+		return "SDL(" + inputSize + "," + outputSize + ")";
+	}
+
+	@Override
+	public void resume() {
+		String s = "";
+		s += "Sparse Dense Layer " + inputSize + "->" + outputSize;
+		if (activationFunction != null) {
+			s += " (" + activationFunction.getClass().getSimpleName() + ")";
+		}
+		s += ": " + (columns.length + outputSize) + " variables, density " + String.format("%.1f", 100 * getDensity()) + "%";
+		System.out.println(s);
+	}
+
+	@Override
+	public int getInputDimension() {
+		return inputSize;
+	}
+
+	@Override
+	public int getOutputDimension() {
+		return outputSize;
+	}
+
+	@Override
+	public int getParameterCount() {
+		return columns.length + outputSize;
+	}
+}
@@ -0,0 +1,70 @@
+package neuralnetwork.benchmark;
+
+import neuralnetwork.function.activation.ActivationFunction;
+import neuralnetwork.function.activation.GELU;
+import neuralnetwork.function.activation.Sigmoid;
+import neuralnetwork.function.activation.Softplus;
+import neuralnetwork.function.activation.Swish;
+import neuralnetwork.function.activation.Tanh;
+import neuralnetwork.kernel.Kernels;
+
+/**
+ * Compare the throughput of the exact and fast modes of the activations on buffers of the width of a narrow layer,
+ * and measure the maximum absolute error of the fast modes on [-20, 20].
+ */
+public class ActivationBenchmark {
+
+	private static final int WIDTH = 256;
+	private static final int WARMUP = 50_000;
+	private static final int ITERATIONS = 200_000;
+
+	private static double sink; // Keeps the JIT from removing the activations
+
+	public static void main(String[] args) {
+		System.out.println("Kernels: " + Kernels.get().getClass().getSimpleName());
+		System.out.printf("%-10s %16s %16s %9s %12s%n", "function", "exact (ns/elem)", "fast (ns/elem)", "speedup", "max error");
+		run("Sigmoid", new Sigmoid(), new Sigmoid(true));
+		run("Tanh", new Tanh(), new Tanh(true));
+		run("GELU", new GELU(), new GELU(true));
+		run("Swish", new Swish(), new Swish(true));
+		run("Softplus", new Softplus(), new Softplus(true));
+	}
+
+	private static void run(String name, ActivationFunction exact, ActivationFunction fast) {
+		int points = 4_000_001;
+		double[] grid = new double[points];
+		for (int i = 0; i < points; i++) {
+			grid[i] = -20 + 40.0 * i / (points - 1);
+		}
+		double[] expected = new double[points];
+		double[] approximated = new double[points];
+		exact.activate(grid, expected);
+		fast.activate(grid, approximated);
+		double error = 0;
+		for (int i = 0; i < points; i++) {
+			error = Math.max(error, Math.abs(expected[i] - approximated[i]));
+		}
+
+		double[] input = new double[WIDTH];
+		for (int i = 0; i < WIDTH; i++) {
+			input[i] = Math.random() * 8 - 4;
+		}
+		double[] output = new double[WIDTH];
+		double exactTime = time(exact, input, output);
+		double fastTime = time(fast, input, output);
+		System.out.printf("%-10s %16.2f %16.2f %8.2fx %12.1e%n", name, exactTime, fastTime, exactTime / fastTime, error);
+	}
+
+	private static double time(ActivationFunction function, double[] input, double[] output) {
+		for (int i = 0; i < WARMUP; i++) {
+			function.activate(input, output);
+			sink += output[0];
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			function.activate(input, output);
+			sink += output[0];
+		}
+		return (double) (System.nanoTime() - start) / ITERATIONS / WIDTH;
+	}
+}
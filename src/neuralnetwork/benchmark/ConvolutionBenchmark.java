@@ -0,0 +1,54 @@
+package neuralnetwork.benchmark;
+
+import neuralnetwork.ConvolutionalLayer;
+
+/**
+ * Measure the time of the forward and backward passes of convolutional layers of common 1D, 2D and 3D shapes.
+ */
+public class ConvolutionBenchmark {
+
+	private static final int WARMUP = 200;
+	private static final int ITERATIONS = 1000;
+
+	private static double sink; // Keeps the JIT from removing the forward passes
+
+	public static void main(String[] args) {
+		System.out.printf("%-26s %14s %14s%n", "shape", "forward (us)", "backward (us)");
+		run("1D 1024, kernel 5", new int[] { 1024 }, new int[] { 5 }, new int[] { 2 });
+		run("2D 28x28, kernel 3x3", new int[] { 28, 28 }, new int[] { 3, 3 }, new int[] { 1, 1 });
+		run("2D 64x64, kernel 5x5", new int[] { 64, 64 }, new int[] { 5, 5 }, new int[] { 2, 2 });
+		run("3D 16x16x16, kernel 3x3x3", new int[] { 16, 16, 16 }, new int[] { 3, 3, 3 }, new int[] { 1, 1, 1 });
+	}
+
+	private static void run(String name, int[] inputDimension, int[] kernelDimension, int[] padding) {
+		int[] stride = new int[inputDimension.length];
+		java.util.Arrays.fill(stride, 1);
+		ConvolutionalLayer layer = new ConvolutionalLayer(inputDimension, kernelDimension, 8, stride, padding);
+		double[] input = new double[layer.getInputDimension()];
+		for (int i = 0; i < input.length; i++) {
+			input[i] = Math.random() - 0.5;
+		}
+		double[] outputGradients = new double[layer.getOutputDimension()];
+		layer.initForTraining();
+		layer.setInput(input);
+		layer.setOutputGradients(outputGradients);
+		for (int i = 0; i < WARMUP; i++) {
+			layer.forward();
+			java.util.Arrays.fill(outputGradients, 1e-3);
+			layer.backward();
+		}
+		long forwardTime = 0;
+		long backwardTime = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			long start = System.nanoTime();
+			layer.forward();
+			forwardTime += System.nanoTime() - start;
+			sink += layer.getOutput()[0];
+			java.util.Arrays.fill(outputGradients, 1e-3);
+			start = System.nanoTime();
+			layer.backward();
+			backwardTime += System.nanoTime() - start;
+		}
+		System.out.printf("%-26s %14.1f %14.1f%n", name, forwardTime / 1e3 / ITERATIONS, backwardTime / 1e3 / ITERATIONS);
+	}
+}
@@ -0,0 +1,85 @@
+package neuralnetwork.benchmark;
+
+import neuralnetwork.DenseLayer;
+import neuralnetwork.InferencePlan;
+import neuralnetwork.InferenceSession;
+import neuralnetwork.NeuralNetwork;
+import neuralnetwork.function.activation.Affine;
+import neuralnetwork.function.activation.ReLU;
+import neuralnetwork.function.activation.Sigmoid;
+
+/**
+ * Compare the prediction latency of an inference session and of a compiled inference plan on small MLPs,
+ * and check that both predict the same outputs.
+ */
+public class InferencePlanBenchmark {
+
+	private static final int WARMUP = 300_000;
+	private static final int ITERATIONS = 2_000_000;
+
+	private static double sink; // Keeps the JIT from removing the predictions
+
+	public static void main(String[] args) {
+		System.out.printf("%-30s %14s %14s %9s %12s%n", "network", "session (ns)", "plan (ns)", "speedup", "max delta");
+
+		NeuralNetwork disk = new NeuralNetwork();
+		disk.addLayer(new DenseLayer(2, 16, new ReLU(true)));
+		disk.addLayer(new DenseLayer(16, 16, new ReLU(true)));
+		disk.addLayer(new DenseLayer(16, 1, new Sigmoid()));
+		run("2-16-16-1 relu/sigmoid", disk);
+
+		NeuralNetwork small = new NeuralNetwork();
+		small.addLayer(new DenseLayer(16, 32, new ReLU(true)));
+		small.addLayer(new DenseLayer(32, 4, new Sigmoid()));
+		run("16-32-4 relu/sigmoid", small);
+
+		NeuralNetwork linear = new NeuralNetwork();
+		linear.addLayer(new DenseLayer(8, 64, new Affine()));
+		linear.addLayer(new DenseLayer(64, 4, new Sigmoid()));
+		run("8-64-4 affine/sigmoid (folded)", linear);
+
+		NeuralNetwork deep = new NeuralNetwork();
+		deep.addLayer(new DenseLayer(32, 64, new ReLU()));
+		deep.addLayer(new DenseLayer(64, 64, new ReLU()));
+		deep.addLayer(new DenseLayer(64, 64, new ReLU()));
+		deep.addLayer(new DenseLayer(64, 10, new Sigmoid()));
+		run("32-64-64-64-10 relu/sigmoid", deep);
+	}
+
+	private static void run(String name, NeuralNetwork network) {
+		int inputDimension = network.getLayers().get(0).getInputDimension();
+		int outputDimension = network.getLayers().get(network.getLayers().size() - 1).getOutputDimension();
+		double[] input = new double[inputDimension];
+		for (int i = 0; i < inputDimension; i++) {
+			input[i] = Math.random() * 2 - 1;
+		}
+		double[] expected = new double[outputDimension];
+		double[] output = new double[outputDimension];
+
+		InferenceSession session = network.newSession();
+		InferencePlan.Session plan = network.compile().newSession();
+		session.predictInto(input, 0, expected, 0);
+		plan.predictInto(input, 0, output, 0);
+		double delta = 0;
+		for (int i = 0; i < outputDimension; i++) {
+			delta = Math.max(delta, Math.abs(expected[i] - output[i]));
+		}
+
+		double planTime = time(() -> plan.predictInto(input, 0, output, 0), output);
+		double sessionTime = time(() -> session.predictInto(input, 0, expected, 0), expected);
+		System.out.printf("%-30s %14.1f %14.1f %8.2fx %12.1e%n", name, sessionTime, planTime, sessionTime / planTime, delta);
+	}
+
+	private static double time(Runnable predict, double[] output) {
+		for (int i = 0; i < WARMUP; i++) {
+			predict.run();
+			sink += output[0];
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			predict.run();
+			sink += output[0];
+		}
+		return (double) (System.nanoTime() - start) / ITERATIONS;
+	}
+}
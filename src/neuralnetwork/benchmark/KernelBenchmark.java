@@ -0,0 +1,64 @@
+package neuralnetwork.benchmark;
+
+import neuralnetwork.kernel.Kernels;
+import neuralnetwork.kernel.ScalarKernels;
+
+/**
+ * Compare the throughput of the scalar kernels and of the kernels selected for this JVM.
+ * Run with {@code --add-modules jdk.incubator.vector} to compare with the Vector API backend.
+ */
+public class KernelBenchmark {
+
+	private static final int SIZE = 1024;
+	private static final int WARMUP = 20_000;
+	private static final int ITERATIONS = 200_000;
+	private static final int ROUNDS = 3; // Only the last round is reported, the first ones let the JIT settle
+
+	private static double sink; // Keeps the JIT from removing the dot products
+
+	public static void main(String[] args) {
+		Kernels scalar = new ScalarKernels();
+		Kernels selected = Kernels.get();
+		System.out.println("Selected backend: " + selected.getClass().getSimpleName());
+		if (selected.getClass() == ScalarKernels.class) {
+			System.out.println("The Vector API is not available, run with --add-modules jdk.incubator.vector.");
+		}
+
+		double[] a = new double[SIZE];
+		double[] b = new double[SIZE];
+		double[] c = new double[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			a[i] = Math.random() - 0.5;
+			b[i] = Math.random() - 0.5;
+		}
+
+		System.out.printf("%-12s %14s %14s %8s%n", "kernel", "scalar (ns)", "selected (ns)", "speedup");
+		compare("dot", () -> sink += scalar.dot(a, 0, b, 0, SIZE), () -> sink += selected.dot(a, 0, b, 0, SIZE));
+		compare("axpy", () -> scalar.axpy(1e-9, a, 0, c, 0, SIZE), () -> selected.axpy(1e-9, a, 0, c, 0, SIZE));
+		compare("update", () -> scalar.update(c, b, SIZE, 1e-9, 1), () -> selected.update(c, b, SIZE, 1e-9, 1));
+		compare("relu", () -> scalar.relu(a, c, SIZE, 0), () -> selected.relu(a, c, SIZE, 0));
+		compare("leakyRelu", () -> scalar.leakyRelu(a, c, SIZE, 0, 1e-6), () -> selected.leakyRelu(a, c, SIZE, 0, 1e-6));
+		compare("sigmoid", () -> scalar.sigmoid(a, c, SIZE), () -> selected.sigmoid(a, c, SIZE));
+	}
+
+	private static void compare(String name, Runnable scalar, Runnable selected) {
+		double scalarTime = 0;
+		double selectedTime = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			scalarTime = time(scalar);
+			selectedTime = time(selected);
+		}
+		System.out.printf("%-12s %14.1f %14.1f %7.2fx%n", name, scalarTime, selectedTime, scalarTime / selectedTime);
+	}
+
+	private static double time(Runnable task) {
+		for (int i = 0; i < WARMUP; i++) {
+			task.run();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			task.run();
+		}
+		return (double) (System.nanoTime() - start) / ITERATIONS;
+	}
+}
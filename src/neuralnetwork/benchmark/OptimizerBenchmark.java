@@ -0,0 +1,81 @@
+package neuralnetwork.benchmark;
+
+import java.util.Random;
+
+import neuralnetwork.DenseLayer;
+import neuralnetwork.NeuralNetwork;
+import neuralnetwork.function.activation.ReLU;
+import neuralnetwork.function.activation.Sigmoid;
+import neuralnetwork.optimizer.AdaGrad;
+import neuralnetwork.optimizer.Adam;
+import neuralnetwork.optimizer.Nesterov;
+import neuralnetwork.optimizer.Optimizer;
+import neuralnetwork.optimizer.RMSProp;
+
+/**
+ * Compare the number of epochs each optimizer needs to reach a target error on the disk classification of the demo,
+ * starting from the same initial weights.
+ */
+public class OptimizerBenchmark {
+
+	private static final int SAMPLES = 2000;
+	private static final int BATCH_SIZE = 32;
+	private static final int MAX_EPOCHS = 200;
+	private static final double TARGET_ERROR = 0.005;
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		double[][] inputs = new double[SAMPLES][2];
+		double[][] outputs = new double[SAMPLES][1];
+		for (int i = 0; i < SAMPLES; i++) {
+			double x = random.nextDouble() * 4 - 2;
+			double y = random.nextDouble() * 4 - 2;
+			inputs[i][0] = x;
+			inputs[i][1] = y;
+			outputs[i][0] = x * x + y * y < 1 ? 1 : 0;
+		}
+
+		NeuralNetwork reference = new NeuralNetwork();
+		reference.addLayer(new DenseLayer(2, 16, new ReLU(true)));
+		reference.addLayer(new DenseLayer(16, 16, new ReLU(true)));
+		reference.addLayer(new DenseLayer(16, 1, new Sigmoid()));
+
+		System.out.printf("%-18s %14s %12s%n", "optimizer", "epochs", "final error");
+		run("gradient descent", reference, null, 0.02, inputs, outputs);
+		run("Nesterov", reference, new Nesterov(), 0.002, inputs, outputs);
+		run("AdaGrad", reference, new AdaGrad(), 0.05, inputs, outputs);
+		run("RMSProp", reference, new RMSProp(), 0.005, inputs, outputs);
+		run("Adam", reference, new Adam(), 0.005, inputs, outputs);
+	}
+
+	private static void run(String name, NeuralNetwork reference, Optimizer optimizer, double learningRate, double[][] inputs, double[][] outputs) {
+		NeuralNetwork network = new NeuralNetwork();
+		network.charge(copy(reference));
+		network.setLearningRate(learningRate);
+		network.setOptimizer(optimizer);
+		network.setSeed(7);
+		network.setBatchMode(true);
+		network.train(inputs, outputs, MAX_EPOCHS, BATCH_SIZE, 0.9, false);
+		double[] logs = network.getLogs();
+		int epochs = 0;
+		while (epochs < logs.length && logs[epochs] > TARGET_ERROR) {
+			epochs++;
+		}
+		String reached = epochs < logs.length ? String.valueOf(epochs + 1) : "> " + MAX_EPOCHS;
+		System.out.printf("%-18s %14s %12.5f%n", name, reached, logs[logs.length - 1]);
+	}
+
+	private static NeuralNetwork copy(NeuralNetwork network) {
+		try {
+			java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+			try (java.io.ObjectOutputStream out = new java.io.ObjectOutputStream(bytes)) {
+				out.writeObject(network);
+			}
+			try (java.io.ObjectInputStream in = new java.io.ObjectInputStream(new java.io.ByteArrayInputStream(bytes.toByteArray()))) {
+				return (NeuralNetwork) in.readObject();
+			}
+		} catch (java.io.IOException | ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
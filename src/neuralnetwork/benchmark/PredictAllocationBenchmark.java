@@ -0,0 +1,78 @@
+package neuralnetwork.benchmark;
+
+import java.lang.management.ManagementFactory;
+
+import neuralnetwork.DenseLayer;
+import neuralnetwork.InferenceSession;
+import neuralnetwork.NeuralNetwork;
+import neuralnetwork.function.activation.ReLU;
+import neuralnetwork.function.activation.Sigmoid;
+
+/**
+ * Measure the bytes allocated per call of the prediction methods, once the JIT has warmed up.
+ * The allocation-free methods must report 0 bytes per call.
+ */
+public class PredictAllocationBenchmark {
+
+	private static final int WARMUP = 200_000;
+	private static final int ITERATIONS = 1_000_000;
+
+	public static void main(String[] args) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.out.println("Allocation counters are not supported by this JVM.");
+			return;
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		NeuralNetwork nn = new NeuralNetwork();
+		nn.addLayer(new DenseLayer(16, 32, new ReLU(true)));
+		nn.addLayer(new DenseLayer(32, 4, new Sigmoid()));
+		InferenceSession session = nn.newSession();
+
+		int batch = 32;
+		double[] flatInputs = new double[batch * 16];
+		double[] flatOutputs = new double[batch * 4];
+		double[][] inputs = new double[batch][16];
+		double[][] outputs = new double[batch][4];
+		for (int i = 0; i < flatInputs.length; i++) {
+			flatInputs[i] = Math.random();
+			inputs[i / 16][i % 16] = flatInputs[i];
+		}
+
+		Runnable predict = () -> nn.predict(inputs[0]);
+		Runnable predictInto = () -> {
+			for (int i = 0; i < batch; i++) {
+				nn.predictInto(flatInputs, i * 16, flatOutputs, i * 4);
+			}
+		};
+		Runnable predictBatch = () -> nn.predictBatch(inputs, outputs);
+		Runnable sessionPredictInto = () -> {
+			for (int i = 0; i < batch; i++) {
+				session.predictInto(flatInputs, i * 16, flatOutputs, i * 4);
+			}
+		};
+		Runnable sessionPredictBatch = () -> session.predictBatch(inputs, outputs);
+
+		run(threads, "predict", predict, 1);
+		run(threads, "predictInto", predictInto, batch);
+		run(threads, "predictBatch", predictBatch, batch);
+		run(threads, "session.predictInto", sessionPredictInto, batch);
+		run(threads, "session.predictBatch", sessionPredictBatch, batch);
+	}
+
+	private static void run(com.sun.management.ThreadMXBean threads, String name, Runnable task, int samplesPerCall) {
+		for (int i = 0; i < WARMUP; i++) {
+			task.run();
+		}
+		long threadId = Thread.currentThread().getId();
+		long startBytes = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			task.run();
+		}
+		long end = System.nanoTime();
+		long bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+		System.out.printf("%-22s %10.1f ns/sample %10.3f bytes/call%n", name, (double) (end - start) / ITERATIONS / samplesPerCall, (double) bytes / ITERATIONS);
+	}
+}
@@ -0,0 +1,47 @@
+package neuralnetwork.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+import neuralnetwork.DenseLayer;
+import neuralnetwork.NeuralNetwork;
+import neuralnetwork.function.activation.ReLU;
+import neuralnetwork.function.activation.Sigmoid;
+
+/**
+ * Measure the size of the binary model and the latency of the prediction of a 1024-1024-10 network pruned to increasing sparsities.
+ * The sparsity 0 is the dense network; above 1 - {@link neuralnetwork.Pruning#MAX_SPARSE_DENSITY} the layers are stored in compressed rows.
+ */
+public class PruningBenchmark {
+
+	private static final int WARMUP = 2_000;
+	private static final int ITERATIONS = 10_000;
+
+	public static void main(String[] args) throws IOException {
+		double[] input = new double[1024];
+		for (int i = 0; i < input.length; i++) {
+			input[i] = Math.random();
+		}
+		File file = File.createTempFile("pruning", ".jnnb");
+		file.deleteOnExit();
+		for (double sparsity : new double[] { 0, 0.5, 0.8, 0.9, 0.95, 0.99 }) {
+			NeuralNetwork nn = new NeuralNetwork();
+			nn.addLayer(new DenseLayer(1024, 1024, new ReLU(true)));
+			nn.addLayer(new DenseLayer(1024, 10, new Sigmoid()));
+			if (sparsity > 0) {
+				nn.prune(sparsity);
+			}
+			nn.saveBinary(file.getPath());
+			for (int i = 0; i < WARMUP; i++) {
+				nn.predict(input);
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				nn.predict(input);
+			}
+			long end = System.nanoTime();
+			System.out.printf("sparsity %4.2f %-16s %10d bytes %10.1f us/predict%n", sparsity, nn.getLayers().get(0), file.length(),
+					(end - start) / 1e3 / ITERATIONS);
+		}
+	}
+}
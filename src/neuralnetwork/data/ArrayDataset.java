@@ -0,0 +1,58 @@
+package neuralnetwork.data;
+
+/**
+ * Dataset held in memory as arrays of samples. The arrays are not copied and must not be modified during a training.
+ */
+public class ArrayDataset implements Dataset {
+
+	private final double[][] inputs;
+	private final double[][] outputs;
+	private final int inputDimension;
+	private final int outputDimension;
+
+	public ArrayDataset(double[][] inputs, double[][] outputs) {
+		if (inputs.length != outputs.length) {
+			throw new IllegalArgumentException("The number of inputs and outputs must be the same.");
+		}
+		if (inputs.length == 0) {
+			throw new IllegalArgumentException("The number of inputs must be greater than 0.");
+		}
+		this.inputs = inputs;
+		this.outputs = outputs;
+		this.inputDimension = inputs[0].length;
+		this.outputDimension = outputs[0].length;
+		for (int i = 0; i < inputs.length; i++) {
+			if (inputs[i].length != inputDimension) {
+				throw new IllegalArgumentException("The input " + i + " has a dimension of " + inputs[i].length + " but the first input has a dimension of " + inputDimension);
+			}
+			if (outputs[i].length != outputDimension) {
+				throw new IllegalArgumentException("The output " + i + " has a dimension of " + outputs[i].length + " but the first output has a dimension of " + outputDimension);
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return inputs.length;
+	}
+
+	@Override
+	public int inputDimension() {
+		return inputDimension;
+	}
+
+	@Override
+	public int outputDimension() {
+		return outputDimension;
+	}
+
+	@Override
+	public void readInput(int index, double[] destination, int offset) {
+		System.arraycopy(inputs[index], 0, destination, offset, inputDimension);
+	}
+
+	@Override
+	public void readOutput(int index, double[] destination, int offset) {
+		System.arraycopy(outputs[index], 0, destination, offset, outputDimension);
+	}
+}
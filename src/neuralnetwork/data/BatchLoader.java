@@ -0,0 +1,325 @@
+package neuralnetwork.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pipeline reading the batches of a training in a background thread. The loader shuffles the order of the samples at the start
+ * of each epoch and gathers the next batches in recycled contiguous buffers while the current batch is computed.
+ * <p>
+ * The buffers go around two bounded queues: the loader takes a free buffer, fills it and puts it in the queue of full buffers,
+ * the training takes a full buffer with {@link #next()} and gives it back with {@link #release(Batch)} once computed.
+ * The time the training waited for a batch is accumulated in {@link #takeStallTime()}.
+ * <p>
+ * The state of the shuffle after each epoch is kept until read with {@link #takeShuffleState(int)}, so a checkpointed training
+ * can be resumed with the same orders.
+ */
+public class BatchLoader implements AutoCloseable {
+
+	/**
+	 * A batch gathered in contiguous row-major blocks. The inputs of a sparse dataset are gathered in compressed rows instead.
+	 */
+	public static class Batch {
+
+		public final double[] inputs; // The inputs of the batch, one row after the other. Empty when the batch is sparse
+		public final double[] targets; // The expected outputs of the batch, one row after the other
+		public int size; // The number of rows of the batch
+
+		public final boolean sparse; // True if the inputs are held in the compressed rows below
+		public final int[] rowStarts; // The non-zeros of the row r are at [rowStarts[r], rowStarts[r + 1][ in indices and values
+		public int[] indices; // The indices of the non-zero inputs, grown as needed
+		public double[] values; // The values of the non-zero inputs
+
+		Batch(int capacity, int inputDimension, int outputDimension, boolean sparse) {
+			this.sparse = sparse;
+			this.inputs = new double[sparse ? 0 : capacity * inputDimension];
+			this.targets = new double[capacity * outputDimension];
+			this.rowStarts = sparse ? new int[capacity + 1] : null;
+			this.indices = sparse ? new int[capacity] : null;
+			this.values = sparse ? new double[capacity] : null;
+		}
+	}
+
+	/**
+	 * The order of the samples and the state of the source of the shuffles, right after the shuffle of an epoch.
+	 * A loader started from this state visits the next epochs in the same orders as the loader that recorded it.
+	 */
+	public static class ShuffleState implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final int[] order;
+		final Random random;
+
+		ShuffleState(int[] order, Random random) {
+			this.order = order;
+			this.random = random;
+		}
+
+		/**
+		 * @return a copy of the source of the shuffles, to be used by a single loader
+		 */
+		public Random getRandom() {
+			return copy(random);
+		}
+	}
+
+	private static final Batch END = new Batch(0, 0, 0, false); // Marks the end of the batches, or a failure of the loader
+
+	private final Dataset dataset;
+	private final int batchSize;
+	private final int epochs;
+	private final boolean shuffle;
+	private final Random random;
+	private final int[] order;
+	private final BlockingQueue<Batch> free;
+	private final BlockingQueue<Batch> full;
+	private final Map<Integer, ShuffleState> shuffleStates = new ConcurrentHashMap<>(); // Recorded by the loader, removed by takeShuffleState
+	private final Thread thread;
+	private volatile Throwable failure = null;
+	private long stallTime = 0;
+
+	/**
+	 * Start loading the batches of a training.
+	 * @param dataset the samples
+	 * @param batchSize the size of the batches
+	 * @param epochs the number of epochs
+	 * @param shuffle true to visit the samples in a new random order at each epoch
+	 * @param random the source of the shuffles, only used by the loader until it is closed
+	 * @param buffers the number of batches in flight, at least 2 so that one batch is gathered while the other is computed
+	 */
+	public BatchLoader(Dataset dataset, int batchSize, int epochs, boolean shuffle, Random random, int buffers) {
+		this(dataset, batchSize, epochs, shuffle, random, buffers, null);
+	}
+
+	/**
+	 * Start loading the batches of a resumed training.
+	 * @param dataset the samples
+	 * @param batchSize the size of the batches
+	 * @param epochs the number of remaining epochs
+	 * @param shuffle true to visit the samples in a new random order at each epoch
+	 * @param random the source of the shuffles, only used by the loader until it is closed. Should be {@link ShuffleState#getRandom()}
+	 * @param buffers the number of batches in flight, at least 2 so that one batch is gathered while the other is computed
+	 * @param start the state recorded after the last completed epoch, null to start a new training
+	 */
+	public BatchLoader(Dataset dataset, int batchSize, int epochs, boolean shuffle, Random random, int buffers, ShuffleState start) {
+		if (buffers < 2) {
+			throw new IllegalArgumentException("The number of buffers must be at least 2.");
+		}
+		this.dataset = dataset;
+		this.batchSize = batchSize;
+		this.epochs = epochs;
+		this.shuffle = shuffle;
+		this.random = random;
+		this.order = new int[dataset.size()];
+		if (start != null) {
+			if (start.order.length != order.length) {
+				throw new IllegalArgumentException("The shuffle state has " + start.order.length + " samples but the dataset has " + order.length + ".");
+			}
+			System.arraycopy(start.order, 0, order, 0, order.length);
+		} else {
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+		}
+		int capacity = Math.min(batchSize, dataset.size());
+		this.free = new ArrayBlockingQueue<>(buffers);
+		this.full = new ArrayBlockingQueue<>(buffers + 1); // One more slot for the end mark
+		for (int i = 0; i < buffers; i++) {
+			free.add(new Batch(capacity, dataset.inputDimension(), dataset.outputDimension(), dataset.isSparse()));
+		}
+		this.thread = new Thread(this::load, "batch-loader");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Wait for the next batch. The batches of an epoch are followed by the batches of the next one.
+	 * @return the next batch, to give back with {@link #release(Batch)}
+	 * @throws IllegalStateException if the loader failed or if all the batches have been read
+	 */
+	public Batch next() {
+		long start = System.nanoTime();
+		Batch batch;
+		try {
+			batch = full.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a batch.", e);
+		}
+		stallTime += System.nanoTime() - start;
+		if (batch == END) {
+			full.add(END); // Keep the mark for the next calls
+			if (failure != null) {
+				throw new IllegalStateException("The loading of the batches failed.", failure);
+			}
+			throw new IllegalStateException("All the batches have been read.");
+		}
+		return batch;
+	}
+
+	/**
+	 * Give back a batch once computed, so its buffers can be filled again.
+	 * @param batch the batch returned by {@link #next()}
+	 */
+	public void release(Batch batch) {
+		free.add(batch);
+	}
+
+	/**
+	 * Get and reset the time spent in {@link #next()} waiting for the loader.
+	 * @return the waiting time in nanoseconds since the last call
+	 */
+	public long takeStallTime() {
+		long time = stallTime;
+		stallTime = 0;
+		return time;
+	}
+
+	/**
+	 * Get and forget the state of the shuffle recorded after the shuffle of an epoch. Must be called once the epoch has been computed,
+	 * else the states accumulate.
+	 * @param epoch the index of the epoch of this loader, from 0
+	 * @return the state, or null if the loader does not shuffle
+	 */
+	public ShuffleState takeShuffleState(int epoch) {
+		return shuffleStates.remove(epoch);
+	}
+
+	/**
+	 * Stop the loader and wait for its thread.
+	 */
+	@Override
+	public void close() {
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void load() {
+		try {
+			for (int epoch = 0; epoch < epochs; epoch++) {
+				if (shuffle) {
+					shuffle(order, dataset.blockSize(), random);
+					shuffleStates.put(epoch, new ShuffleState(order.clone(), copy(random)));
+				}
+				for (int start = 0; start < order.length; start += batchSize) {
+					Batch batch = free.take();
+					batch.size = Math.min(batchSize, order.length - start);
+					gather(dataset, order, start, batch);
+					full.put(batch);
+				}
+			}
+		} catch (InterruptedException e) {
+			return; // Closed before the end of the training
+		} catch (Throwable e) {
+			failure = e;
+		}
+		full.add(END);
+	}
+
+	/**
+	 * Copy a source of random numbers with its state, through its serialized form since Random does not expose its seed.
+	 */
+	static Random copy(Random random) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+				oos.writeObject(random);
+			}
+			try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+				return (Random) ois.readObject();
+			}
+		} catch (IOException | ClassNotFoundException e) {
+			throw new IllegalStateException("Cannot copy the source of the shuffles.", e);
+		}
+	}
+
+	/**
+	 * Shuffle the order of the samples: blocks of blockSize consecutive samples are permuted, then the samples inside each block.
+	 */
+	static void shuffle(int[] order, int blockSize, Random random) {
+		int blocks = (order.length + blockSize - 1) / blockSize;
+		if (blocks > 1) {
+			// Permute the blocks by their first index, then rebuild the order
+			int[] blockOrder = new int[blocks];
+			for (int b = 0; b < blocks; b++) {
+				blockOrder[b] = b;
+			}
+			for (int b = blocks - 1; b > 0; b--) {
+				int other = random.nextInt(b + 1);
+				int temp = blockOrder[b];
+				blockOrder[b] = blockOrder[other];
+				blockOrder[other] = temp;
+			}
+			int k = 0;
+			for (int b : blockOrder) {
+				int blockEnd = Math.min(order.length, (b + 1) * blockSize);
+				for (int index = b * blockSize; index < blockEnd; index++) {
+					order[k++] = index;
+				}
+			}
+		}
+		for (int blockStart = 0; blockStart < order.length; blockStart += blockSize) {
+			int blockEnd = Math.min(order.length, blockStart + blockSize);
+			for (int k = blockEnd - 1; k > blockStart; k--) {
+				int other = blockStart + random.nextInt(k - blockStart + 1);
+				int temp = order[k];
+				order[k] = order[other];
+				order[other] = temp;
+			}
+		}
+	}
+
+	/**
+	 * Copy the samples order[start, start + batch.size[ in the blocks of a batch.
+	 */
+	static void gather(Dataset dataset, int[] order, int start, Batch batch) {
+		int inputDimension = dataset.inputDimension();
+		int outputDimension = dataset.outputDimension();
+		if (batch.sparse) {
+			gatherSparse(dataset, order, start, batch);
+			return;
+		}
+		for (int k = 0; k < batch.size; k++) {
+			dataset.readInput(order[start + k], batch.inputs, k * inputDimension);
+			dataset.readOutput(order[start + k], batch.targets, k * outputDimension);
+		}
+	}
+
+	/**
+	 * Copy the samples order[start, start + batch.size[ of a sparse dataset in the compressed rows of a batch.
+	 */
+	private static void gatherSparse(Dataset dataset, int[] order, int start, Batch batch) {
+		int outputDimension = dataset.outputDimension();
+		int nonZeros = 0;
+		batch.rowStarts[0] = 0;
+		for (int k = 0; k < batch.size; k++) {
+			SparseVector input = dataset.readSparseInput(order[start + k]);
+			int count = input.getNonZeros();
+			if (nonZeros + count > batch.indices.length) {
+				int capacity = Math.max(2 * batch.indices.length, nonZeros + count);
+				batch.indices = Arrays.copyOf(batch.indices, capacity);
+				batch.values = Arrays.copyOf(batch.values, capacity);
+			}
+			System.arraycopy(input.getIndices(), 0, batch.indices, nonZeros, count);
+			System.arraycopy(input.getValues(), 0, batch.values, nonZeros, count);
+			nonZeros += count;
+			batch.rowStarts[k + 1] = nonZeros;
+			dataset.readOutput(order[start + k], batch.targets, k * outputDimension);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package neuralnetwork.data;
+
+/**
+ * Source of training samples, read by index. Implementations must support concurrent reads.
+ * @see ArrayDataset
+ * @see MappedDataset
+ */
+public interface Dataset {
+
+	/**
+	 * @return the number of samples
+	 */
+	public int size();
+
+	/**
+	 * @return the dimension of the inputs
+	 */
+	public int inputDimension();
+
+	/**
+	 * @return the dimension of the outputs
+	 */
+	public int outputDimension();
+
+	/**
+	 * Copy the input of a sample in a buffer.
+	 * @param index the index of the sample
+	 * @param destination the buffer
+	 * @param offset the offset of the input in the buffer
+	 */
+	public void readInput(int index, double[] destination, int offset);
+
+	/**
+	 * Copy the expected output of a sample in a buffer.
+	 * @param index the index of the sample
+	 * @param destination the buffer
+	 * @param offset the offset of the output in the buffer
+	 */
+	public void readOutput(int index, double[] destination, int offset);
+
+	/**
+	 * Whether the inputs are sparse. The batches of a sparse dataset hold their inputs as sparse rows read with {@link #readSparseInput(int)},
+	 * and the first dense layer of the network skips the zero inputs. {@link #readInput(int, double[], int)} must still write the dense inputs.
+	 * @return false by default
+	 */
+	public default boolean isSparse() {
+		return false;
+	}
+
+	/**
+	 * Read the input of a sample of a sparse dataset.
+	 * @param index the index of the sample
+	 * @return the input, not to be modified
+	 * @throws UnsupportedOperationException if the dataset is not sparse
+	 */
+	public default SparseVector readSparseInput(int index) {
+		throw new UnsupportedOperationException("The dataset is not sparse.");
+	}
+
+	/**
+	 * Number of consecutive samples that are cheap to read together. The shuffle permutes blocks of this size and the samples inside each block,
+	 * so that each block is read sequentially. 1 for random access datasets.
+	 * @return the block size
+	 */
+	public default int blockSize() {
+		return 1;
+	}
+
+	/**
+	 * Get a view of a range of the samples, reading this dataset.
+	 * @param from the index of the first sample of the range
+	 * @param to the index after the last sample of the range
+	 * @return the view
+	 */
+	public default Dataset range(int from, int to) {
+		return new RangeDataset(this, from, to);
+	}
+}
@@ -0,0 +1,209 @@
+package neuralnetwork.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Dataset stored in a binary file and read through memory mappings, so it can be larger than the heap.
+ * <pre>
+ * header: magic "JNND", int version, long size, int input dimension, int output dimension, padded to 64 bytes
+ * rows:   input then output of each sample, as little-endian doubles
+ * </pre>
+ * The file is mapped in segments of whole rows, so files larger than 2 GB are supported.
+ * The shuffle of the training reads blocks of consecutive rows, which keeps the I/O sequential.
+ * @see Writer
+ */
+public class MappedDataset implements Dataset, Closeable {
+
+	static final int MAGIC = 0x444E4E4A; // "JNND" read as a little-endian int
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+	static final long SEGMENT_SIZE = 1L << 30; // Maximum size of a mapped segment
+	static final int BLOCK_BYTES = 1 << 20; // Bytes read sequentially by a block of the shuffle
+
+	private final FileChannel channel;
+	private final int size;
+	private final int inputDimension;
+	private final int outputDimension;
+	private final int rowLength; // The number of doubles of a row
+	private final int rowsPerSegment;
+	private final DoubleBuffer[] segments;
+
+	/**
+	 * Open a dataset written by a {@link Writer}.
+	 * @param path the path of the file
+	 * @throws IOException if the file is not a valid dataset
+	 */
+	public MappedDataset(String path) throws IOException {
+		this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+			}
+			header.flip();
+			if (header.remaining() < 24 || header.getInt() != MAGIC) {
+				throw new IOException(path + " is not a binary dataset.");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported dataset version " + version + " (expected " + VERSION + ").");
+			}
+			long size = header.getLong();
+			if (size < 0 || size > Integer.MAX_VALUE) {
+				throw new IOException("Corrupted dataset: invalid number of samples " + size + ".");
+			}
+			int inputDimension = header.getInt();
+			int outputDimension = header.getInt();
+			if (inputDimension <= 0 || outputDimension < 0 || (long) inputDimension + outputDimension > Integer.MAX_VALUE) {
+				throw new IOException("Corrupted dataset: invalid dimensions " + inputDimension + "->" + outputDimension + ".");
+			}
+			long rowBytes = ((long) inputDimension + outputDimension) * Double.BYTES;
+			if ((channel.size() - HEADER_SIZE) / rowBytes < size) {
+				throw new IOException("Corrupted dataset: " + size + " samples of " + rowBytes + " bytes do not fit in a file of " + channel.size() + " bytes.");
+			}
+			this.size = (int) size;
+			this.inputDimension = inputDimension;
+			this.outputDimension = outputDimension;
+			this.rowLength = inputDimension + outputDimension;
+
+			this.rowsPerSegment = (int) Math.max(1, Math.min(Integer.MAX_VALUE, SEGMENT_SIZE / rowBytes));
+			int segmentCount = (int) ((size + rowsPerSegment - 1) / rowsPerSegment);
+			this.segments = new DoubleBuffer[segmentCount];
+			for (int i = 0; i < segmentCount; i++) {
+				long firstRow = (long) i * rowsPerSegment;
+				long rows = Math.min(rowsPerSegment, size - firstRow);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + firstRow * rowBytes, rows * rowBytes)
+					.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			}
+		} catch (IOException | RuntimeException e) { // Do not leak the channel
+			channel.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int inputDimension() {
+		return inputDimension;
+	}
+
+	@Override
+	public int outputDimension() {
+		return outputDimension;
+	}
+
+	@Override
+	public void readInput(int index, double[] destination, int offset) {
+		segments[index / rowsPerSegment].get((index % rowsPerSegment) * rowLength, destination, offset, inputDimension);
+	}
+
+	@Override
+	public void readOutput(int index, double[] destination, int offset) {
+		segments[index / rowsPerSegment].get((index % rowsPerSegment) * rowLength + inputDimension, destination, offset, outputDimension);
+	}
+
+	@Override
+	public int blockSize() {
+		return Math.max(1, BLOCK_BYTES / (rowLength * Double.BYTES));
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Write a dataset held in memory in a file.
+	 * @param path the path of the file
+	 * @param inputs the inputs of the samples
+	 * @param outputs the expected outputs of the samples
+	 * @throws IOException if an error occurs during the writing
+	 */
+	public static void write(String path, double[][] inputs, double[][] outputs) throws IOException {
+		if (inputs.length != outputs.length || inputs.length == 0) {
+			throw new IllegalArgumentException("The number of inputs and outputs must be the same and greater than 0.");
+		}
+		try (Writer writer = new Writer(path, inputs[0].length, outputs[0].length)) {
+			for (int i = 0; i < inputs.length; i++) {
+				writer.append(inputs[i], outputs[i]);
+			}
+		}
+	}
+
+	/**
+	 * Sequential writer of a dataset file, appending one sample at a time so the dataset never has to fit in memory.
+	 */
+	public static class Writer implements Closeable {
+
+		private final FileChannel channel;
+		private final int inputDimension;
+		private final int outputDimension;
+		private final ByteBuffer buffer; // Rows waiting to be written
+		private long size = 0;
+
+		public Writer(String path, int inputDimension, int outputDimension) throws IOException {
+			this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			this.inputDimension = inputDimension;
+			this.outputDimension = outputDimension;
+			int rowBytes = (inputDimension + outputDimension) * Double.BYTES;
+			this.buffer = ByteBuffer.allocate(Math.max(rowBytes, BLOCK_BYTES) / rowBytes * rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+			channel.position(HEADER_SIZE);
+		}
+
+		/**
+		 * Append a sample to the dataset.
+		 * @param input the input of the sample
+		 * @param output the expected output of the sample
+		 * @throws IOException if an error occurs during the writing
+		 */
+		public void append(double[] input, double[] output) throws IOException {
+			if (input.length != inputDimension || output.length != outputDimension) {
+				throw new IllegalArgumentException("The sample has dimensions " + input.length + "->" + output.length + " instead of " + inputDimension + "->" + outputDimension);
+			}
+			if (buffer.remaining() < (inputDimension + outputDimension) * Double.BYTES) {
+				flush();
+			}
+			for (double value : input) {
+				buffer.putDouble(value);
+			}
+			for (double value : output) {
+				buffer.putDouble(value);
+			}
+			size++;
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putLong(size);
+			header.putInt(inputDimension);
+			header.putInt(outputDimension);
+			header.position(0);
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package neuralnetwork.data;
+
+/**
+ * View of the samples [from, to[ of a dataset.
+ * @see Dataset#range(int, int)
+ */
+class RangeDataset implements Dataset {
+
+	private final Dataset dataset;
+	private final int from;
+	private final int size;
+
+	RangeDataset(Dataset dataset, int from, int to) {
+		if (from < 0 || to > dataset.size() || from > to) {
+			throw new IllegalArgumentException("Invalid range [" + from + ", " + to + "[ of a dataset of " + dataset.size() + " samples.");
+		}
+		this.dataset = dataset;
+		this.from = from;
+		this.size = to - from;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int inputDimension() {
+		return dataset.inputDimension();
+	}
+
+	@Override
+	public int outputDimension() {
+		return dataset.outputDimension();
+	}
+
+	@Override
+	public void readInput(int index, double[] destination, int offset) {
+		dataset.readInput(from + index, destination, offset);
+	}
+
+	@Override
+	public void readOutput(int index, double[] destination, int offset) {
+		dataset.readOutput(from + index, destination, offset);
+	}
+
+	@Override
+	public boolean isSparse() {
+		return dataset.isSparse();
+	}
+
+	@Override
+	public SparseVector readSparseInput(int index) {
+		return dataset.readSparseInput(from + index);
+	}
+
+	@Override
+	public int blockSize() {
+		return dataset.blockSize();
+	}
+}
@@ -0,0 +1,69 @@
+package neuralnetwork.data;
+
+/**
+ * Dataset held in memory with sparse inputs and dense outputs. The arrays are not copied and must not be modified during a training.
+ * The batches of the training keep the inputs sparse, see {@link Dataset#isSparse()}.
+ */
+public class SparseDataset implements Dataset {
+
+	private final SparseVector[] inputs;
+	private final double[][] outputs;
+	private final int inputDimension;
+	private final int outputDimension;
+
+	public SparseDataset(SparseVector[] inputs, double[][] outputs) {
+		if (inputs.length != outputs.length) {
+			throw new IllegalArgumentException("The number of inputs and outputs must be the same.");
+		}
+		if (inputs.length == 0) {
+			throw new IllegalArgumentException("The number of inputs must be greater than 0.");
+		}
+		this.inputs = inputs;
+		this.outputs = outputs;
+		this.inputDimension = inputs[0].getDimension();
+		this.outputDimension = outputs[0].length;
+		for (int i = 0; i < inputs.length; i++) {
+			if (inputs[i].getDimension() != inputDimension) {
+				throw new IllegalArgumentException("The input " + i + " has a dimension of " + inputs[i].getDimension() + " but the first input has a dimension of " + inputDimension);
+			}
+			if (outputs[i].length != outputDimension) {
+				throw new IllegalArgumentException("The output " + i + " has a dimension of " + outputs[i].length + " but the first output has a dimension of " + outputDimension);
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return inputs.length;
+	}
+
+	@Override
+	public int inputDimension() {
+		return inputDimension;
+	}
+
+	@Override
+	public int outputDimension() {
+		return outputDimension;
+	}
+
+	@Override
+	public void readInput(int index, double[] destination, int offset) {
+		inputs[index].toDense(destination, offset);
+	}
+
+	@Override
+	public void readOutput(int index, double[] destination, int offset) {
+		System.arraycopy(outputs[index], 0, destination, offset, outputDimension);
+	}
+
+	@Override
+	public boolean isSparse() {
+		return true;
+	}
+
+	@Override
+	public SparseVector readSparseInput(int index) {
+		return inputs[index];
+	}
+}
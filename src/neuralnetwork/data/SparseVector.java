@@ -0,0 +1,94 @@
+package neuralnetwork.data;
+
+import java.util.Arrays;
+
+/**
+ * Sparse input vector: the indices of its non-zero coordinates, in increasing order, and their values.
+ * For one-hot and hashed features, the first dense layer of a network then computes its forward in O(non-zeros x outputs)
+ * and only updates the gradients of the weights of the non-zero inputs.
+ * The arrays are not copied and must not be modified once the vector is used.
+ * @see SparseDataset
+ */
+public final class SparseVector {
+
+	private final int dimension;
+	private final int[] indices;
+	private final double[] values;
+
+	/**
+	 * @param dimension the dimension of the vector
+	 * @param indices the indices of the non-zero coordinates, strictly increasing
+	 * @param values the values of the coordinates, one per index
+	 */
+	public SparseVector(int dimension, int[] indices, double[] values) {
+		if (indices.length != values.length) {
+			throw new IllegalArgumentException("The number of indices (" + indices.length + ") and of values (" + values.length + ") must be the same.");
+		}
+		for (int k = 0; k < indices.length; k++) {
+			if (indices[k] < 0 || indices[k] >= dimension) {
+				throw new IllegalArgumentException("The index " + indices[k] + " is out of the dimension " + dimension + ".");
+			}
+			if (k > 0 && indices[k] <= indices[k - 1]) {
+				throw new IllegalArgumentException("The indices must be strictly increasing, found " + indices[k] + " after " + indices[k - 1] + ".");
+			}
+		}
+		this.dimension = dimension;
+		this.indices = indices;
+		this.values = values;
+	}
+
+	/**
+	 * Build the sparse vector of the non-zero coordinates of a dense vector.
+	 * @param dense the dense vector
+	 * @return the sparse vector
+	 */
+	public static SparseVector of(double[] dense) {
+		int nonZeros = 0;
+		for (double value : dense) {
+			if (value != 0) {
+				nonZeros++;
+			}
+		}
+		int[] indices = new int[nonZeros];
+		double[] values = new double[nonZeros];
+		int k = 0;
+		for (int j = 0; j < dense.length; j++) {
+			if (dense[j] != 0) {
+				indices[k] = j;
+				values[k++] = dense[j];
+			}
+		}
+		return new SparseVector(dense.length, indices, values);
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * @return the number of non-zero coordinates
+	 */
+	public int getNonZeros() {
+		return indices.length;
+	}
+
+	public int[] getIndices() {
+		return indices;
+	}
+
+	public double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * Write the vector in a dense buffer, zeros included.
+	 * @param destination the buffer
+	 * @param offset the offset of the vector in the buffer
+	 */
+	public void toDense(double[] destination, int offset) {
+		Arrays.fill(destination, offset, offset + dimension, 0);
+		for (int k = 0; k < indices.length; k++) {
+			destination[offset + indices[k]] = values[k];
+		}
+	}
+}
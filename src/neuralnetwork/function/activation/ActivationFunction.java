@@ -1,10 +1,49 @@
 package neuralnetwork.function.activation;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 public interface ActivationFunction extends Serializable{
 
 	public void activate(double[] input, double[] output);
 
+	/**
+	 * Multiply in place the gradients of the outputs by the derivative of the activation.
+	 * @param input the inputs of the activation (pre-activations)
+	 * @param output the outputs of the activation
+	 * @param outputGradients the gradients of the outputs, replaced by the gradients of the inputs
+	 */
 	public void activateGradients(double[] input, double[] output, double[] outputGradients);
+
+	/**
+	 * Activate the range input[inputOffset, inputOffset + length[ into output[outputOffset, outputOffset + length[, the ranges may be the same.
+	 * Lets the batched layers activate the rows of a flat buffer without copying them.
+	 * The default implementation calls {@link #activate(double[], double[])}, on copies of the ranges unless they are whole arrays;
+	 * implementations should override it.
+	 */
+	public default void activate(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
+		if (inputOffset == 0 && outputOffset == 0 && input.length == length && output.length == length) {
+			activate(input, output);
+			return;
+		}
+		double[] outputRange = new double[length];
+		activate(Arrays.copyOfRange(input, inputOffset, inputOffset + length), outputRange);
+		System.arraycopy(outputRange, 0, output, outputOffset, length);
+	}
+
+	/**
+	 * Range version of {@link #activateGradients(double[], double[], double[])}: the gradients
+	 * gradients[gradientOffset, gradientOffset + length[ are multiplied in place by the derivative of the activation.
+	 * The default implementation calls {@link #activateGradients(double[], double[], double[])}, on copies of the ranges unless they are whole arrays;
+	 * implementations should override it.
+	 */
+	public default void activateGradients(double[] input, int inputOffset, double[] output, int outputOffset, double[] gradients, int gradientOffset, int length) {
+		if (inputOffset == 0 && outputOffset == 0 && gradientOffset == 0 && input.length == length && output.length == length && gradients.length == length) {
+			activateGradients(input, output, gradients);
+			return;
+		}
+		double[] gradientRange = Arrays.copyOfRange(gradients, gradientOffset, gradientOffset + length);
+		activateGradients(Arrays.copyOfRange(input, inputOffset, inputOffset + length), Arrays.copyOfRange(output, outputOffset, outputOffset + length), gradientRange);
+		System.arraycopy(gradientRange, 0, gradients, gradientOffset, length);
+	}
 }
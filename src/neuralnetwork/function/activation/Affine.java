@@ -2,20 +2,48 @@ package neuralnetwork.function.activation;
 
 public class Affine implements ActivationFunction {
 
+	private static final long serialVersionUID = 5307821480451732278L;
+
 	double a = 1;
 	double b = 0;
 
+	public Affine() {
+	}
+
+	public Affine(double a, double b) {
+		this.a = a;
+		this.b = b;
+	}
+
+	public double getA() {
+		return a;
+	}
+
+	public double getB() {
+		return b;
+	}
+
 	@Override
 	public void activate(double[] input, double output[]) {
-		for (int i = 0; i < input.length; i++) {
-			output[i] = a * input[i] + b;
-		}
+		activate(input, 0, output, 0, input.length);
 	}
 
 	@Override
 	public void activateGradients(double[] input, double[] output, double[] outputGradients) {
-		for (int i = 0; i < input.length; i++) {
-			outputGradients[i] = a * outputGradients[i];
+		activateGradients(input, 0, output, 0, outputGradients, 0, outputGradients.length);
+	}
+
+	@Override
+	public void activate(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			output[outputOffset + i] = a * input[inputOffset + i] + b;
+		}
+	}
+
+	@Override
+	public void activateGradients(double[] input, int inputOffset, double[] output, int outputOffset, double[] gradients, int gradientOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			gradients[gradientOffset + i] *= a;
 		}
 	}
 	
@@ -1,7 +1,11 @@
 package neuralnetwork.function.activation;
 
+import neuralnetwork.kernel.Kernels;
+
 public class ReLU implements ActivationFunction {
 
+	private static final long serialVersionUID = 8171220235749120690L;
+
 	double treshold = 0;
 	double eps = 1e-6;
 
@@ -36,36 +40,45 @@ public class ReLU implements ActivationFunction {
 	}
 
 
+	public double getTreshold() {
+		return treshold;
+	}
+
+	public double getEpsilon() {
+		return eps;
+	}
+
+	public boolean isVariant() {
+		return variant;
+	}
+
 	@Override
 	public void activate(double[] input, double[] output) {
+		activate(input, 0, output, 0, output.length);
+	}
+
+	@Override
+	public void activateGradients(double[] input, double[] output, double[] outputGradients) {
+		activateGradients(input, 0, output, 0, outputGradients, 0, outputGradients.length);
+	}
+
+	@Override
+	public void activate(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
 		if (variant) {
-			for (int i = 0; i < output.length; i++) {
-				output[i] = Math.max(eps * (input[i]-treshold), input[i] - treshold);
-			}
+			Kernels.get().leakyRelu(input, inputOffset, output, outputOffset, length, treshold, eps);
 		} else {
-			for (int i = 0; i < output.length; i++) {
-				output[i] = Math.max(0, input[i] - treshold);
-			}
+			Kernels.get().relu(input, inputOffset, output, outputOffset, length, treshold);
 		}
 	}
 
+	/**
+	 * The derivative is read from the inputs: 1 above the treshold, eps (variant) or 0 below.
+	 */
 	@Override
-	public void activateGradients(double[] ouput, double[] input, double[] outputGradients) {
-		if (variant) {
-			for (int i = 0; i < input.length; i++) {
-				if (input[i] <= treshold) {
-					outputGradients[i] = eps * outputGradients[i];
-				} else {
-					outputGradients[i] = outputGradients[i];
-				}
-			}
-		} else {
-			for (int i = 0; i < input.length; i++) {
-				if (input[i] <= treshold) {
-					outputGradients[i] = 0;
-				} else {
-					outputGradients[i] = outputGradients[i];
-				}
+	public void activateGradients(double[] input, int inputOffset, double[] output, int outputOffset, double[] gradients, int gradientOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			if (input[inputOffset + i] <= treshold) {
+				gradients[gradientOffset + i] = variant ? eps * gradients[gradientOffset + i] : 0;
 			}
 		}
 	}
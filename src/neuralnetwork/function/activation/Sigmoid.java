@@ -1,18 +1,53 @@
 package neuralnetwork.function.activation;
 
+import neuralnetwork.kernel.Kernels;
+import neuralnetwork.kernel.SpecialFunctions;
+
+/**
+ * Sigmoid: 1 / (1 + exp(-x)).
+ * The fast mode replaces the exponential by a rational approximation, see {@link SpecialFunctions#fastSigmoid(double)}: maximum absolute error 1.3e-8.
+ */
 public class Sigmoid implements ActivationFunction {
 
+	private static final long serialVersionUID = -9005097602000077529L;
+
+	boolean fast = false;
+
+	public Sigmoid() {
+	}
+
+	public Sigmoid(boolean fast) {
+		this.fast = fast;
+	}
+
+	public boolean isFast() {
+		return fast;
+	}
+
 	@Override
 	public void activate(double[] input, double[] output) {
-		for (int i = 0; i < input.length; i++) {
-			output[i] = 1 / (1 + Math.exp(-input[i]));
-		}
+		activate(input, 0, output, 0, input.length);
 	}
 
 	@Override
 	public void activateGradients(double[] input, double[] output, double[] outputGradients) {
-		for (int i = 0; i < input.length; i++) {
-			outputGradients[i] = output[i] * (1 - output[i]) * outputGradients[i];
+		activateGradients(input, 0, output, 0, outputGradients, 0, output.length);
+	}
+
+	@Override
+	public void activate(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
+		if (fast) {
+			Kernels.get().fastSigmoid(input, inputOffset, output, outputOffset, length);
+		} else {
+			Kernels.get().sigmoid(input, inputOffset, output, outputOffset, length);
+		}
+	}
+
+	@Override
+	public void activateGradients(double[] input, int inputOffset, double[] output, int outputOffset, double[] gradients, int gradientOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			double y = output[outputOffset + i];
+			gradients[gradientOffset + i] *= y * (1 - y);
 		}
 	}
 	
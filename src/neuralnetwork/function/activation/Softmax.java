@@ -0,0 +1,53 @@
+package neuralnetwork.function.activation;
+
+/**
+ * Softmax: output[i] = exp(input[i]) / sum of exp(input[j]).
+ * The exponentials are shifted by the maximum input so exp does not overflow; the loss itself is computed with log-sum-exp by {@link neuralnetwork.function.error.CrossEntropy}.
+ * Paired with {@link neuralnetwork.function.error.CrossEntropy}, the gradient of the output layer is computed directly as output - target.
+ */
+public class Softmax implements ActivationFunction {
+
+	private static final long serialVersionUID = 2719530463164788142L;
+
+	@Override
+	public void activate(double[] input, double[] output) {
+		activate(input, 0, output, 0, input.length);
+	}
+
+	@Override
+	public void activateGradients(double[] input, double[] output, double[] outputGradients) {
+		activateGradients(input, 0, output, 0, outputGradients, 0, output.length);
+	}
+
+	@Override
+	public void activate(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < length; i++) {
+			max = Math.max(max, input[inputOffset + i]);
+		}
+		double sum = 0;
+		for (int i = 0; i < length; i++) {
+			double e = Math.exp(input[inputOffset + i] - max);
+			output[outputOffset + i] = e;
+			sum += e;
+		}
+		double inverse = 1 / sum;
+		for (int i = 0; i < length; i++) {
+			output[outputOffset + i] *= inverse;
+		}
+	}
+
+	/**
+	 * Product of the Jacobian of the softmax with the gradients: gradient[i] = output[i] * (gradient[i] - sum of output[j] * gradient[j]). In place.
+	 */
+	@Override
+	public void activateGradients(double[] input, int inputOffset, double[] output, int outputOffset, double[] gradients, int gradientOffset, int length) {
+		double dot = 0;
+		for (int i = 0; i < length; i++) {
+			dot += output[outputOffset + i] * gradients[gradientOffset + i];
+		}
+		for (int i = 0; i < length; i++) {
+			gradients[gradientOffset + i] = output[outputOffset + i] * (gradients[gradientOffset + i] - dot);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package neuralnetwork.function.activation;
+
+import neuralnetwork.kernel.SpecialFunctions;
+
+/**
+ * Softplus: log(1 + exp(x)), computed as max(x, 0) + log1p(exp(-|x|)) so it does not overflow.
+ * The fast mode interpolates a table, see {@link SpecialFunctions#fastSoftplus(double)}: maximum absolute error 2e-6.
+ */
+public class Softplus implements ActivationFunction {
+
+	private static final long serialVersionUID = 6010268372394402262L;
+
+	boolean fast = false;
+
+	public Softplus() {
+	}
+
+	public Softplus(boolean fast) {
+		this.fast = fast;
+	}
+
+	public boolean isFast() {
+		return fast;
+	}
+
+	@Override
+	public void activate(double[] input, double[] output) {
+		activate(input, 0, output, 0, input.length);
+	}
+
+	@Override
+	public void activateGradients(double[] input, double[] output, double[] outputGradients) {
+		activateGradients(input, 0, output, 0, outputGradients, 0, output.length);
+	}
+
+	@Override
+	public void activate(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
+		if (fast) {
+			for (int i = 0; i < length; i++) {
+				output[outputOffset + i] = SpecialFunctions.fastSoftplus(input[inputOffset + i]);
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				double x = input[inputOffset + i];
+				output[outputOffset + i] = Math.max(x, 0) + Math.log1p(Math.exp(-Math.abs(x)));
+			}
+		}
+	}
+
+	/**
+	 * The derivative is sigmoid(x), fast in the fast mode.
+	 */
+	@Override
+	public void activateGradients(double[] input, int inputOffset, double[] output, int outputOffset, double[] gradients, int gradientOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			double x = input[inputOffset + i];
+			gradients[gradientOffset + i] *= fast ? SpecialFunctions.fastSigmoid(x) : 1 / (1 + Math.exp(-x));
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package neuralnetwork.function.activation;
+
+import neuralnetwork.kernel.SpecialFunctions;
+
+/**
+ * Swish (SiLU for beta = 1): x * sigmoid(beta * x).
+ * The fast mode uses {@link SpecialFunctions#fastSigmoid(double)}: maximum absolute error 1.3e-8 * max(1, |x|).
+ */
+public class Swish implements ActivationFunction {
+
+	private static final long serialVersionUID = -1129716548904412075L;
+
+	double beta = 1;
+
+	boolean fast = false;
+
+	public Swish() {
+	}
+
+	public Swish(boolean fast) {
+		this.fast = fast;
+	}
+
+	public Swish(double beta, boolean fast) {
+		this.beta = beta;
+		this.fast = fast;
+	}
+
+	public double getBeta() {
+		return beta;
+	}
+
+	public boolean isFast() {
+		return fast;
+	}
+
+	@Override
+	public void activate(double[] input, double[] output) {
+		activate(input, 0, output, 0, input.length);
+	}
+
+	@Override
+	public void activateGradients(double[] input, double[] output, double[] outputGradients) {
+		activateGradients(input, 0, output, 0, outputGradients, 0, output.length);
+	}
+
+	@Override
+	public void activate(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			double x = input[inputOffset + i];
+			output[outputOffset + i] = x * sigmoid(beta * x);
+		}
+	}
+
+	/**
+	 * The derivative is s + beta * x * s * (1 - s) with s = sigmoid(beta * x), recomputed from the inputs.
+	 */
+	@Override
+	public void activateGradients(double[] input, int inputOffset, double[] output, int outputOffset, double[] gradients, int gradientOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			double x = input[inputOffset + i];
+			double s = sigmoid(beta * x);
+			gradients[gradientOffset + i] *= s + beta * x * s * (1 - s);
+		}
+	}
+
+	private double sigmoid(double x) {
+		return fast ? SpecialFunctions.fastSigmoid(x) : 1 / (1 + Math.exp(-x));
+	}
+}
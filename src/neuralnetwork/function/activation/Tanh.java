@@ -0,0 +1,53 @@
+package neuralnetwork.function.activation;
+
+import neuralnetwork.kernel.Kernels;
+import neuralnetwork.kernel.SpecialFunctions;
+
+/**
+ * Hyperbolic tangent.
+ * The fast mode is a rational approximation, see {@link SpecialFunctions#fastTanh(double)}: maximum absolute error 2.6e-8.
+ */
+public class Tanh implements ActivationFunction {
+
+	private static final long serialVersionUID = -3547781263120519640L;
+
+	boolean fast = false;
+
+	public Tanh() {
+	}
+
+	public Tanh(boolean fast) {
+		this.fast = fast;
+	}
+
+	public boolean isFast() {
+		return fast;
+	}
+
+	@Override
+	public void activate(double[] input, double[] output) {
+		activate(input, 0, output, 0, input.length);
+	}
+
+	@Override
+	public void activateGradients(double[] input, double[] output, double[] outputGradients) {
+		activateGradients(input, 0, output, 0, outputGradients, 0, output.length);
+	}
+
+	@Override
+	public void activate(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
+		if (fast) {
+			Kernels.get().fastTanh(input, inputOffset, output, outputOffset, length);
+		} else {
+			Kernels.get().tanh(input, inputOffset, output, outputOffset, length);
+		}
+	}
+
+	@Override
+	public void activateGradients(double[] input, int inputOffset, double[] output, int outputOffset, double[] gradients, int gradientOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			double y = output[outputOffset + i];
+			gradients[gradientOffset + i] *= 1 - y * y;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package neuralnetwork.function.error;
+
+import neuralnetwork.function.activation.ActivationFunction;
+import neuralnetwork.function.activation.Softmax;
+
+/**
+ * Categorical cross entropy: error = - sum of target[i] * log(output[i]), for targets summing to 1 and outputs in ]0, 1].
+ * Behind a {@link Softmax} output layer the gradient of the pre-activations is fused to output - target, which avoids the division by
+ * vanishing outputs of the unfused gradient and the Jacobian product of the softmax.
+ * The fused error is computed from the pre-activations z with the log-sum-exp trick, - log(softmax(z)[i]) = max + log(sum of exp(z[j] - max)) - z[i],
+ * so it stays exact when the softmax saturates. The unfused error clamps the outputs, and is bounded by -log(Double.MIN_NORMAL), about 708.
+ */
+public class CrossEntropy implements ErrorFunction {
+
+	private static final long serialVersionUID = -4190832851963476407L;
+
+	private static final double MIN_OUTPUT = Double.MIN_NORMAL; // Bound of the outputs in the logarithm, a saturated softmax rounds the smallest outputs to 0
+
+	@Override
+	public double error(double[] output, double[] target) {
+		return error(output, 0, target, 0, output.length);
+	}
+
+	@Override
+	public double[] errorGradient(double[] output, double[] target) {
+		double[] errorGradient = new double[output.length];
+		errorGradient(output, 0, target, 0, errorGradient, 0, output.length);
+		return errorGradient;
+	}
+
+	@Override
+	public void errorGradient(double[] output, double[] target, double[] gradient) {
+		errorGradient(output, 0, target, 0, gradient, 0, output.length);
+	}
+
+	@Override
+	public double error(double[] output, int outputOffset, double[] target, int targetOffset, int length) {
+		double error = 0;
+		for (int i = 0; i < length; i++) {
+			double t = target[targetOffset + i];
+			if (t != 0) {
+				error -= t * Math.log(Math.max(output[outputOffset + i], MIN_OUTPUT));
+			}
+		}
+		return error;
+	}
+
+	@Override
+	public void errorGradient(double[] output, int outputOffset, double[] target, int targetOffset, double[] gradient, int gradientOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			gradient[gradientOffset + i] = -target[targetOffset + i] / Math.max(output[outputOffset + i], MIN_OUTPUT);
+		}
+	}
+
+	/**
+	 * The error from the inputs z of the softmax: sum of target[i] * (logsumexp(z) - z[i]).
+	 */
+	@Override
+	public double fusedError(double[] preActivation, int preActivationOffset, double[] target, int targetOffset, int length) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < length; i++) {
+			max = Math.max(max, preActivation[preActivationOffset + i]);
+		}
+		double sum = 0;
+		for (int i = 0; i < length; i++) {
+			sum += Math.exp(preActivation[preActivationOffset + i] - max);
+		}
+		double logSumExp = max + Math.log(sum);
+		double error = 0;
+		for (int i = 0; i < length; i++) {
+			double t = target[targetOffset + i];
+			if (t != 0) {
+				error += t * (logSumExp - preActivation[preActivationOffset + i]);
+			}
+		}
+		return error;
+	}
+
+	@Override
+	public boolean fuses(ActivationFunction activation) {
+		return activation instanceof Softmax;
+	}
+
+	@Override
+	public void fusedGradient(double[] output, double[] target, double[] gradient) {
+		fusedGradient(output, 0, target, 0, gradient, 0, output.length);
+	}
+
+	/**
+	 * The gradient of the inputs of the softmax: output - target.
+	 */
+	@Override
+	public void fusedGradient(double[] output, int outputOffset, double[] target, int targetOffset, double[] gradient, int gradientOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			gradient[gradientOffset + i] = output[outputOffset + i] - target[targetOffset + i];
+		}
+	}
+
+	public String toString() {
+		return "CrossEntropy";
+	}
+}
@@ -1,11 +1,101 @@
 package neuralnetwork.function.error;
 
 import java.io.Serializable;
+import java.util.Arrays;
+
+import neuralnetwork.function.activation.ActivationFunction;
 
 public interface ErrorFunction extends Serializable{
 
 	public double error(double[] output, double[] target);
 
 	public double[] errorGradient(double[] output, double[] target);
-	
+
+	/**
+	 * Compute the gradient of the error in the given buffer, without allocating.
+	 * The default implementation delegates to {@link #errorGradient(double[], double[])}, implementations should override it.
+	 * @param output the output of the network
+	 * @param target the expected output
+	 * @param gradient the buffer receiving the gradient
+	 */
+	public default void errorGradient(double[] output, double[] target, double[] gradient) {
+		double[] errorGradient = errorGradient(output, target);
+		System.arraycopy(errorGradient, 0, gradient, 0, errorGradient.length);
+	}
+
+	/**
+	 * Error of the range output[outputOffset, outputOffset + length[ against target[targetOffset, targetOffset + length[,
+	 * lets the batched training read the rows of flat buffers without copying them.
+	 * The default implementation calls {@link #error(double[], double[])}, on copies of the ranges unless they are whole arrays;
+	 * implementations should override it.
+	 */
+	public default double error(double[] output, int outputOffset, double[] target, int targetOffset, int length) {
+		if (outputOffset == 0 && targetOffset == 0 && output.length == length && target.length == length) {
+			return error(output, target);
+		}
+		return error(Arrays.copyOfRange(output, outputOffset, outputOffset + length), Arrays.copyOfRange(target, targetOffset, targetOffset + length));
+	}
+
+	/**
+	 * Range version of {@link #errorGradient(double[], double[], double[])}, the gradient is written in gradient[gradientOffset, gradientOffset + length[.
+	 * The default implementation calls {@link #errorGradient(double[], double[], double[])}, on copies of the ranges unless they are whole arrays;
+	 * implementations should override it.
+	 */
+	public default void errorGradient(double[] output, int outputOffset, double[] target, int targetOffset, double[] gradient, int gradientOffset, int length) {
+		if (outputOffset == 0 && targetOffset == 0 && gradientOffset == 0 && output.length == length && target.length == length && gradient.length == length) {
+			errorGradient(output, target, gradient);
+			return;
+		}
+		double[] gradientRange = new double[length];
+		errorGradient(Arrays.copyOfRange(output, outputOffset, outputOffset + length), Arrays.copyOfRange(target, targetOffset, targetOffset + length), gradientRange);
+		System.arraycopy(gradientRange, 0, gradient, gradientOffset, length);
+	}
+
+	/**
+	 * Whether this error function has a fused gradient behind the given activation of the output layer, see {@link #fusedGradient(double[], double[], double[])}.
+	 * @param activation the activation function of the output layer, may be null
+	 * @return true if the gradient is fused, false by default
+	 */
+	public default boolean fuses(ActivationFunction activation) {
+		return false;
+	}
+
+	/**
+	 * Compute in the given buffer the gradient of the error with respect to the inputs of the activation of the output layer,
+	 * the network then skips the gradient of the activation. Only called when {@link #fuses(ActivationFunction)} returned true.
+	 * @param output the output of the network
+	 * @param target the expected output
+	 * @param gradient the buffer receiving the gradient
+	 */
+	public default void fusedGradient(double[] output, double[] target, double[] gradient) {
+		throw new UnsupportedOperationException("The error function " + this + " has no fused gradient.");
+	}
+
+	/**
+	 * Compute the error from the inputs of the activation of the output layer rather than from its outputs, which can be more accurate.
+	 * Only called when {@link #fuses(ActivationFunction)} returned true.
+	 * @param preActivation the buffer holding the inputs of the output activation
+	 * @param preActivationOffset the offset of the row in preActivation
+	 * @param target the buffer holding the expected output
+	 * @param targetOffset the offset of the row in target
+	 * @param length the output dimension
+	 * @return the error of the row
+	 */
+	public default double fusedError(double[] preActivation, int preActivationOffset, double[] target, int targetOffset, int length) {
+		throw new UnsupportedOperationException("The error function " + this + " has no fused error.");
+	}
+
+	/**
+	 * Range version of {@link #fusedGradient(double[], double[], double[])}, the gradient is written in gradient[gradientOffset, gradientOffset + length[.
+	 * The default implementation calls {@link #fusedGradient(double[], double[], double[])}, on copies of the ranges unless they are whole arrays.
+	 */
+	public default void fusedGradient(double[] output, int outputOffset, double[] target, int targetOffset, double[] gradient, int gradientOffset, int length) {
+		if (outputOffset == 0 && targetOffset == 0 && gradientOffset == 0 && output.length == length && target.length == length && gradient.length == length) {
+			fusedGradient(output, target, gradient);
+			return;
+		}
+		double[] gradientRange = new double[length];
+		fusedGradient(Arrays.copyOfRange(output, outputOffset, outputOffset + length), Arrays.copyOfRange(target, targetOffset, targetOffset + length), gradientRange);
+		System.arraycopy(gradientRange, 0, gradient, gradientOffset, length);
+	}
 }
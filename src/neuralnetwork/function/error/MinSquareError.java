@@ -1,23 +1,41 @@
 package neuralnetwork.function.error;
 
 public class MinSquareError implements ErrorFunction{
+
+	private static final long serialVersionUID = 7391869652706398455L;
 	
 	@Override
 	public double error(double[] output, double[] target) {
+		return error(output, 0, target, 0, output.length);
+	}
+
+	@Override
+	public double[] errorGradient(double[] output, double[] target) {
+		double[] errorGradient = new double[output.length];
+		errorGradient(output, 0, target, 0, errorGradient, 0, output.length);
+		return errorGradient;
+	}
+
+	@Override
+	public void errorGradient(double[] output, double[] target, double[] gradient) {
+		errorGradient(output, 0, target, 0, gradient, 0, output.length);
+	}
+
+	@Override
+	public double error(double[] output, int outputOffset, double[] target, int targetOffset, int length) {
 		double error = 0;
-		for (int i = 0; i < output.length; i++) {
-			error += Math.pow(output[i] - target[i], 2);
+		for (int i = 0; i < length; i++) {
+			double difference = output[outputOffset + i] - target[targetOffset + i];
+			error += difference * difference;
 		}
 		return error;
 	}
 
 	@Override
-	public double[] errorGradient(double[] output, double[] target) {
-		double[] errorGradient = new double[output.length];
-		for (int i = 0; i < output.length; i++) {
-			errorGradient[i] = 2 * (output[i] - target[i]);
+	public void errorGradient(double[] output, int outputOffset, double[] target, int targetOffset, double[] gradient, int gradientOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			gradient[gradientOffset + i] = 2 * (output[outputOffset + i] - target[targetOffset + i]);
 		}
-		return errorGradient;
 	}
 
 	public String toString() {
@@ -0,0 +1,155 @@
+package neuralnetwork.kernel;
+
+/**
+ * Numerical kernels used by the hot loops of the layers and of the activation functions.
+ * Two backends exist: {@link ScalarKernels}, plain loops, and {@code VectorKernels}, built on the incubating Vector API.
+ * The vector backend is selected at runtime when the module jdk.incubator.vector is available and the class is on the classpath
+ * (run with {@code --add-modules jdk.incubator.vector}), the scalar backend is the fallback.
+ * VectorKernels is kept in the separate source root src-vector, so the sources of src build without the incubator module; it is compiled
+ * against them with {@code javac --add-modules jdk.incubator.vector -cp <classes of src> -d <classes of src> $(find src-vector -name '*.java')}.
+ * The backend can be forced with the system property {@code neuralnetwork.kernels=scalar|vector}.
+ */
+public interface Kernels {
+
+	/**
+	 * @return the dot product of a[aOffset, aOffset + length[ and b[bOffset, bOffset + length[
+	 */
+	public double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+	/**
+	 * @return the dot product of a[aOffset, aOffset + length[, stored in float, and b[bOffset, bOffset + length[, accumulated in double
+	 */
+	public double dot(float[] a, int aOffset, double[] b, int bOffset, int length);
+
+	/**
+	 * Dot product of a row of a matrix in compressed sparse rows and a dense vector: the sum of values[k] * x[columns[k]] for k in [from, to[.
+	 * Both backends use a scalar loop: the gathers of the Vector API crash the C2 compiler of JDK 17.
+	 */
+	public double sparseDot(double[] values, int[] columns, int from, int to, double[] x);
+
+	/**
+	 * Same as {@link #sparseDot(double[], int[], int, int, double[])} with values stored in float, accumulated in double.
+	 */
+	public double sparseDot(float[] values, int[] columns, int from, int to, double[] x);
+
+	/**
+	 * y[yOffset + i] += alpha * x[xOffset + i] for i in [0, length[
+	 */
+	public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+	/**
+	 * y[i] += x[i] for i in [0, length[
+	 */
+	public void add(double[] x, double[] y, int length);
+
+	/**
+	 * Gradient descent step with momentum: parameters[i] -= learningRate * gradients[i], then gradients[i] *= momemtum.
+	 */
+	public void update(double[] parameters, double[] gradients, int length, double learningRate, double momemtum);
+
+	/**
+	 * output[i] = max(0, input[i] - treshold) for i in [0, length[
+	 */
+	public default void relu(double[] input, double[] output, int length, double treshold) {
+		relu(input, 0, output, 0, length, treshold);
+	}
+
+	/**
+	 * output[outputOffset + i] = max(0, input[inputOffset + i] - treshold) for i in [0, length[
+	 */
+	public void relu(double[] input, int inputOffset, double[] output, int outputOffset, int length, double treshold);
+
+	/**
+	 * output[i] = max(slope * (input[i] - treshold), input[i] - treshold) for i in [0, length[
+	 */
+	public default void leakyRelu(double[] input, double[] output, int length, double treshold, double slope) {
+		leakyRelu(input, 0, output, 0, length, treshold, slope);
+	}
+
+	/**
+	 * output[outputOffset + i] = max(slope * (input[inputOffset + i] - treshold), input[inputOffset + i] - treshold) for i in [0, length[
+	 */
+	public void leakyRelu(double[] input, int inputOffset, double[] output, int outputOffset, int length, double treshold, double slope);
+
+	/**
+	 * output[i] = 1 / (1 + exp(-input[i])) for i in [0, length[
+	 */
+	public default void sigmoid(double[] input, double[] output, int length) {
+		sigmoid(input, 0, output, 0, length);
+	}
+
+	/**
+	 * output[outputOffset + i] = 1 / (1 + exp(-input[inputOffset + i])) for i in [0, length[
+	 */
+	public void sigmoid(double[] input, int inputOffset, double[] output, int outputOffset, int length);
+
+	/**
+	 * output[outputOffset + i] = tanh(input[inputOffset + i]) for i in [0, length[
+	 */
+	public void tanh(double[] input, int inputOffset, double[] output, int outputOffset, int length);
+
+	/**
+	 * Same as {@link #tanh(double[], int, double[], int, int)} with the rational approximation of {@link SpecialFunctions#fastTanh(double)}.
+	 */
+	public void fastTanh(double[] input, int inputOffset, double[] output, int outputOffset, int length);
+
+	/**
+	 * Same as {@link #sigmoid(double[], int, double[], int, int)} with the approximation of {@link SpecialFunctions#fastSigmoid(double)}.
+	 */
+	public void fastSigmoid(double[] input, int inputOffset, double[] output, int outputOffset, int length);
+
+	/**
+	 * Dense layer with transposed weights and a fused activation, for the inference:
+	 * y[yOffset + i] = activation(bias[i] + sum over j of x[xOffset + j] * weights[j * columns + i]) for i in [0, columns[ and j in [0, rows[.
+	 * The weights are read row by row and the outputs are accumulated without reduction, which suits the narrow layers.
+	 * @param treshold the treshold of the ReLU activations
+	 * @param slope the slope of the leaky ReLU activation
+	 */
+	public void denseTransposed(double[] weights, double[] bias, int rows, int columns, double[] x, int xOffset, double[] y, int yOffset, Activation activation, double treshold, double slope);
+
+	/**
+	 * Same as {@link #denseTransposed(double[], double[], int, int, double[], int, double[], int, Activation, double, double)} with weights stored in float,
+	 * accumulated in double.
+	 */
+	public void denseTransposed(float[] weights, double[] bias, int rows, int columns, double[] x, int xOffset, double[] y, int yOffset, Activation activation, double treshold, double slope);
+
+	/**
+	 * Activations fused by the kernels.
+	 */
+	public enum Activation {
+		IDENTITY,
+		RELU, // max(0, x - treshold)
+		LEAKY_RELU, // max(slope * (x - treshold), x - treshold)
+		SIGMOID
+	}
+
+	/**
+	 * @return the kernels selected for this JVM
+	 */
+	public static Kernels get() {
+		return Backend.KERNELS;
+	}
+
+	/**
+	 * Lazy holder of the selected backend.
+	 */
+	static final class Backend {
+
+		static final Kernels KERNELS = select();
+
+		private Backend() {
+		}
+
+		private static Kernels select() {
+			String wanted = System.getProperty("neuralnetwork.kernels", "vector");
+			if (wanted.equals("vector") && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+				try {
+					return (Kernels) Class.forName("neuralnetwork.kernel.VectorKernels").getDeclaredConstructor().newInstance();
+				} catch (ReflectiveOperationException | LinkageError e) {
+					// Fallback on the scalar backend
+				}
+			}
+			return new ScalarKernels();
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package neuralnetwork.kernel;
+
+/**
+ * Scalar backend of the kernels. Plain loops, auto-vectorized by the JIT where it can.
+ */
+public class ScalarKernels implements Kernels {
+
+	@Override
+	public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+		double sum = 0;
+		for (int i = 0; i < length; i++) {
+			sum += a[aOffset + i] * b[bOffset + i];
+		}
+		return sum;
+	}
+
+	@Override
+	public double dot(float[] a, int aOffset, double[] b, int bOffset, int length) {
+		double sum = 0;
+		for (int i = 0; i < length; i++) {
+			sum += a[aOffset + i] * b[bOffset + i];
+		}
+		return sum;
+	}
+
+	@Override
+	public double sparseDot(double[] values, int[] columns, int from, int to, double[] x) {
+		double sum = 0;
+		for (int k = from; k < to; k++) {
+			sum += values[k] * x[columns[k]];
+		}
+		return sum;
+	}
+
+	@Override
+	public double sparseDot(float[] values, int[] columns, int from, int to, double[] x) {
+		double sum = 0;
+		for (int k = from; k < to; k++) {
+			sum += values[k] * x[columns[k]];
+		}
+		return sum;
+	}
+
+	@Override
+	public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			y[yOffset + i] += alpha * x[xOffset + i];
+		}
+	}
+
+	@Override
+	public void add(double[] x, double[] y, int length) {
+		for (int i = 0; i < length; i++) {
+			y[i] += x[i];
+		}
+	}
+
+	@Override
+	public void update(double[] parameters, double[] gradients, int length, double learningRate, double momemtum) {
+		for (int i = 0; i < length; i++) {
+			parameters[i] -= gradients[i] * learningRate;
+			gradients[i] = momemtum * gradients[i];
+		}
+	}
+
+	@Override
+	public void relu(double[] input, int inputOffset, double[] output, int outputOffset, int length, double treshold) {
+		for (int i = 0; i < length; i++) {
+			output[outputOffset + i] = Math.max(0, input[inputOffset + i] - treshold);
+		}
+	}
+
+	@Override
+	public void leakyRelu(double[] input, int inputOffset, double[] output, int outputOffset, int length, double treshold, double slope) {
+		for (int i = 0; i < length; i++) {
+			double x = input[inputOffset + i] - treshold;
+			output[outputOffset + i] = Math.max(slope * x, x);
+		}
+	}
+
+	@Override
+	public void sigmoid(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			output[outputOffset + i] = 1 / (1 + Math.exp(-input[inputOffset + i]));
+		}
+	}
+
+	@Override
+	public void tanh(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			output[outputOffset + i] = Math.tanh(input[inputOffset + i]);
+		}
+	}
+
+	@Override
+	public void fastTanh(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			output[outputOffset + i] = SpecialFunctions.fastTanh(input[inputOffset + i]);
+		}
+	}
+
+	@Override
+	public void fastSigmoid(double[] input, int inputOffset, double[] output, int outputOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			output[outputOffset + i] = 0.5 + 0.5 * SpecialFunctions.fastTanh(0.5 * input[inputOffset + i]); // fastSigmoid, one inlining level less
+		}
+	}
+
+	@Override
+	public void denseTransposed(double[] weights, double[] bias, int rows, int columns, double[] x, int xOffset, double[] y, int yOffset, Activation activation, double treshold, double slope) {
+		denseColumns(weights, bias, rows, columns, x, xOffset, y, yOffset, 0);
+		activate(y, yOffset, columns, activation, treshold, slope);
+	}
+
+	@Override
+	public void denseTransposed(float[] weights, double[] bias, int rows, int columns, double[] x, int xOffset, double[] y, int yOffset, Activation activation, double treshold, double slope) {
+		denseColumns(weights, bias, rows, columns, x, xOffset, y, yOffset, 0);
+		activate(y, yOffset, columns, activation, treshold, slope);
+	}
+
+	/**
+	 * Accumulate the outputs of {@link #denseTransposed(double[], double[], int, int, double[], int, double[], int, Activation, double, double)}
+	 * from the column from, without activation. Four columns are accumulated together: each column is a chain of dependent additions.
+	 */
+	static void denseColumns(double[] weights, double[] bias, int rows, int columns, double[] x, int xOffset, double[] y, int yOffset, int from) {
+		int i = from;
+		for (; i + 4 <= columns; i += 4) {
+			double sum0 = bias[i];
+			double sum1 = bias[i + 1];
+			double sum2 = bias[i + 2];
+			double sum3 = bias[i + 3];
+			for (int j = 0; j < rows; j++) {
+				double alpha = x[xOffset + j];
+				int row = j * columns + i;
+				sum0 += alpha * weights[row];
+				sum1 += alpha * weights[row + 1];
+				sum2 += alpha * weights[row + 2];
+				sum3 += alpha * weights[row + 3];
+			}
+			y[yOffset + i] = sum0;
+			y[yOffset + i + 1] = sum1;
+			y[yOffset + i + 2] = sum2;
+			y[yOffset + i + 3] = sum3;
+		}
+		for (; i < columns; i++) {
+			double sum = bias[i];
+			for (int j = 0; j < rows; j++) {
+				sum += x[xOffset + j] * weights[j * columns + i];
+			}
+			y[yOffset + i] = sum;
+		}
+	}
+
+	/**
+	 * Same as {@link #denseColumns(double[], double[], int, int, double[], int, double[], int, int)} with weights stored in float.
+	 */
+	static void denseColumns(float[] weights, double[] bias, int rows, int columns, double[] x, int xOffset, double[] y, int yOffset, int from) {
+		int i = from;
+		for (; i + 4 <= columns; i += 4) {
+			double sum0 = bias[i];
+			double sum1 = bias[i + 1];
+			double sum2 = bias[i + 2];
+			double sum3 = bias[i + 3];
+			for (int j = 0; j < rows; j++) {
+				double alpha = x[xOffset + j];
+				int row = j * columns + i;
+				sum0 += alpha * weights[row];
+				sum1 += alpha * weights[row + 1];
+				sum2 += alpha * weights[row + 2];
+				sum3 += alpha * weights[row + 3];
+			}
+			y[yOffset + i] = sum0;
+			y[yOffset + i + 1] = sum1;
+			y[yOffset + i + 2] = sum2;
+			y[yOffset + i + 3] = sum3;
+		}
+		for (; i < columns; i++) {
+			double sum = bias[i];
+			for (int j = 0; j < rows; j++) {
+				sum += x[xOffset + j] * weights[j * columns + i];
+			}
+			y[yOffset + i] = sum;
+		}
+	}
+
+	private static void activate(double[] y, int offset, int length, Activation activation, double treshold, double slope) {
+		switch (activation) {
+		case RELU:
+			for (int i = offset; i < offset + length; i++) {
+				y[i] = Math.max(0, y[i] - treshold);
+			}
+			break;
+		case LEAKY_RELU:
+			for (int i = offset; i < offset + length; i++) {
+				y[i] = Math.max(slope * (y[i] - treshold), y[i] - treshold);
+			}
+			break;
+		case SIGMOID:
+			for (int i = offset; i < offset + length; i++) {
+				y[i] = 1 / (1 + Math.exp(-y[i]));
+			}
+			break;
+		default:
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package neuralnetwork.kernel;
+
+/**
+ * Scalar special functions of the activations: the error function, and the fast approximations with their maximum absolute errors,
+ * measured against Math on a grid of step 1e-5.
+ * The vector backend evaluates the same approximations with the same coefficients.
+ */
+public final class SpecialFunctions {
+
+	// Rational approximation of tanh on [-TANH_CLAMP, TANH_CLAMP]: x * P(x^2) / Q(x^2). The coefficients are the ones of Eigen, fitted for float,
+	// the clamp is moved from 7.9 to 9 where the approximation of 1 is closer in double precision
+	static final double TANH_CLAMP = 9;
+	static final double P13 = -2.76076847742355e-16;
+	static final double P11 = 2.00018790482477e-13;
+	static final double P9 = -8.60467152213735e-11;
+	static final double P7 = 5.12229709037114e-08;
+	static final double P5 = 1.48572235717979e-05;
+	static final double P3 = 6.37261928875436e-04;
+	static final double P1 = 4.89352455891786e-03;
+	static final double Q6 = 1.19825839466702e-06;
+	static final double Q4 = 1.18534705686654e-04;
+	static final double Q2 = 2.26843463243900e-03;
+	static final double Q0 = 4.89352518554385e-03;
+
+	// Rational approximations of erf on [0, 1[ (x * T(x^2) / U(x^2)) and of erfc on [1, 8[ (exp(-x^2) * P(x) / Q(x)), from the Cephes library.
+	// U and Q are monic, their leading coefficient 1 is implicit
+	private static final double[] ERF_T = { 9.60497373987051638749E0, 9.00260197203842689217E1, 2.23200534594684319226E3, 7.00332514112805075473E3,
+			5.55923013010394962768E4 };
+	private static final double[] ERF_U = { 3.35617141647503099647E1, 5.21357949780152679795E2, 4.59432382970980127987E3, 2.26290000613890934246E4,
+			4.92673942608635921086E4 };
+	private static final double[] ERFC_P = { 2.46196981473530512524E-10, 5.64189564831068821977E-1, 7.46321056442269912687E0, 4.86371970985681366614E1,
+			1.96520832956077098242E2, 5.26445194995477358631E2, 9.34528527171957607540E2, 1.02755188689515710272E3, 5.57535335369399327526E2 };
+	private static final double[] ERFC_Q = { 1.32281951154744992508E1, 8.67072140885989742329E1, 3.54937778887819891062E2, 9.75708501743205489753E2,
+			1.82390916687909736289E3, 2.24633760818710981792E3, 1.65666309194161350182E3, 5.57535340817727675546E2 };
+	private static final double ERF_SATURATION = 6; // 1 - erf(6) = 2.2e-17, erf rounds to 1 above
+
+	// Softplus: max(x, 0) + log1p(exp(-|x|)), the second term is linearly interpolated in a table over [0, 16]
+	private static final int SOFTPLUS_STEPS = 128; // Steps per unit
+	private static final double[] SOFTPLUS_TABLE = new double[16 * SOFTPLUS_STEPS + 1];
+
+	static {
+		for (int k = 0; k < SOFTPLUS_TABLE.length; k++) {
+			SOFTPLUS_TABLE[k] = Math.log1p(Math.exp(-(double) k / SOFTPLUS_STEPS));
+		}
+	}
+
+	private SpecialFunctions() {
+	}
+
+	/**
+	 * The error function, 2 / sqrt(pi) * integral of exp(-t^2) over [0, x]. Absolute error below 3e-15.
+	 */
+	public static double erf(double x) {
+		double z = Math.abs(x);
+		if (z >= ERF_SATURATION) {
+			return Math.copySign(1, x);
+		}
+		if (z < 1) {
+			double z2 = z * z;
+			return x * polynomial(z2, ERF_T) / monicPolynomial(z2, ERF_U);
+		}
+		double erfc = Math.exp(-z * z) * polynomial(z, ERFC_P) / monicPolynomial(z, ERFC_Q);
+		return Math.copySign(1 - erfc, x);
+	}
+
+	private static double polynomial(double x, double[] coefficients) {
+		double value = coefficients[0];
+		for (int k = 1; k < coefficients.length; k++) {
+			value = value * x + coefficients[k];
+		}
+		return value;
+	}
+
+	private static double monicPolynomial(double x, double[] coefficients) {
+		double value = x + coefficients[0];
+		for (int k = 1; k < coefficients.length; k++) {
+			value = value * x + coefficients[k];
+		}
+		return value;
+	}
+
+	/**
+	 * Rational approximation of tanh. Maximum absolute error 2.6e-8, no call to exp.
+	 */
+	public static double fastTanh(double x) {
+		if (x > TANH_CLAMP) { // Comparisons rather than Math.min and Math.max, which are slow on scalars
+			x = TANH_CLAMP;
+		} else if (x < -TANH_CLAMP) {
+			x = -TANH_CLAMP;
+		}
+		double x2 = x * x;
+		double p = P13;
+		p = p * x2 + P11;
+		p = p * x2 + P9;
+		p = p * x2 + P7;
+		p = p * x2 + P5;
+		p = p * x2 + P3;
+		p = p * x2 + P1;
+		double q = Q6;
+		q = q * x2 + Q4;
+		q = q * x2 + Q2;
+		q = q * x2 + Q0;
+		return x * p / q;
+	}
+
+	/**
+	 * Sigmoid from the rational tanh: 0.5 + 0.5 * tanh(x / 2). Maximum absolute error 1.3e-8.
+	 */
+	public static double fastSigmoid(double x) {
+		return 0.5 + 0.5 * fastTanh(0.5 * x);
+	}
+
+	/**
+	 * Softplus, log(1 + exp(x)), from a table of log1p(exp(-t)) with 128 steps per unit and a linear interpolation.
+	 * Maximum absolute error 2e-6.
+	 */
+	public static double fastSoftplus(double x) {
+		double positive = Math.max(x, 0);
+		double t = Math.abs(x) * SOFTPLUS_STEPS;
+		if (t >= SOFTPLUS_TABLE.length - 1) {
+			return positive;
+		}
+		int k = (int) t;
+		double low = SOFTPLUS_TABLE[k];
+		return positive + low + (t - k) * (SOFTPLUS_TABLE[k + 1] - low);
+	}
+}
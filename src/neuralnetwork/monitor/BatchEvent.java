@@ -0,0 +1,30 @@
+package neuralnetwork.monitor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of a batch of a training. Disabled by default, enable it in the recording settings.
+ */
+@Name("neuralnetwork.Batch")
+@Label("Training Batch")
+@Category({"Neural Network", "Training"})
+@Description("The forward and backward passes of a batch of the training of a neural network")
+@Enabled(false)
+public class BatchEvent extends jdk.jfr.Event {
+
+	@Label("Epoch")
+	public int epoch;
+
+	@Label("Batch")
+	public int batch;
+
+	@Label("Size")
+	public int size;
+
+	@Label("Error")
+	public double error;
+}
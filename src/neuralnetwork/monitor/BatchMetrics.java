@@ -0,0 +1,63 @@
+package neuralnetwork.monitor;
+
+/**
+ * Metrics of a batch of a training. The same instance is reused for all the batches of a training, so it must not be kept after the callback.
+ * @see TrainingListener#batchEnded(BatchMetrics)
+ */
+public class BatchMetrics {
+
+	private int epoch; // The index of the epoch, from 0
+	private int batch; // The index of the batch in the epoch, from 0
+	private int batches; // The number of batches of an epoch
+	private int size; // The number of samples of the batch
+	private double error; // The mean error of the samples of the batch
+	private long durationNanos; // The time spent on the forward and backward passes of the batch
+	private final double[] gradientNorms; // The L2 norm of the gradients of each layer, before the update
+
+	public BatchMetrics(int layers) {
+		this.gradientNorms = new double[layers];
+	}
+
+	/**
+	 * Set the metrics of a new batch. The gradient norms are written directly in {@link #getGradientNorms()}.
+	 */
+	public void set(int epoch, int batch, int batches, int size, double error, long durationNanos) {
+		this.epoch = epoch;
+		this.batch = batch;
+		this.batches = batches;
+		this.size = size;
+		this.error = error;
+		this.durationNanos = durationNanos;
+	}
+
+	public int getEpoch() {
+		return epoch;
+	}
+
+	public int getBatch() {
+		return batch;
+	}
+
+	public int getBatches() {
+		return batches;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public double getError() {
+		return error;
+	}
+
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	/**
+	 * @return the L2 norm of the gradients of each layer, 0 for the layers without parameters
+	 */
+	public double[] getGradientNorms() {
+		return gradientNorms;
+	}
+}
@@ -0,0 +1,62 @@
+package neuralnetwork.monitor;
+
+import java.util.List;
+
+import neuralnetwork.Layer;
+import neuralnetwork.NeuralNetwork;
+
+/**
+ * Print the progress of the trainings on the standard output. Used by the training when verbose is true.
+ */
+public class ConsoleListener implements TrainingListener {
+
+	private final boolean batches; // True to print each batch and the gradients of the layers instead of each epoch
+	private NeuralNetwork network;
+	private int epochs;
+
+	/**
+	 * Create a console listener.
+	 * @param batches true to print each batch and the gradients of the layers, false to print each epoch
+	 */
+	public ConsoleListener(boolean batches) {
+		this.batches = batches;
+	}
+
+	@Override
+	public void trainingStarted(NeuralNetwork network, int epochs, int samples) {
+		this.network = network;
+		this.epochs = epochs;
+	}
+
+	@Override
+	public void batchEnded(BatchMetrics metrics) {
+		if (!batches) {
+			return;
+		}
+		System.out.println("Epoch " + metrics.getEpoch() + "/" + epochs + "- Batch " + (metrics.getBatch() + 1) + "/" + metrics.getBatches() + " - error: " + metrics.getError());
+		List<Layer> layers = network.getLayers();
+		for (int i = 0; i < layers.size(); i++) {
+			System.out.println("Layer " + (i + 1) + ":");
+			layers.get(i).resumeGradient();
+		}
+	}
+
+	@Override
+	public void epochEnded(EpochMetrics metrics) {
+		if (batches) {
+			return;
+		}
+		System.out.println("Epoch " + (metrics.getEpoch() + 1) + "/" + epochs + " (" + metrics.getDurationNanos() / 1_000_000 + " ms, "
+			+ metrics.getStallNanos() / 1_000_000 + " ms waiting for data, " + Math.round(metrics.getSamplesPerSecond()) + " samples/s) - error: " + metrics.getError()
+			+ (Double.isNaN(metrics.getValidationError()) ? "" : " - validation error: " + metrics.getValidationError()));
+	}
+
+	@Override
+	public void trainingEnded(NeuralNetwork network, int epochs, long durationNanos) {
+		if (epochs < this.epochs) {
+			System.out.println("Training stopped after " + epochs + "/" + this.epochs + " epochs.");
+		}
+		System.out.println("Training finished in " + durationNanos / 1_000_000 + " ms.");
+		System.out.println("Modifier variables count: " + network.getParameterCount() * epochs);
+	}
+}
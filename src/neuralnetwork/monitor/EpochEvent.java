@@ -0,0 +1,41 @@
+package neuralnetwork.monitor;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of an epoch of a training, emitted whether or not a listener is registered.
+ */
+@Name("neuralnetwork.Epoch")
+@Label("Training Epoch")
+@Category({"Neural Network", "Training"})
+@Description("An epoch of the training of a neural network")
+public class EpochEvent extends jdk.jfr.Event {
+
+	@Label("Epoch")
+	public int epoch;
+
+	@Label("Samples")
+	public int samples;
+
+	@Label("Error")
+	public double error;
+
+	@Label("Validation Error")
+	public double validationError;
+
+	@Label("Learning Rate")
+	public double learningRate;
+
+	@Label("Stall Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long stallTime;
+
+	@Label("Allocated")
+	@DataAmount
+	public long allocated;
+}
@@ -0,0 +1,110 @@
+package neuralnetwork.monitor;
+
+/**
+ * Metrics of an epoch of a training.
+ * @see TrainingListener#epochEnded(EpochMetrics)
+ */
+public class EpochMetrics {
+
+	private final int epoch; // The index of the epoch, from 0
+	private final int epochs; // The planned number of epochs
+	private final int samples; // The number of training samples of the epoch
+	private final double error; // The mean training error of the epoch
+	private final double validationError; // The mean validation error, NaN without validation
+	private final double learningRate; // The learning rate of the epoch
+	private final long durationNanos; // The duration of the epoch, validation included
+	private final long stallNanos; // The time the training waited for the batches
+	private final long allocatedBytes; // The bytes allocated by the training thread, -1 if the JVM does not measure it
+	private final long[] forwardNanos; // The time spent in the forward pass of each layer
+	private final long[] backwardNanos; // The time spent in the backward pass of each layer
+	private final double[] gradientNorms; // The mean over the batches of the L2 norm of the gradients of each layer
+
+	public EpochMetrics(int epoch, int epochs, int samples, double error, double validationError, double learningRate, long durationNanos,
+			long stallNanos, long allocatedBytes, long[] forwardNanos, long[] backwardNanos, double[] gradientNorms) {
+		this.epoch = epoch;
+		this.epochs = epochs;
+		this.samples = samples;
+		this.error = error;
+		this.validationError = validationError;
+		this.learningRate = learningRate;
+		this.durationNanos = durationNanos;
+		this.stallNanos = stallNanos;
+		this.allocatedBytes = allocatedBytes;
+		this.forwardNanos = forwardNanos;
+		this.backwardNanos = backwardNanos;
+		this.gradientNorms = gradientNorms;
+	}
+
+	public int getEpoch() {
+		return epoch;
+	}
+
+	public int getEpochs() {
+		return epochs;
+	}
+
+	public int getSamples() {
+		return samples;
+	}
+
+	public double getError() {
+		return error;
+	}
+
+	/**
+	 * @return the mean validation error of the epoch, NaN if the training has no validation
+	 */
+	public double getValidationError() {
+		return validationError;
+	}
+
+	public double getLearningRate() {
+		return learningRate;
+	}
+
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	/**
+	 * @return the time the training waited for the batches to be loaded, in nanoseconds
+	 */
+	public long getStallNanos() {
+		return stallNanos;
+	}
+
+	/**
+	 * @return the number of training samples processed per second, validation included in the time
+	 */
+	public double getSamplesPerSecond() {
+		return samples * 1e9 / Math.max(1, durationNanos);
+	}
+
+	/**
+	 * @return the bytes allocated by the training thread during the epoch, -1 if the JVM does not measure it. The workers of a parallel training are not counted
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return the time spent in the forward pass of each layer in nanoseconds, summed over the workers of a parallel training
+	 */
+	public long[] getForwardNanos() {
+		return forwardNanos;
+	}
+
+	/**
+	 * @return the time spent in the backward pass of each layer in nanoseconds, summed over the workers of a parallel training
+	 */
+	public long[] getBackwardNanos() {
+		return backwardNanos;
+	}
+
+	/**
+	 * @return the mean over the batches of the L2 norm of the gradients of each layer
+	 */
+	public double[] getGradientNorms() {
+		return gradientNorms;
+	}
+}
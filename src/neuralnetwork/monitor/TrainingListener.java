@@ -0,0 +1,40 @@
+package neuralnetwork.monitor;
+
+import neuralnetwork.NeuralNetwork;
+
+/**
+ * Receive the progress and the metrics of the trainings of a network. The callbacks run on the training thread, between two batches,
+ * so they should be fast. The metrics are only measured when at least one listener is registered.
+ * @see NeuralNetwork#addTrainingListener(TrainingListener)
+ * @see ConsoleListener
+ */
+public interface TrainingListener {
+
+	/**
+	 * Called before the first epoch of a training.
+	 * @param network the network being trained
+	 * @param epochs the planned number of epochs
+	 * @param samples the number of training samples of each epoch
+	 */
+	public default void trainingStarted(NeuralNetwork network, int epochs, int samples) {}
+
+	/**
+	 * Called after the gradients of each batch are computed, before the parameters are updated.
+	 * @param metrics the metrics of the batch, only valid during the call
+	 */
+	public default void batchEnded(BatchMetrics metrics) {}
+
+	/**
+	 * Called at the end of each complete epoch, after the validation.
+	 * @param metrics the metrics of the epoch
+	 */
+	public default void epochEnded(EpochMetrics metrics) {}
+
+	/**
+	 * Called at the end of a training, before the buffers of the training are released.
+	 * @param network the network being trained
+	 * @param epochs the number of complete epochs, lower than planned if the training has been stopped
+	 * @param durationNanos the duration of the training in nanoseconds
+	 */
+	public default void trainingEnded(NeuralNetwork network, int epochs, long durationNanos) {}
+}
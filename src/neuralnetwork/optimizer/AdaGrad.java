@@ -0,0 +1,60 @@
+package neuralnetwork.optimizer;
+
+/**
+ * AdaGrad: the step of each parameter is its gradient divided by the root of the sum of all its squared gradients,
+ * so the parameters with large or frequent gradients slow down.
+ */
+public class AdaGrad implements Optimizer {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double epsilon;
+	private double[][] squares = null;
+
+	/**
+	 * Create an AdaGrad optimizer with epsilon = 1e-8.
+	 */
+	public AdaGrad() {
+		this(1e-8);
+	}
+
+	/**
+	 * Create an AdaGrad optimizer.
+	 * @param epsilon the term added to the root of the sum to avoid divisions by 0
+	 */
+	public AdaGrad(double epsilon) {
+		this.epsilon = epsilon;
+	}
+
+	@Override
+	public void init(double[][] parameters) {
+		squares = Optimizer.allocate(parameters, squares);
+	}
+
+	@Override
+	public void step(double[][] parameters, double[][] gradients, double learningRate) {
+		for (int b = 0; b < parameters.length; b++) {
+			double[] p = parameters[b];
+			double[] g = gradients[b];
+			double[] s = squares[b];
+			for (int i = 0; i < p.length; i++) {
+				double gradient = g[i];
+				s[i] += gradient * gradient;
+				p[i] -= learningRate * gradient / (Math.sqrt(s[i]) + epsilon);
+				g[i] = 0;
+			}
+		}
+	}
+
+	@Override
+	public AdaGrad copy() {
+		AdaGrad copy = new AdaGrad(epsilon);
+		copy.squares = Optimizer.copyState(squares);
+		return copy;
+	}
+
+	@Override
+	public void reset() {
+		squares = null;
+	}
+}
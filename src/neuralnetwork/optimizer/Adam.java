@@ -0,0 +1,87 @@
+package neuralnetwork.optimizer;
+
+/**
+ * Adam: the step of each parameter is its first moment divided by the square root of its second moment, both estimated with
+ * exponential moving averages and corrected for their initialization to 0.
+ */
+public class Adam implements Optimizer {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double beta1; // Decay of the first moment
+	private final double beta2; // Decay of the second moment
+	private final double epsilon;
+	private double[][] firstMoments = null;
+	private double[][] secondMoments = null;
+	private long steps = 0;
+
+	/**
+	 * Create an Adam optimizer with the usual parameters: beta1 = 0.9, beta2 = 0.999, epsilon = 1e-8.
+	 */
+	public Adam() {
+		this(0.9, 0.999, 1e-8);
+	}
+
+	/**
+	 * Create an Adam optimizer.
+	 * @param beta1 the decay of the first moment, between 0 and 1
+	 * @param beta2 the decay of the second moment, between 0 and 1
+	 * @param epsilon the term added to the root of the second moment to avoid divisions by 0
+	 */
+	public Adam(double beta1, double beta2, double epsilon) {
+		if (beta1 < 0 || beta1 >= 1 || beta2 < 0 || beta2 >= 1) {
+			throw new IllegalArgumentException("The decays must be between 0 and 1.");
+		}
+		this.beta1 = beta1;
+		this.beta2 = beta2;
+		this.epsilon = epsilon;
+	}
+
+	@Override
+	public void init(double[][] parameters) {
+		double[][] first = Optimizer.allocate(parameters, firstMoments);
+		if (first != firstMoments) {
+			firstMoments = first;
+			secondMoments = Optimizer.allocate(parameters, null);
+			steps = 0;
+		}
+	}
+
+	@Override
+	public void step(double[][] parameters, double[][] gradients, double learningRate) {
+		steps++;
+		// The bias corrections are folded in the step size and in epsilon
+		double correction2 = Math.sqrt(1 - Math.pow(beta2, steps));
+		double stepSize = learningRate * correction2 / (1 - Math.pow(beta1, steps));
+		double epsilonHat = epsilon * correction2;
+		for (int b = 0; b < parameters.length; b++) {
+			double[] p = parameters[b];
+			double[] g = gradients[b];
+			double[] m = firstMoments[b];
+			double[] v = secondMoments[b];
+			for (int i = 0; i < p.length; i++) {
+				double gradient = g[i];
+				m[i] = beta1 * m[i] + (1 - beta1) * gradient;
+				v[i] = beta2 * v[i] + (1 - beta2) * gradient * gradient;
+				p[i] -= stepSize * m[i] / (Math.sqrt(v[i]) + epsilonHat);
+				g[i] = 0;
+			}
+		}
+	}
+
+	@Override
+	public Adam copy() {
+		Adam copy = new Adam(beta1, beta2, epsilon);
+		copy.firstMoments = Optimizer.copyState(firstMoments);
+		copy.secondMoments = Optimizer.copyState(secondMoments);
+		copy.steps = steps;
+		return copy;
+	}
+
+	@Override
+	public void reset() {
+		firstMoments = null;
+		secondMoments = null;
+		steps = 0;
+	}
+}
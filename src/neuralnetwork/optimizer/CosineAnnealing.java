@@ -0,0 +1,34 @@
+package neuralnetwork.optimizer;
+
+/**
+ * Decrease the learning rate from the rate of the network to a minimum along a half cosine, over a given number of epochs.
+ * The minimum is kept after the last epoch.
+ */
+public class CosineAnnealing implements LearningRateSchedule {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int epochs;
+	private final double minRate;
+
+	/**
+	 * Create a cosine annealing.
+	 * @param epochs the number of epochs of the decrease, usually the number of epochs of the training
+	 * @param minRate the learning rate reached at the end
+	 */
+	public CosineAnnealing(int epochs, double minRate) {
+		if (epochs < 1) {
+			throw new IllegalArgumentException("The number of epochs must be at least 1.");
+		}
+		this.epochs = epochs;
+		this.minRate = minRate;
+	}
+
+	@Override
+	public double learningRate(int epoch, double baseRate, double lastError) {
+		if (epoch >= epochs) {
+			return minRate;
+		}
+		return minRate + (baseRate - minRate) * (1 + Math.cos(Math.PI * epoch / epochs)) / 2;
+	}
+}
@@ -0,0 +1,24 @@
+package neuralnetwork.optimizer;
+
+import java.io.Serializable;
+
+/**
+ * Learning rate of each epoch of a training, computed from the learning rate of the network.
+ * @see neuralnetwork.NeuralNetwork#setLearningRateSchedule(LearningRateSchedule)
+ */
+public interface LearningRateSchedule extends Serializable {
+
+	/**
+	 * Compute the learning rate of an epoch.
+	 * @param epoch the index of the epoch about to start, from 0
+	 * @param baseRate the learning rate of the network
+	 * @param lastError the monitored error of the previous epoch (validation error if there is a validation set), NaN before the first epoch
+	 * @return the learning rate of the epoch
+	 */
+	public double learningRate(int epoch, double baseRate, double lastError);
+
+	/**
+	 * Forget the state of the schedule, called at the start of each training. Stateless schedules ignore it.
+	 */
+	public default void reset() {}
+}
@@ -0,0 +1,63 @@
+package neuralnetwork.optimizer;
+
+/**
+ * Stochastic gradient descent with Nesterov momentum: the parameters move along a velocity accumulating the gradients,
+ * and the step looks ahead along the velocity.
+ */
+public class Nesterov implements Optimizer {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double momemtum;
+	private double[][] velocities = null;
+
+	/**
+	 * Create a Nesterov optimizer with a momemtum of 0.9.
+	 */
+	public Nesterov() {
+		this(0.9);
+	}
+
+	/**
+	 * Create a Nesterov optimizer.
+	 * @param momemtum the momemtum, between 0 and 1
+	 */
+	public Nesterov(double momemtum) {
+		if (momemtum < 0 || momemtum >= 1) {
+			throw new IllegalArgumentException("The momemtum must be between 0 and 1.");
+		}
+		this.momemtum = momemtum;
+	}
+
+	@Override
+	public void init(double[][] parameters) {
+		velocities = Optimizer.allocate(parameters, velocities);
+	}
+
+	@Override
+	public void step(double[][] parameters, double[][] gradients, double learningRate) {
+		for (int b = 0; b < parameters.length; b++) {
+			double[] p = parameters[b];
+			double[] g = gradients[b];
+			double[] v = velocities[b];
+			for (int i = 0; i < p.length; i++) {
+				double gradient = g[i];
+				v[i] = momemtum * v[i] + gradient;
+				p[i] -= learningRate * (gradient + momemtum * v[i]);
+				g[i] = 0;
+			}
+		}
+	}
+
+	@Override
+	public Nesterov copy() {
+		Nesterov copy = new Nesterov(momemtum);
+		copy.velocities = Optimizer.copyState(velocities);
+		return copy;
+	}
+
+	@Override
+	public void reset() {
+		velocities = null;
+	}
+}
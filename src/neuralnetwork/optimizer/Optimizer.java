@@ -0,0 +1,97 @@
+package neuralnetwork.optimizer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Update rule of the parameters of a network. The optimizer owns the state of each parameter (moments, accumulated squares...),
+ * stored in blocks matching the parameter blocks of the layers, and is saved with the network so a training can be resumed.
+ * <p>
+ * The gradients given to {@link #step(double[][], double[][], double)} are the sums of the gradients of the batch,
+ * the optimizer must reset them to 0 once consumed.
+ * @see neuralnetwork.Layer#getParameterBlocks()
+ */
+public interface Optimizer extends Serializable {
+
+	/**
+	 * Prepare the state for the given parameter blocks. The current state is kept if it matches the blocks, so a network
+	 * trained again continues with its moments.
+	 * @param parameters the parameter blocks of the network
+	 */
+	public void init(double[][] parameters);
+
+	/**
+	 * Update the parameters with their gradients, then reset the gradients to 0.
+	 * @param parameters the parameter blocks of the network
+	 * @param gradients the gradient blocks, same shapes as the parameters
+	 * @param learningRate the learning rate of the network
+	 */
+	public void step(double[][] parameters, double[][] gradients, double learningRate);
+
+	/**
+	 * Forget the state, the next {@link #init(double[][])} starts from scratch.
+	 */
+	public void reset();
+
+	/**
+	 * Copy the optimizer with its state, so a checkpoint can be written while this optimizer keeps stepping.
+	 * The default implementation goes through the serialized form; the built-in optimizers copy their blocks directly.
+	 * @return the copy
+	 */
+	public default Optimizer copy() {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+				oos.writeObject(this);
+			}
+			try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+				return (Optimizer) ois.readObject();
+			}
+		} catch (IOException | ClassNotFoundException e) {
+			throw new IllegalStateException("Cannot copy the optimizer " + getClass().getSimpleName() + ".", e);
+		}
+	}
+
+	/**
+	 * Copy state blocks.
+	 * @param state the blocks, or null
+	 * @return the copy, null if the blocks are null
+	 */
+	public static double[][] copyState(double[][] state) {
+		if (state == null) {
+			return null;
+		}
+		double[][] copy = new double[state.length][];
+		for (int b = 0; b < state.length; b++) {
+			copy[b] = state[b].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * Allocate state blocks with the shapes of the parameter blocks, reusing the previous state if it already has these shapes.
+	 * @param parameters the parameter blocks
+	 * @param state the previous state, or null
+	 * @return the state blocks, filled with 0 if new
+	 */
+	public static double[][] allocate(double[][] parameters, double[][] state) {
+		if (state != null && state.length == parameters.length) {
+			boolean matches = true;
+			for (int b = 0; b < parameters.length; b++) {
+				matches &= state[b].length == parameters[b].length;
+			}
+			if (matches) {
+				return state;
+			}
+		}
+		state = new double[parameters.length][];
+		for (int b = 0; b < parameters.length; b++) {
+			state[b] = new double[parameters[b].length];
+		}
+		return state;
+	}
+}
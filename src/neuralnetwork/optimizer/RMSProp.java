@@ -0,0 +1,58 @@
+package neuralnetwork.optimizer;
+
+/**
+ * RMSProp: the step of each parameter is its gradient divided by the root of a moving average of its squared gradients.
+ */
+public class RMSProp implements Optimizer {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double decay; // Decay of the average of the squared gradients
+	private final double epsilon;
+	private double[][] squares = null;
+
+	/**
+	 * Create a RMSProp optimizer with the usual parameters: decay = 0.9, epsilon = 1e-8.
+	 */
+	public RMSProp() {
+		this(0.9, 1e-8);
+	}
+
+	/**
+	 * Create a RMSProp optimizer.
+	 * @param decay the decay of the average of the squared gradients, between 0 and 1
+	 * @param epsilon the term added to the root of the average to avoid divisions by 0
+	 */
+	public RMSProp(double decay, double epsilon) {
+		if (decay < 0 || decay >= 1) {
+			throw new IllegalArgumentException("The decay must be between 0 and 1.");
+		}
+		this.decay = decay;
+		this.epsilon = epsilon;
+	}
+
+	@Override
+	public void init(double[][] parameters) {
+		squares = Optimizer.allocate(parameters, squares);
+	}
+
+	@Override
+	public void step(double[][] parameters, double[][] gradients, double learningRate) {
+		for (int b = 0; b < parameters.length; b++) {
+			double[] p = parameters[b];
+			double[] g = gradients[b];
+			double[] s = squares[b];
+			for (int i = 0; i < p.length; i++) {
+				double gradient = g[i];
+				s[i] = decay * s[i] + (1 - decay) * gradient * gradient;
+				p[i] -= learningRate * gradient / (Math.sqrt(s[i]) + epsilon);
+				g[i] = 0;
+			}
+		}
+	}
+
+	@Override
+	public void reset() {
+		squares = null;
+	}
+}
@@ -0,0 +1,55 @@
+package neuralnetwork.optimizer;
+
+/**
+ * Multiply the learning rate by a factor when the monitored error has not improved for a given number of epochs.
+ */
+public class ReduceOnPlateau implements LearningRateSchedule {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double factor;
+	private final int patience;
+	private final double minDelta;
+	private final double minRate;
+	private double scale = 1; // The product of the reductions applied so far
+	private double bestError = Double.POSITIVE_INFINITY;
+	private int wait = 0; // The number of epochs without improvement
+
+	/**
+	 * Create a reduction on plateau.
+	 * @param factor the factor applied at each reduction, between 0 and 1
+	 * @param patience the number of epochs without improvement before a reduction
+	 * @param minDelta the minimal decrease of the error counted as an improvement
+	 * @param minRate the learning rate is never reduced below this rate
+	 */
+	public ReduceOnPlateau(double factor, int patience, double minDelta, double minRate) {
+		if (factor <= 0 || factor >= 1) {
+			throw new IllegalArgumentException("The factor must be between 0 and 1.");
+		}
+		this.factor = factor;
+		this.patience = patience;
+		this.minDelta = minDelta;
+		this.minRate = minRate;
+	}
+
+	@Override
+	public double learningRate(int epoch, double baseRate, double lastError) {
+		if (!Double.isNaN(lastError)) {
+			if (lastError < bestError - minDelta) {
+				bestError = lastError;
+				wait = 0;
+			} else if (++wait >= patience) {
+				scale *= factor;
+				wait = 0;
+			}
+		}
+		return Math.max(minRate, baseRate * scale);
+	}
+
+	@Override
+	public void reset() {
+		scale = 1;
+		bestError = Double.POSITIVE_INFINITY;
+		wait = 0;
+	}
+}
@@ -0,0 +1,30 @@
+package neuralnetwork.optimizer;
+
+/**
+ * Multiply the learning rate by a factor every given number of epochs.
+ */
+public class StepDecay implements LearningRateSchedule {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int stepSize;
+	private final double factor;
+
+	/**
+	 * Create a step decay.
+	 * @param stepSize the number of epochs between two decays
+	 * @param factor the factor applied at each decay, between 0 and 1
+	 */
+	public StepDecay(int stepSize, double factor) {
+		if (stepSize < 1) {
+			throw new IllegalArgumentException("The step size must be at least 1.");
+		}
+		this.stepSize = stepSize;
+		this.factor = factor;
+	}
+
+	@Override
+	public double learningRate(int epoch, double baseRate, double lastError) {
+		return baseRate * Math.pow(factor, epoch / stepSize);
+	}
+}
@@ -0,0 +1,74 @@
+package neuralnetwork.search;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An immutable set of named hyperparameter values, tried by a {@link Trial}.
+ */
+public final class Configuration {
+
+	private final Map<String, Double> values;
+
+	Configuration(Map<String, Double> values) {
+		this.values = values;
+	}
+
+	Configuration with(String name, double value) {
+		Map<String, Double> copy = new LinkedHashMap<String, Double>(values);
+		copy.put(name, value);
+		return new Configuration(copy);
+	}
+
+	/**
+	 * @param name the name of the parameter
+	 * @return true if the configuration sets the parameter
+	 */
+	public boolean has(String name) {
+		return values.containsKey(name);
+	}
+
+	/**
+	 * @param name the name of the parameter
+	 * @return the value of the parameter
+	 * @throws IllegalArgumentException if the configuration does not set the parameter
+	 */
+	public double get(String name) {
+		Double value = values.get(name);
+		if (value == null) {
+			throw new IllegalArgumentException("The configuration " + this + " has no parameter " + name + ".");
+		}
+		return value;
+	}
+
+	/**
+	 * @param name the name of the parameter
+	 * @return the value of the parameter rounded to an int, for the sizes such as the layer widths
+	 */
+	public int getInt(String name) {
+		return (int) Math.round(get(name));
+	}
+
+	/**
+	 * @param name the name of the parameter
+	 * @param defaultValue the value returned if the configuration does not set the parameter
+	 * @return the value of the parameter
+	 */
+	public double get(String name, double defaultValue) {
+		Double value = values.get(name);
+		return value != null ? value : defaultValue;
+	}
+
+	/**
+	 * @return a read-only view of the values, in the order of the search space
+	 */
+	public Map<String, Double> getValues() {
+		return Collections.unmodifiableMap(values);
+	}
+
+	@Override
+	public String toString() {
+		return values.toString();
+	}
+}
@@ -0,0 +1,451 @@
+package neuralnetwork.search;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import neuralnetwork.Checkpoint;
+import neuralnetwork.NeuralNetwork;
+import neuralnetwork.data.Dataset;
+import neuralnetwork.monitor.EpochMetrics;
+import neuralnetwork.monitor.TrainingListener;
+
+/**
+ * Train many configurations of a network concurrently, on a bounded pool of workers, and rank them by their monitored error
+ * (the validation error if a validation set is given, the training error otherwise).
+ * <p>
+ * Three strategies are available: {@link #grid(SearchSpace)} trains every combination of the values of the space, {@link #random(SearchSpace, int)}
+ * trains random configurations, and {@link #successiveHalving(SearchSpace, int, int, int)} trains random configurations for a few epochs,
+ * keeps the best fraction and trains them longer, until the full number of epochs. The grid and random searches can also stop the losing trials
+ * early with the median stopping rule, see {@link #setMedianStopping(int)}.
+ * <p>
+ * Every trial reads the same dataset instances, which are only read, so the samples are never copied.
+ * The networks are built by a factory from their configuration; the parameters {@link #LEARNING_RATE}, {@link #BATCH_SIZE} and {@link #MOMEMTUM}
+ * of a configuration are applied by the search, the others (layer widths...) are read by the factory.
+ */
+public class HyperparameterSearch {
+
+	public static final String LEARNING_RATE = "learningRate"; // Set on the network built by the factory
+	public static final String BATCH_SIZE = "batchSize"; // Replaces the batch size of the search
+	public static final String MOMEMTUM = "momemtum"; // Replaces the momemtum of the search
+
+	private static final int MEDIAN_PEERS = 3; // The minimal number of other trials at an epoch before the median stopping rule applies
+
+	private final Function<Configuration, NeuralNetwork> factory;
+	private final Dataset trainingSet;
+	private final Dataset validationSet;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private int epochs = 10;
+	private int batchSize = 32;
+	private double momemtum = 0;
+	private long seed = 0;
+	private int medianStoppingEpochs = 0;
+	private boolean verbose = false;
+
+	/**
+	 * @param factory builds the network of a configuration, without training it. Called concurrently by the workers
+	 * @param trainingSet the training samples, shared by all the trials
+	 * @param validationSet the samples the trials are ranked on, null to rank them on their training error
+	 */
+	public HyperparameterSearch(Function<Configuration, NeuralNetwork> factory, Dataset trainingSet, Dataset validationSet) {
+		this.factory = factory;
+		this.trainingSet = trainingSet;
+		this.validationSet = validationSet;
+	}
+
+	/**
+	 * Set the number of trials trained at the same time. Each trial trains with the parallelism set by the factory, 1 by default.
+	 * @param parallelism the number of workers, at least 1
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be at least 1.");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @param epochs the number of epochs of each trial, the maximum for the successive halving
+	 */
+	public void setEpochs(int epochs) {
+		if (epochs < 1) {
+			throw new IllegalArgumentException("The number of epochs must be at least 1.");
+		}
+		this.epochs = epochs;
+	}
+
+	/**
+	 * @param batchSize the batch size of the trials whose configuration has no {@link #BATCH_SIZE}
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param momemtum the momemtum of the trials whose configuration has no {@link #MOMEMTUM}
+	 */
+	public void setMomemtum(double momemtum) {
+		this.momemtum = momemtum;
+	}
+
+	/**
+	 * Set the seed of the random configurations. The shuffles of the trial i use the seed + i, so a search can be repeated.
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Stop the trials of the grid and random searches whose monitored error at the end of an epoch is above the median of the errors
+	 * of the other trials at the same epoch, once they trained for a minimal number of epochs and at least 3 other trials reached the epoch.
+	 * @param minEpochs the number of epochs a trial trains before it can be stopped, 0 to never stop the trials
+	 */
+	public void setMedianStopping(int minEpochs) {
+		if (minEpochs < 0) {
+			throw new IllegalArgumentException("The number of epochs must be positive.");
+		}
+		this.medianStoppingEpochs = minEpochs;
+	}
+
+	/**
+	 * @param verbose true to print each trial when it ends
+	 */
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	// SECTION : Strategies
+	/**
+	 * Train every configuration of the grid of a search space.
+	 * @param space the search space, with values only
+	 * @return the trials, best first
+	 */
+	public List<Trial> grid(SearchSpace space) {
+		return search(space.grid());
+	}
+
+	/**
+	 * Train random configurations of a search space.
+	 * @param space the search space
+	 * @param count the number of configurations
+	 * @return the trials, best first
+	 */
+	public List<Trial> random(SearchSpace space, int count) {
+		return search(sample(space, count));
+	}
+
+	/**
+	 * Successive halving: train random configurations for minEpochs epochs, keep the best 1 / eta of them and train them up to eta times more epochs,
+	 * and so on until one configuration is left, which is then trained for all the epochs of the search. The dropped trials are marked as stopped.
+	 * Spends most of the budget on the promising configurations: with 27 configurations, 1 epoch and eta = 3, the rungs train 27 trials for 1 epoch,
+	 * 9 for 3 epochs, 3 for 9 epochs and the last one for 27 epochs.
+	 * <p>
+	 * Each trial plans the epochs of the search and is paused at the end of its rung: the survivors resume from a {@link Checkpoint}, with their learning
+	 * rate schedule, optimizer state, momemtum, shuffles and early stopping, so the rungs of a trial are equivalent to one uninterrupted training.
+	 * The checkpoints are written every minEpochs epochs in a temporary directory, deleted at the end of the search; they replace the checkpoints
+	 * set by the factory. A trial stopped by its own early stopping is ranked with its last errors but not trained further.
+	 * @param space the search space
+	 * @param count the number of configurations
+	 * @param minEpochs the number of epochs of the first rung
+	 * @param eta the reduction factor of each rung, at least 2
+	 * @return the trials, the survivors of the last rung first, best first
+	 */
+	public List<Trial> successiveHalving(SearchSpace space, int count, int minEpochs, int eta) {
+		if (minEpochs < 1 || eta < 2) {
+			throw new IllegalArgumentException("The successive halving needs at least 1 epoch and a reduction factor of at least 2.");
+		}
+		List<Trial> trials = trials(sample(space, count));
+		List<Trial> rung = new ArrayList<Trial>(trials);
+		int budget = Math.min(minEpochs, epochs);
+		int previousBudget = 0;
+		Path directory = createCheckpointDirectory();
+		ExecutorService pool = newPool();
+		try {
+			while (true) {
+				int rungBudget = budget;
+				int startBudget = previousBudget;
+				List<Trial> resumed = new ArrayList<Trial>(rung.size());
+				for (Trial trial : rung) {
+					if (trial.getEpochs() == startBudget) { // The others were stopped by their early stopping
+						resumed.add(trial);
+					}
+				}
+				run(pool, resumed, trial -> trainRung(trial, rungBudget, minEpochs, directory));
+				List<Trial> ranked = ranked(rung);
+				if (budget >= epochs) {
+					break;
+				}
+				int kept = Math.max(1, ranked.size() / eta);
+				for (Trial trial : ranked.subList(kept, ranked.size())) {
+					trial.stopped = true;
+				}
+				rung = new ArrayList<Trial>(ranked.subList(0, kept));
+				previousBudget = budget;
+				budget = kept == 1 ? epochs : (int) Math.min(epochs, (long) budget * eta); // The last survivor trains for all the epochs
+			}
+		} finally {
+			pool.shutdown();
+			deleteCheckpointDirectory(directory);
+		}
+		// The survivors of the last rung rank first, whatever the error of the trials dropped after fewer epochs
+		List<Trial> result = ranked(rung);
+		List<Trial> dropped = new ArrayList<Trial>(trials);
+		dropped.removeAll(rung);
+		Collections.sort(dropped, Comparator.comparingInt(Trial::getEpochs).reversed().thenComparing(HyperparameterSearch::compare));
+		result.addAll(dropped);
+		return result;
+	}
+	// !SECTION : Strategies
+
+	// SECTION : Private methods
+	private List<Trial> search(List<Configuration> configurations) {
+		List<Trial> trials = trials(configurations);
+		ExecutorService pool = newPool();
+		try {
+			MedianStopping stopping = medianStoppingEpochs > 0 ? new MedianStopping() : null;
+			run(pool, trials, trial -> train(trial, stopping));
+		} finally {
+			pool.shutdown();
+		}
+		return ranked(trials);
+	}
+
+	private List<Configuration> sample(SearchSpace space, int count) {
+		Random random = new Random(seed);
+		List<Configuration> configurations = new ArrayList<Configuration>(count);
+		for (int i = 0; i < count; i++) {
+			configurations.add(space.sample(random));
+		}
+		return configurations;
+	}
+
+	private static List<Trial> trials(List<Configuration> configurations) {
+		List<Trial> trials = new ArrayList<Trial>(configurations.size());
+		for (int i = 0; i < configurations.size(); i++) {
+			trials.add(new Trial(i, configurations.get(i)));
+		}
+		return trials;
+	}
+
+	private static List<Trial> ranked(List<Trial> trials) {
+		List<Trial> ranked = new ArrayList<Trial>(trials);
+		Collections.sort(ranked, HyperparameterSearch::compare);
+		return ranked;
+	}
+
+	/**
+	 * Order the trials by error, the failed ones and the ones without error last.
+	 */
+	private static int compare(Trial a, Trial b) {
+		boolean aFailed = a.getState() == Trial.State.FAILED;
+		boolean bFailed = b.getState() == Trial.State.FAILED;
+		if (aFailed != bFailed) {
+			return aFailed ? 1 : -1;
+		}
+		return Double.compare(a.getError(), b.getError()); // NaN last
+	}
+
+	private ExecutorService newPool() {
+		return Executors.newFixedThreadPool(parallelism, task -> {
+			Thread thread = new Thread(task, "search-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Train the trials on the pool and wait for all of them. The failed trials are skipped.
+	 */
+	private void run(ExecutorService pool, List<Trial> trials, Consumer<Trial> training) {
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(trials.size());
+		for (Trial trial : trials) {
+			if (trial.failure == null) {
+				tasks.add(() -> {
+					training.accept(trial);
+					return null;
+				});
+			}
+		}
+		try {
+			pool.invokeAll(tasks); // The tasks catch their exceptions
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted during the search.", e);
+		}
+	}
+
+	/**
+	 * Train a trial for all the epochs of the search.
+	 */
+	private void train(Trial trial, MedianStopping stopping) {
+		TrainingListener listener = null;
+		try {
+			NeuralNetwork network = network(trial);
+			if (stopping != null) {
+				listener = stopping.listener(trial);
+				network.addTrainingListener(listener);
+			}
+			network.train(trainingSet, epochs, batchSize(trial.configuration), momemtum(trial.configuration), false);
+			trial.errors = errors(network);
+		} catch (RuntimeException | Error e) {
+			trial.failure = e;
+		} finally {
+			if (listener != null) {
+				trial.network.removeTrainingListener(listener);
+			}
+		}
+		if (verbose) {
+			System.out.println(trial);
+		}
+	}
+
+	/**
+	 * Train a trial of the successive halving up to the budget of its rung: the first rung starts the training of all the epochs of the search,
+	 * the next ones resume it from the checkpoint of the previous budget.
+	 */
+	private void trainRung(Trial trial, int budget, int checkpointInterval, Path directory) {
+		TrainingListener listener = null;
+		try {
+			String path = directory.resolve("trial-" + trial.index + ".ckpt").toString();
+			boolean started = trial.network != null;
+			NeuralNetwork network = network(trial);
+			listener = new TrainingListener() {
+				@Override
+				public void epochEnded(EpochMetrics metrics) {
+					if (metrics.getEpoch() + 1 >= budget) { // The checkpoint of the epoch is written before the training stops
+						network.stop();
+					}
+				}
+			};
+			network.addTrainingListener(listener);
+			if (started) {
+				Checkpoint checkpoint = Checkpoint.load(path);
+				if (checkpoint.getEpoch() != trial.getEpochs()) {
+					throw new IllegalStateException("The checkpoint of the trial " + trial.index + " is at the epoch " + checkpoint.getEpoch() + " instead of " + trial.getEpochs() + ".");
+				}
+				network.resume(checkpoint, trainingSet, false);
+			} else {
+				network.setCheckpoints(path, checkpointInterval);
+				network.train(trainingSet, epochs, batchSize(trial.configuration), momemtum(trial.configuration), false);
+			}
+			trial.errors = errors(network);
+		} catch (IOException | RuntimeException | Error e) {
+			trial.failure = e;
+		} finally {
+			if (listener != null) {
+				trial.network.removeTrainingListener(listener);
+			}
+		}
+		if (verbose) {
+			System.out.println(trial);
+		}
+	}
+
+	/**
+	 * Get the network of a trial, built by the factory on its first training.
+	 */
+	private NeuralNetwork network(Trial trial) {
+		if (trial.network == null) {
+			Configuration configuration = trial.configuration;
+			NeuralNetwork network = factory.apply(configuration);
+			if (configuration.has(LEARNING_RATE)) {
+				network.setLearningRate(configuration.get(LEARNING_RATE));
+			}
+			network.setValidationSet(validationSet);
+			network.setSeed(seed + trial.index);
+			trial.network = network;
+		}
+		return trial.network;
+	}
+
+	private int batchSize(Configuration configuration) {
+		return (int) Math.round(configuration.get(BATCH_SIZE, batchSize));
+	}
+
+	private double momemtum(Configuration configuration) {
+		return configuration.get(MOMEMTUM, momemtum);
+	}
+
+	/**
+	 * @return the monitored errors of all the trained epochs of a network
+	 */
+	private static double[] errors(NeuralNetwork network) {
+		double[] validationLogs = network.getValidationLogs();
+		return validationLogs != null ? validationLogs : network.getLogs();
+	}
+
+	private static Path createCheckpointDirectory() {
+		try {
+			return Files.createTempDirectory("search");
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot create the directory of the checkpoints.", e);
+		}
+	}
+
+	private static void deleteCheckpointDirectory(Path directory) {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.deleteIfExists(file);
+			}
+			Files.deleteIfExists(directory);
+		} catch (IOException e) {
+			System.out.println("Warning: the checkpoints of the search could not be deleted from " + directory + ".");
+		}
+	}
+
+	/**
+	 * Median stopping rule: a trial is stopped when its error at the end of an epoch is above the median of the errors of the other trials at that epoch.
+	 */
+	private final class MedianStopping {
+
+		private final Map<Integer, List<Double>> errors = new HashMap<Integer, List<Double>>(); // The errors of the trials at each epoch
+
+		TrainingListener listener(Trial trial) {
+			return new TrainingListener() {
+				@Override
+				public void epochEnded(EpochMetrics metrics) {
+					double error = Double.isNaN(metrics.getValidationError()) ? metrics.getError() : metrics.getValidationError();
+					if (isLosing(metrics.getEpoch(), error)) {
+						trial.stopped = true;
+						trial.network.stop();
+					}
+				}
+			};
+		}
+
+		private synchronized boolean isLosing(int epoch, double error) {
+			List<Double> peers = errors.computeIfAbsent(epoch, e -> new ArrayList<Double>());
+			boolean losing = false;
+			if (epoch + 1 >= medianStoppingEpochs && peers.size() >= MEDIAN_PEERS) {
+				double[] sorted = new double[peers.size()];
+				for (int i = 0; i < sorted.length; i++) {
+					sorted[i] = peers.get(i);
+				}
+				Arrays.sort(sorted);
+				int middle = sorted.length / 2;
+				double median = sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+				losing = !(error <= median); // NaN errors lose
+			}
+			peers.add(error);
+			return losing;
+		}
+	}
+	// !SECTION : Private methods
+}
@@ -0,0 +1,98 @@
+package neuralnetwork.search;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The hyperparameters explored by a {@link HyperparameterSearch}: each named parameter has a list of values, or a continuous range.
+ * The grid search enumerates the values, the random searches draw them.
+ */
+public class SearchSpace {
+
+	private final Map<String, double[]> values = new LinkedHashMap<String, double[]>(); // The discrete parameters
+	private final Map<String, double[]> ranges = new LinkedHashMap<String, double[]>(); // The continuous parameters: min, max, 1 if log-uniform
+
+	/**
+	 * Add a parameter taking one of the given values.
+	 * @param name the name of the parameter, see {@link HyperparameterSearch#LEARNING_RATE} for the names applied by the search
+	 * @param values the values, at least one
+	 */
+	public void addValues(String name, double... values) {
+		if (values.length == 0) {
+			throw new IllegalArgumentException("The parameter " + name + " needs at least one value.");
+		}
+		checkName(name);
+		this.values.put(name, values.clone());
+	}
+
+	/**
+	 * Add a parameter drawn in a range by the random searches. The grid search does not accept ranges.
+	 * @param name the name of the parameter
+	 * @param min the lower bound
+	 * @param max the upper bound
+	 * @param logarithmic true to draw the logarithm of the value uniformly, for the scales such as the learning rate; the bounds must then be positive
+	 */
+	public void addRange(String name, double min, double max, boolean logarithmic) {
+		if (min > max || (logarithmic && min <= 0)) {
+			throw new IllegalArgumentException("Invalid range [" + min + ", " + max + "] for the parameter " + name + ".");
+		}
+		checkName(name);
+		this.ranges.put(name, new double[] { min, max, logarithmic ? 1 : 0 });
+	}
+
+	private void checkName(String name) {
+		if (values.containsKey(name) || ranges.containsKey(name)) {
+			throw new IllegalArgumentException("The parameter " + name + " is already defined.");
+		}
+	}
+
+	/**
+	 * Enumerate all the combinations of the values, the last parameter changing fastest.
+	 * @return the configurations of the grid
+	 * @throws IllegalStateException if the space has ranges
+	 */
+	public List<Configuration> grid() {
+		if (!ranges.isEmpty()) {
+			throw new IllegalStateException("The grid search does not accept the ranges " + ranges.keySet() + ".");
+		}
+		List<Configuration> configurations = new ArrayList<Configuration>();
+		configurations.add(new Configuration(new LinkedHashMap<String, Double>()));
+		for (Map.Entry<String, double[]> parameter : values.entrySet()) {
+			List<Configuration> next = new ArrayList<Configuration>(configurations.size() * parameter.getValue().length);
+			for (Configuration configuration : configurations) {
+				for (double value : parameter.getValue()) {
+					next.add(configuration.with(parameter.getKey(), value));
+				}
+			}
+			configurations = next;
+		}
+		return configurations;
+	}
+
+	/**
+	 * Draw a random configuration: a uniform value of each list, a uniform or log-uniform value of each range.
+	 * @param random the source of the draws
+	 * @return the configuration
+	 */
+	public Configuration sample(Random random) {
+		Configuration configuration = new Configuration(new LinkedHashMap<String, Double>());
+		for (Map.Entry<String, double[]> parameter : values.entrySet()) {
+			double[] choices = parameter.getValue();
+			configuration = configuration.with(parameter.getKey(), choices[random.nextInt(choices.length)]);
+		}
+		for (Map.Entry<String, double[]> parameter : ranges.entrySet()) {
+			double[] range = parameter.getValue();
+			double value;
+			if (range[2] == 1) {
+				value = Math.exp(Math.log(range[0]) + random.nextDouble() * (Math.log(range[1]) - Math.log(range[0])));
+			} else {
+				value = range[0] + random.nextDouble() * (range[1] - range[0]);
+			}
+			configuration = configuration.with(parameter.getKey(), value);
+		}
+		return configuration;
+	}
+}
@@ -0,0 +1,87 @@
+package neuralnetwork.search;
+
+import neuralnetwork.NeuralNetwork;
+
+/**
+ * A configuration tried by a {@link HyperparameterSearch}, with the network it trained and its errors.
+ */
+public class Trial {
+
+	/**
+	 * The outcome of a trial.
+	 */
+	public enum State {
+		COMPLETED, // Trained for all its epochs
+		STOPPED, // Stopped early by the search because it was losing
+		FAILED // The training threw an exception, see getFailure()
+	}
+
+	final int index; // The index of the trial in its search, also the offset of the seed of its shuffles
+	final Configuration configuration;
+	NeuralNetwork network;
+	double[] errors = new double[0]; // The monitored error of each trained epoch
+	volatile boolean stopped = false;
+	Throwable failure = null;
+
+	Trial(int index, Configuration configuration) {
+		this.index = index;
+		this.configuration = configuration;
+	}
+
+	public Configuration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * @return the trained network, null if the trial failed before its creation
+	 */
+	public NeuralNetwork getNetwork() {
+		return network;
+	}
+
+	/**
+	 * @return the monitored error of each trained epoch: the validation error if the search has a validation set, the training error otherwise
+	 */
+	public double[] getErrors() {
+		return errors.clone();
+	}
+
+	/**
+	 * @return the lowest monitored error of the trained epochs, NaN if no epoch has a finite error
+	 */
+	public double getError() {
+		double best = Double.NaN;
+		for (double error : errors) {
+			if (!Double.isNaN(error) && (Double.isNaN(best) || error < best)) {
+				best = error;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return the number of trained epochs
+	 */
+	public int getEpochs() {
+		return errors.length;
+	}
+
+	public State getState() {
+		if (failure != null) {
+			return State.FAILED;
+		}
+		return stopped ? State.STOPPED : State.COMPLETED;
+	}
+
+	/**
+	 * @return the exception thrown by the training, null if the trial did not fail
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	@Override
+	public String toString() {
+		return "Trial " + index + " " + configuration + ": error " + getError() + " after " + getEpochs() + " epochs, " + getState();
+	}
+}